@@ -0,0 +1,123 @@
+/*
+ * Copyright 2011 Ammo Goettsch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package net.derammo.jsonschema;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Outcome of validating a batch of instances with one of the validateAll methods of {@link SchemaValidator}.
+ * Instances are identified by their position in the input, starting at 0; only the failures carry errors.
+ */
+public final class BulkValidationResult {
+    private final int count;
+    private final BitSet failed;
+    // positions of the failures, in ascending order, and their errors
+    private final int[] failedIndices;
+    // byte offsets of the lines of the failures, when the instances were read from newline delimited JSON
+    private final long[] failedOffsets;
+    private final List<List<ValidationError>> errors;
+
+    BulkValidationResult(int count, int[] failedIndices, long[] failedOffsets, List<List<ValidationError>> errors) {
+        this.count = count;
+        this.failedIndices = failedIndices;
+        this.failedOffsets = failedOffsets;
+        this.errors = errors;
+        this.failed = new BitSet(count);
+        for (int index : failedIndices) {
+            failed.set(index);
+        }
+    }
+
+    /**
+     * @return number of instances validated
+     */
+    public int getCount() {
+        return count;
+    }
+
+    public int getFailureCount() {
+        return failedIndices.length;
+    }
+
+    public boolean isValid(int index) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("no instance " + index + " in a batch of " + count);
+        }
+        return !failed.get(index);
+    }
+
+    /**
+     * @return a set bit for each instance that is not valid
+     */
+    public BitSet getFailed() {
+        return (BitSet) failed.clone();
+    }
+
+    /**
+     * @return positions of the instances that are not valid, in input order
+     */
+    public int[] getFailedIndices() {
+        return failedIndices.clone();
+    }
+
+    /**
+     * @return the errors of an instance, or an empty list if it is valid
+     */
+    public List<ValidationError> getErrors(int index) {
+        int position = Arrays.binarySearch(failedIndices, index);
+        if (position < 0) {
+            return Collections.emptyList();
+        }
+        return errors.get(position);
+    }
+
+    /**
+     * @return the byte offset of the line of an instance that is not valid, when the instances were read
+     * from newline delimited JSON, otherwise -1
+     */
+    public long getOffset(int index) {
+        int position = Arrays.binarySearch(failedIndices, index);
+        if (position < 0 || failedOffsets == null) {
+            return -1;
+        }
+        return failedOffsets[position];
+    }
+
+    /**
+     * Write one line for each error, in input order, starting with the position of the instance and, for
+     * newline delimited JSON, the byte offset of its line.
+     */
+    public void writeReport(Appendable out) throws IOException {
+        for (int i = 0; i < failedIndices.length; i++) {
+            for (ValidationError error : errors.get(i)) {
+                out.append("instance ").append(Integer.toString(failedIndices[i]));
+                if (failedOffsets != null) {
+                    out.append(" at byte ").append(Long.toString(failedOffsets[i]));
+                }
+                out.append(": ").append(error.toString()).append('\n');
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return failedIndices.length + " of " + count + " instances are not valid";
+    }
+}
@@ -0,0 +1,479 @@
+/*
+ * Copyright 2011 Ammo Goettsch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package net.derammo.jsonschema;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonLocation;
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.JsonParseException;
+import org.codehaus.jackson.JsonParser;
+
+/**
+ * Validates one batch of instances for {@link SchemaValidator}, by cutting the input into chunks that are
+ * validated as tasks of a fork-join pool.  Chunks are read and submitted in order, and their results are
+ * joined in the same order, so the result follows the input order without sorting.  Input that is read
+ * incrementally only has a bounded number of chunks in flight.
+ *
+ * Each worker validates with the context of its own thread, which is reused from instance to instance,
+ * and an instance is first checked without building errors, so valid instances cost no allocation
+ * beyond their parsing.
+ *
+ * Newline delimited JSON is cut into chunks that end after a line feed, and each line is parsed by the
+ * worker directly from the bytes of its chunk.  Files are memory mapped, one window at a time, and the
+ * workers copy their chunk from the mapping into a buffer of their own thread.
+ */
+final class BulkValidator {
+    // instances per chunk, when they are already parsed
+    static final int CHUNK_INSTANCES = 256;
+    // minimum size of a chunk of lines; chunks end after a line feed
+    static final int CHUNK_BYTES = 1 << 18;
+    // size of the part of a file that is mapped at a time
+    static final int MAP_BYTES = 1 << 30;
+
+    private static final JsonFactory FACTORY = new JsonFactory();
+
+    // buffer each worker copies mapped chunks into
+    private static final ThreadLocal<byte[]> BUFFERS = new ThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() {
+            return new byte[CHUNK_BYTES];
+        }
+    };
+
+    /**
+     * Failures of one chunk, with positions relative to the start of the chunk.  The locations of the
+     * errors of lines are those of the parser, which counts columns and offsets from the start of the
+     * chunk and lines from the start of the line; they are moved to the input when the chunk is collected.
+     */
+    private static final class Chunk {
+        // position of the chunk in the input, for lines
+        final long position;
+        int count;
+        // line feeds in the chunk, for lines
+        int lines;
+        int failures;
+        int[] indices = new int[4];
+        // start of the line of each failure within the chunk, and the number of line feeds before it
+        int[] lineStarts;
+        int[] lineNumbers;
+        ArrayList<List<ValidationError>> errors = new ArrayList<List<ValidationError>>(4);
+
+        Chunk(long position, boolean lines) {
+            this.position = position;
+            if (lines) {
+                lineStarts = new int[4];
+                lineNumbers = new int[4];
+            }
+        }
+
+        void fail(int index, List<ValidationError> errorList) {
+            if (failures == indices.length) {
+                indices = Arrays.copyOf(indices, failures * 2);
+                if (lineStarts != null) {
+                    lineStarts = Arrays.copyOf(lineStarts, failures * 2);
+                    lineNumbers = Arrays.copyOf(lineNumbers, failures * 2);
+                }
+            }
+            indices[failures++] = index;
+            errors.add(errorList);
+        }
+
+        void failLine(int index, int lineStart, int lineNumber, List<ValidationError> errorList) {
+            fail(index, errorList);
+            lineStarts[failures - 1] = lineStart;
+            lineNumbers[failures - 1] = lineNumber;
+        }
+    }
+
+    private final SchemaValidator validator;
+    private final ForkJoinPool pool;
+    private final int window;
+    private final ArrayDeque<ForkJoinTask<Chunk>> pending = new ArrayDeque<ForkJoinTask<Chunk>>();
+
+    // results of the chunks joined so far
+    private long count;
+    private long lines;
+    private int failures;
+    private int[] failedIndices = new int[16];
+    private long[] failedOffsets;
+    private ArrayList<List<ValidationError>> errors = new ArrayList<List<ValidationError>>();
+
+    BulkValidator(SchemaValidator validator, ForkJoinPool pool) {
+        this.validator = validator;
+        this.pool = pool;
+        this.window = pool.getParallelism() * 4;
+    }
+
+    BulkValidationResult validate(List<? extends JsonNode> instances) {
+        try {
+            for (int start = 0; start < instances.size(); start += CHUNK_INSTANCES) {
+                int end = Math.min(start + CHUNK_INSTANCES, instances.size());
+                pending.addLast(pool.submit(nodeTask(instances.subList(start, end))));
+            }
+            return finish();
+        } finally {
+            cancel();
+        }
+    }
+
+    BulkValidationResult validate(Iterator<? extends JsonNode> instances) {
+        try {
+            ArrayList<JsonNode> chunk = new ArrayList<JsonNode>(CHUNK_INSTANCES);
+            while (instances.hasNext()) {
+                chunk.add(instances.next());
+                if (chunk.size() == CHUNK_INSTANCES) {
+                    submit(nodeTask(chunk));
+                    chunk = new ArrayList<JsonNode>(CHUNK_INSTANCES);
+                }
+            }
+            if (!chunk.isEmpty()) {
+                submit(nodeTask(chunk));
+            }
+            return finish();
+        } finally {
+            cancel();
+        }
+    }
+
+    /**
+     * @param in newline delimited JSON; lines that are empty or only contain white space are not instances
+     */
+    BulkValidationResult validate(InputStream in) throws IOException {
+        failedOffsets = new long[16];
+        try {
+            byte[] chunk = new byte[CHUNK_BYTES];
+            int length = 0;
+            long position = 0;
+            int read;
+            while ((read = in.read(chunk, length, chunk.length - length)) >= 0) {
+                length += read;
+                if (length < chunk.length) {
+                    continue;
+                }
+                int cut = lastLineEnd(chunk, length);
+                if (cut < 0) {
+                    // a line longer than the chunk
+                    chunk = Arrays.copyOf(chunk, chunk.length * 2);
+                    continue;
+                }
+                int remainder = length - cut;
+                byte[] next = new byte[Math.max(CHUNK_BYTES, remainder * 2)];
+                System.arraycopy(chunk, cut, next, 0, remainder);
+                submit(lineTask(chunk, cut, position));
+                chunk = next;
+                length = remainder;
+                position += cut;
+            }
+            if (length > 0) {
+                submit(lineTask(chunk, length, position));
+            }
+            return finish();
+        } finally {
+            cancel();
+        }
+    }
+
+    /**
+     * @param file newline delimited JSON; lines that are empty or only contain white space are not instances
+     */
+    BulkValidationResult validate(File file) throws IOException {
+        failedOffsets = new long[16];
+        RandomAccessFile input = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = input.getChannel();
+            long size = channel.size();
+            long position = 0;
+            while (position < size) {
+                int mapped = (int) Math.min(MAP_BYTES, size - position);
+                boolean last = position + mapped == size;
+                MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, position, mapped);
+                int start = 0;
+                while (start < mapped) {
+                    int end = Math.min(start + CHUNK_BYTES, mapped);
+                    if (end < mapped || !last) {
+                        int cut = lastLineEnd(map, start, end);
+                        if (cut < 0) {
+                            // a line longer than the chunk, which becomes a chunk of its own
+                            cut = nextLineEnd(map, end, mapped);
+                        }
+                        if (cut < 0) {
+                            // the rest of the mapping is one partial line, which is mapped again from its start
+                            break;
+                        }
+                        end = cut;
+                    }
+                    submit(mappedTask(map, start, end - start, position + start));
+                    start = end;
+                }
+                if (start == 0) {
+                    throw new IOException(file + ": line at byte " + position + " is longer than " + MAP_BYTES + " bytes");
+                }
+                position += start;
+            }
+            return finish();
+        } finally {
+            cancel();
+            // the mappings stay valid after the file is closed
+            input.close();
+        }
+    }
+
+    private ForkJoinTask<Chunk> nodeTask(final List<? extends JsonNode> instances) {
+        return ForkJoinTask.adapt(new Callable<Chunk>() {
+            public Chunk call() {
+                Chunk chunk = new Chunk(-1, false);
+                chunk.count = instances.size();
+                for (int i = 0; i < chunk.count; i++) {
+                    JsonNode instance = instances.get(i);
+                    if (!validator.screen(instance)) {
+                        chunk.fail(i, validator.explain(instance));
+                    }
+                }
+                return chunk;
+            }
+        });
+    }
+
+    private ForkJoinTask<Chunk> lineTask(final byte[] data, final int length, final long position) {
+        return ForkJoinTask.adapt(new Callable<Chunk>() {
+            public Chunk call() {
+                return validateLines(data, length, position);
+            }
+        });
+    }
+
+    private ForkJoinTask<Chunk> mappedTask(final MappedByteBuffer map, final int start, final int length, final long position) {
+        return ForkJoinTask.adapt(new Callable<Chunk>() {
+            public Chunk call() {
+                // a chunk stretched by a long line gets an array of its own, so that
+                // each thread keeps no more than CHUNK_BYTES once the line is done
+                byte[] data = length <= CHUNK_BYTES ? BUFFERS.get() : new byte[length];
+                // a view of its own, since the position of the mapping is shared by all tasks
+                ByteBuffer view = map.duplicate();
+                view.position(start);
+                view.get(data, 0, length);
+                return validateLines(data, length, position);
+            }
+        });
+    }
+
+    private Chunk validateLines(byte[] data, int length, long position) {
+        Chunk chunk = new Chunk(position, true);
+        int start = 0;
+        while (start < length) {
+            int end = start;
+            while (end < length && data[end] != '\n') {
+                end++;
+            }
+            // a carriage return would start a second line of the parser
+            int lineEnd = end;
+            if (lineEnd > start && data[lineEnd - 1] == '\r') {
+                lineEnd--;
+            }
+            if (!isBlank(data, start, lineEnd)) {
+                validateLine(data, start, lineEnd - start, chunk);
+                chunk.count++;
+            }
+            if (end < length) {
+                chunk.lines++;
+            }
+            start = end + 1;
+        }
+        return chunk;
+    }
+
+    private void validateLine(byte[] data, int offset, int length, Chunk chunk) {
+        try {
+            if (isValid(data, offset, length)) {
+                return;
+            }
+            JsonParser parser = FACTORY.createJsonParser(data, offset, length);
+            try {
+                List<ValidationError> errors = validator.explain(parser);
+                // content that is not whitespace after the value fails to parse, or is a second value
+                if (parser.nextToken() != null) {
+                    errors = new ArrayList<ValidationError>(errors);
+                    errors.add(new ValidationError("", "syntax", "more than one value on the line", parser.getTokenLocation()));
+                }
+                chunk.failLine(chunk.count, offset, chunk.lines, errors);
+            } finally {
+                parser.close();
+            }
+        } catch (JsonParseException e) {
+            // the message ends with the location, on a line of its own
+            String message = e.getMessage();
+            int messageEnd = message.indexOf('\n');
+            if (messageEnd >= 0) {
+                message = message.substring(0, messageEnd);
+            }
+            // the column is not reliable at the end of the input, but it cannot be past the end of the line
+            JsonLocation location = e.getLocation();
+            if (location == null || location.getColumnNr() - offset > length + 1) {
+                location = new JsonLocation(null, -1, -1, 1, offset + length + 1);
+            }
+            chunk.failLine(chunk.count, offset, chunk.lines,
+                    Collections.singletonList(new ValidationError("", "syntax", message, location)));
+        } catch (IOException e) {
+            // not expected when reading from memory
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return true if the line holds one valid value and nothing else
+     */
+    private boolean isValid(byte[] data, int offset, int length) throws IOException {
+        JsonParser parser = FACTORY.createJsonParser(data, offset, length);
+        try {
+            return validator.screen(parser) && parser.nextToken() == null;
+        } finally {
+            parser.close();
+        }
+    }
+
+    private static boolean isBlank(byte[] data, int start, int end) {
+        for (int i = start; i < end; i++) {
+            byte b = data[i];
+            if (b != ' ' && b != '\t' && b != '\r') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the length of the data up to and including its last line feed, or -1 if there is none
+     */
+    private static int lastLineEnd(byte[] data, int length) {
+        for (int i = length - 1; i >= 0; i--) {
+            if (data[i] == '\n') {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the position after the last line feed between start and end, or -1 if there is none
+     */
+    private static int lastLineEnd(ByteBuffer data, int start, int end) {
+        for (int i = end - 1; i >= start; i--) {
+            if (data.get(i) == '\n') {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the position after the first line feed between start and end, or -1 if there is none
+     */
+    private static int nextLineEnd(ByteBuffer data, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (data.get(i) == '\n') {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    private void submit(ForkJoinTask<Chunk> task) {
+        if (pending.size() >= window) {
+            collect(pending.removeFirst().join());
+        }
+        pending.addLast(pool.submit(task));
+    }
+
+    private void collect(Chunk chunk) {
+        if (count + chunk.count > Integer.MAX_VALUE) {
+            throw new IllegalStateException("more than " + Integer.MAX_VALUE + " instances in one batch");
+        }
+        for (int i = 0; i < chunk.failures; i++) {
+            if (failures == failedIndices.length) {
+                failedIndices = Arrays.copyOf(failedIndices, failures * 2);
+                if (failedOffsets != null) {
+                    failedOffsets = Arrays.copyOf(failedOffsets, failures * 2);
+                }
+            }
+            failedIndices[failures] = (int) count + chunk.indices[i];
+            List<ValidationError> chunkErrors = chunk.errors.get(i);
+            if (chunk.lineStarts != null) {
+                long lineOffset = chunk.position + chunk.lineStarts[i];
+                failedOffsets[failures] = lineOffset;
+                chunkErrors = inInput(chunkErrors, chunk, chunk.lineStarts[i], (int) (lines + chunk.lineNumbers[i] + 1));
+            }
+            errors.add(chunkErrors);
+            failures++;
+        }
+        count += chunk.count;
+        lines += chunk.lines;
+    }
+
+    /**
+     * @return the errors of a line with their locations moved from the chunk to the input: offsets counted
+     * from the start of the input, line numbers counted from the first line, and columns from the start of
+     * the line.  This also lets go of the chunk, which the parser locations refer to.
+     */
+    private static List<ValidationError> inInput(List<ValidationError> lineErrors, Chunk chunk, int lineStart, int lineNumber) {
+        ArrayList<ValidationError> result = new ArrayList<ValidationError>(lineErrors.size());
+        for (ValidationError error : lineErrors) {
+            JsonLocation location = error.getLocation();
+            if (location != null) {
+                long byteOffset = location.getByteOffset() < 0 ? -1 : chunk.position + location.getByteOffset();
+                location = new JsonLocation(null, byteOffset, -1, lineNumber, location.getColumnNr() - lineStart);
+            }
+            result.add(error.withLocation(location));
+        }
+        return result;
+    }
+
+    private BulkValidationResult finish() {
+        while (!pending.isEmpty()) {
+            collect(pending.removeFirst().join());
+        }
+        return new BulkValidationResult((int) count, Arrays.copyOf(failedIndices, failures),
+                failedOffsets == null ? null : Arrays.copyOf(failedOffsets, failures),
+                errors);
+    }
+
+    /**
+     * Stop the chunks still in flight after a failure
+     */
+    private void cancel() {
+        for (ForkJoinTask<Chunk> task : pending) {
+            task.cancel(false);
+        }
+        pending.clear();
+    }
+}
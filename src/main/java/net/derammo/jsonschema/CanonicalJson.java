@@ -0,0 +1,363 @@
+/*
+ * Copyright 2011 Ammo Goettsch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package net.derammo.jsonschema;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.node.BigIntegerNode;
+import org.codehaus.jackson.node.BooleanNode;
+import org.codehaus.jackson.node.DoubleNode;
+import org.codehaus.jackson.node.IntNode;
+import org.codehaus.jackson.node.LongNode;
+import org.codehaus.jackson.node.NullNode;
+import org.codehaus.jackson.node.TextNode;
+
+/**
+ * Equality of JSON values as section 5.15 defines it for 'uniqueItems' and 'enum': numbers are equal if
+ * their values are, whatever their representation, objects are equal if they have the same properties in
+ * any order, and arrays if they have equal items in the same order.
+ *
+ * The hash of a value is consistent with this equality, so values are compared in full only when their
+ * hashes collide, and finding duplicates among n values takes O(n) time.
+ */
+final class CanonicalJson {
+    private static final int NULL_HASH = 0x6e756c6c;
+    private static final int OBJECT_SEED = 0x6f626a;
+
+    private CanonicalJson() {
+    }
+
+    /**
+     * Values such as those of 'enum', indexed by their hashes
+     */
+    static final class ValueSet {
+        private final JsonNode[] values;
+        private final int[] hashes;
+        // index + 1 of a value in each slot, 0 for an empty slot
+        private final int[] slots;
+        private final boolean containers;
+
+        ValueSet(List<JsonNode> members) {
+            values = members.toArray(new JsonNode[members.size()]);
+            hashes = new int[values.length];
+            slots = new int[tableSize(values.length)];
+            boolean anyContainer = false;
+            for (int i = 0; i < values.length; i++) {
+                hashes[i] = hash(values[i]);
+                if (find(values[i], hashes[i]) < 0) {
+                    slots[emptySlot(hashes[i])] = i + 1;
+                }
+                anyContainer |= values[i].isContainerNode();
+            }
+            containers = anyContainer;
+        }
+
+        /**
+         * @return true if some value is an object or array, which a scalar token cannot be compared with
+         */
+        boolean hasContainers() {
+            return containers;
+        }
+
+        boolean contains(JsonNode value) {
+            return find(value, hash(value)) >= 0;
+        }
+
+        private int find(JsonNode value, int hash) {
+            int mask = slots.length - 1;
+            for (int slot = spread(hash) & mask; slots[slot] != 0; slot = (slot + 1) & mask) {
+                int index = slots[slot] - 1;
+                if (hashes[index] == hash && equal(values[index], value)) {
+                    return index;
+                }
+            }
+            return -1;
+        }
+
+        private int emptySlot(int hash) {
+            int mask = slots.length - 1;
+            int slot = spread(hash) & mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        /**
+         * @return true if the sets hold the same values in the same order
+         */
+        boolean sameValues(ValueSet other) {
+            if (!Arrays.equals(hashes, other.hashes)) {
+                return false;
+            }
+            for (int i = 0; i < values.length; i++) {
+                if (!equal(values[i], other.values[i])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        int valuesHash() {
+            return Arrays.hashCode(hashes);
+        }
+
+        @Override
+        public String toString() {
+            return Arrays.toString(values);
+        }
+    }
+
+    /**
+     * @return the length of the scratch array that {@link #duplicates(JsonNode, int[])} needs for an array of
+     *         this size
+     */
+    static int scratchSize(int size) {
+        return size + tableSize(size);
+    }
+
+    /**
+     * @param array an array node
+     * @param scratch at least {@link #scratchSize(int)} elements, which are overwritten
+     * @return for each item, the position of the first earlier item equal to it or -1, or null if all items are unique
+     */
+    static int[] duplicates(JsonNode array, int[] scratch) {
+        int size = array.size();
+        if (size < 2) {
+            return null;
+        }
+        // the hashes of the items come first, followed by a table of the index + 1 of the first of each
+        // distinct item, with 0 for an empty slot
+        int table = tableSize(size);
+        Arrays.fill(scratch, size, size + table, 0);
+        int mask = table - 1;
+        int[] earlier = null;
+        for (int i = 0; i < size; i++) {
+            JsonNode item = array.get(i);
+            int hash = hash(item);
+            scratch[i] = hash;
+            int slot = spread(hash) & mask;
+            int found = -1;
+            while (scratch[size + slot] != 0) {
+                int index = scratch[size + slot] - 1;
+                if (scratch[index] == hash && equal(array.get(index), item)) {
+                    found = index;
+                    break;
+                }
+                slot = (slot + 1) & mask;
+            }
+            if (found < 0) {
+                scratch[size + slot] = i + 1;
+            } else {
+                if (earlier == null) {
+                    earlier = new int[size];
+                    Arrays.fill(earlier, -1);
+                }
+                earlier[i] = found;
+            }
+        }
+        return earlier;
+    }
+
+    /**
+     * @return a hash of the value that is equal for equal values
+     */
+    static int hash(JsonNode value) {
+        if (value.isTextual()) {
+            return value.getTextValue().hashCode();
+        }
+        if (value.isNumber()) {
+            return numberHash(value);
+        }
+        if (value.isArray()) {
+            int hash = 1;
+            for (int i = 0; i < value.size(); i++) {
+                hash = 31 * hash + hash(value.get(i));
+            }
+            return hash;
+        }
+        if (value.isObject()) {
+            // a sum, so that the order of the properties does not matter
+            int hash = OBJECT_SEED;
+            Iterator<Map.Entry<String, JsonNode>> fields = value.getFields();
+            while (fields.hasNext()) {
+                Map.Entry<String, JsonNode> field = fields.next();
+                int entry = field.getKey().hashCode() * 0x9E3779B9 + hash(field.getValue());
+                hash += entry ^ (entry >>> 16);
+            }
+            return hash;
+        }
+        if (value.isNull()) {
+            return NULL_HASH;
+        }
+        return value.hashCode();
+    }
+
+    static boolean equal(JsonNode a, JsonNode b) {
+        if (a == b) {
+            return true;
+        }
+        if (a.isNumber()) {
+            return b.isNumber() && equalNumbers(a, b);
+        }
+        if (a.isTextual()) {
+            return b.isTextual() && a.getTextValue().equals(b.getTextValue());
+        }
+        if (a.isArray()) {
+            if (!b.isArray() || a.size() != b.size()) {
+                return false;
+            }
+            for (int i = 0; i < a.size(); i++) {
+                if (!equal(a.get(i), b.get(i))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        if (a.isObject()) {
+            if (!b.isObject() || a.size() != b.size()) {
+                return false;
+            }
+            Iterator<Map.Entry<String, JsonNode>> fields = a.getFields();
+            while (fields.hasNext()) {
+                Map.Entry<String, JsonNode> field = fields.next();
+                JsonNode other = b.get(field.getKey());
+                if (other == null || !equal(field.getValue(), other)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return a.equals(b);
+    }
+
+    /**
+     * @return the scalar value at the current token of the parser as a node
+     */
+    static JsonNode scalar(JsonParser parser) throws IOException {
+        switch (parser.getCurrentToken()) {
+        case VALUE_STRING:
+            return TextNode.valueOf(parser.getText());
+        case VALUE_NUMBER_INT:
+            switch (parser.getNumberType()) {
+            case INT:
+                return IntNode.valueOf(parser.getIntValue());
+            case LONG:
+                return LongNode.valueOf(parser.getLongValue());
+            default:
+                return BigIntegerNode.valueOf(parser.getBigIntegerValue());
+            }
+        case VALUE_NUMBER_FLOAT:
+            return DoubleNode.valueOf(parser.getDoubleValue());
+        case VALUE_TRUE:
+            return BooleanNode.TRUE;
+        case VALUE_FALSE:
+            return BooleanNode.FALSE;
+        default:
+            return NullNode.getInstance();
+        }
+    }
+
+    /**
+     * Numbers with an integral value hash as that integer, whether written as 1, 1.0 or 1e0; others as doubles
+     */
+    private static int numberHash(JsonNode value) {
+        if (isSmallInteger(value)) {
+            return Long.hashCode(longValue(value));
+        }
+        BigInteger integral = integralValue(value);
+        if (integral == null) {
+            return Double.hashCode(value.getDoubleValue());
+        }
+        return integral.bitLength() < 64 ? Long.hashCode(integral.longValue()) : integral.hashCode();
+    }
+
+    private static boolean equalNumbers(JsonNode a, JsonNode b) {
+        if (isSmallInteger(a) && isSmallInteger(b)) {
+            return longValue(a) == longValue(b);
+        }
+        if (isDouble(a) && isDouble(b)) {
+            return a.getDoubleValue() == b.getDoubleValue();
+        }
+        BigInteger integralA = integralValue(a);
+        BigInteger integralB = integralValue(b);
+        if (integralA != null || integralB != null) {
+            return integralA != null && integralB != null && integralA.equals(integralB);
+        }
+        return a.getDoubleValue() == b.getDoubleValue();
+    }
+
+    /**
+     * @return true if the number is an integer that fits in a long and can be compared without allocating
+     */
+    private static boolean isSmallInteger(JsonNode value) {
+        if (value.isIntegralNumber()) {
+            return value.getNumberType() != JsonParser.NumberType.BIG_INTEGER;
+        }
+        if (!isDouble(value)) {
+            return false;
+        }
+        double number = value.getDoubleValue();
+        return number == Math.rint(number) && Math.abs(number) < 0x1p63;
+    }
+
+    private static long longValue(JsonNode value) {
+        return value.isIntegralNumber() ? value.getLongValue() : (long) value.getDoubleValue();
+    }
+
+    private static boolean isDouble(JsonNode value) {
+        return value.isFloatingPointNumber() && value.getNumberType() != JsonParser.NumberType.BIG_DECIMAL;
+    }
+
+    /**
+     * @return the value of the number if it is an integer, or null if it has a fraction
+     */
+    private static BigInteger integralValue(JsonNode value) {
+        if (value.isIntegralNumber()) {
+            return value.getBigIntegerValue();
+        }
+        if (value.getNumberType() == JsonParser.NumberType.BIG_DECIMAL) {
+            try {
+                return value.getDecimalValue().toBigIntegerExact();
+            } catch (ArithmeticException e) {
+                return null;
+            }
+        }
+        double number = value.getDoubleValue();
+        if (number != Math.rint(number) || Double.isInfinite(number)) {
+            return null;
+        }
+        return new BigDecimal(number).toBigInteger();
+    }
+
+    private static int tableSize(int count) {
+        // at most half full
+        return Integer.highestOneBit(Math.max(count, 1) * 2 - 1) << 1;
+    }
+
+    private static int spread(int hash) {
+        int h = hash * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
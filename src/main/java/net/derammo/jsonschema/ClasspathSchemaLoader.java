@@ -0,0 +1,64 @@
+/*
+ * Copyright 2011 Ammo Goettsch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package net.derammo.jsonschema;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+
+/**
+ * Loads schema documents packaged as class path resources
+ */
+public class ClasspathSchemaLoader implements SchemaLoader {
+    private final URI base;
+    private final ClassLoader classLoader;
+    private final String resourcePath;
+
+    /**
+     * @param base URI prefix under which the documents are published, such as http://example.com/schemas/
+     * @param classLoader loader of the resources
+     * @param resourcePath resource directory holding the documents, such as "schemas/"
+     */
+    public ClasspathSchemaLoader(URI base, ClassLoader classLoader, String resourcePath) {
+        this.base = base.normalize();
+        this.classLoader = classLoader;
+        this.resourcePath = resourcePath.endsWith("/") || resourcePath.length() == 0 ? resourcePath : resourcePath + "/";
+    }
+
+    public InputStream open(URI uri) throws IOException {
+        URI relative = base.relativize(uri.normalize());
+        if (relative.isAbsolute() || !isInside(relative.getPath())) {
+            return null;
+        }
+        return classLoader.getResourceAsStream(resourcePath + relative.getPath());
+    }
+
+    /**
+     * @param path decoded relative path, in which encoded dot segments have become plain ones
+     * @return whether the path names a resource below the resource directory
+     */
+    static boolean isInside(String path) {
+        if (path.length() == 0 || path.startsWith("/") || path.indexOf('\\') >= 0) {
+            return false;
+        }
+        for (String segment : path.split("/", -1)) {
+            if (segment.equals(".") || segment.equals("..")) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,774 @@
+/*
+ * Copyright 2011 Ammo Goettsch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package net.derammo.jsonschema;
+
+import java.net.URI;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import net.derammo.jsonschema.TypeDeserializer.TypeVariant;
+
+import org.codehaus.jackson.JsonNode;
+
+/**
+ * Frozen, compact copy of a parsed schema, for applications that keep many schemas in memory.
+ *
+ * Property names are interned and kept in document order, with a sorted index for lookups, the simple
+ * types are a {@link SimpleTypeSet}, the booleans are bits of one word, and bounds and rarely used
+ * attributes live in side objects that are shared by all schemas that leave them at their defaults.
+ * A schema that only declares a type and two properties therefore costs little more than its arrays.
+ *
+ * The getters are those of {@link ReadOnlySchema}, which {@link SchemaDraft3} implements as well, so a
+ * compact schema can be compiled like the parsed one.  They return read-only collections, and
+ * collections that are absent in the source are empty rather than null.
+ *
+ * <pre>
+ * CompactSchema compact = CompactSchema.freeze(mapper.readValue(in, JsonSchema.class));
+ * </pre>
+ */
+public final class CompactSchema implements ReadOnlySchema {
+    // bits of flags
+    private static final int REQUIRED = 1;
+    private static final int ADDITIONAL_PROPERTIES = 2;
+    private static final int EXCLUSIVE_MINIMUM = 4;
+    private static final int EXCLUSIVE_MAXIMUM = 8;
+    private static final int UNIQUE_ITEMS = 16;
+    private static final int HAS_TYPE = 32;
+    // 'type' was written as an array
+    private static final int TYPE_UNION = 64;
+
+    private static final String[] NO_NAMES = new String[0];
+    private static final int[] NO_POSITIONS = new int[0];
+    private static final CompactSchema[] NO_SCHEMAS = new CompactSchema[0];
+
+    /**
+     * Numeric, length and item count limits, shared by all schemas that leave them at their defaults
+     */
+    private static final class Bounds {
+        final long minimum;
+        final long maximum;
+        final int minItems;
+        final int maxItems;
+        final int minLength;
+        final int maxLength;
+        final int divisibleBy;
+
+        Bounds(long minimum, long maximum, int minItems, int maxItems, int minLength, int maxLength, int divisibleBy) {
+            this.minimum = minimum;
+            this.maximum = maximum;
+            this.minItems = minItems;
+            this.maxItems = maxItems;
+            this.minLength = minLength;
+            this.maxLength = maxLength;
+            this.divisibleBy = divisibleBy;
+        }
+
+        boolean isDefault() {
+            return minimum == DEFAULT_BOUNDS.minimum && maximum == DEFAULT_BOUNDS.maximum
+                    && minItems == DEFAULT_BOUNDS.minItems && maxItems == DEFAULT_BOUNDS.maxItems
+                    && minLength == DEFAULT_BOUNDS.minLength && maxLength == DEFAULT_BOUNDS.maxLength
+                    && divisibleBy == DEFAULT_BOUNDS.divisibleBy;
+        }
+
+        boolean sameAs(Bounds other) {
+            return minimum == other.minimum && maximum == other.maximum && minItems == other.minItems
+                    && maxItems == other.maxItems && minLength == other.minLength && maxLength == other.maxLength
+                    && divisibleBy == other.divisibleBy;
+        }
+
+        int hash() {
+            return Arrays.hashCode(new long[] { minimum, maximum, minItems, maxItems, minLength, maxLength, divisibleBy });
+        }
+    }
+
+    private static final Bounds DEFAULT_BOUNDS = new Bounds(Long.MIN_VALUE, Long.MAX_VALUE, 0, Integer.MAX_VALUE, 0,
+            Integer.MAX_VALUE, 1);
+
+    /**
+     * Attributes that most schemas do not use, shared as one empty instance by those that use none of them.
+     * Only written while freezing the owning schema.
+     */
+    private static final class Attributes {
+        String title;
+        String description;
+        String format;
+        String defaultValue;
+        String pattern;
+        URI id;
+        URI reference;
+        URI schemaReference;
+        List<JsonNode> enumerated = Collections.emptyList();
+        List<String> extendsSchemas = Collections.emptyList();
+        Set<String> patternProperties = Collections.emptySet();
+        TypeVariant additionalItems;
+        TypeVariant disallow;
+        Map<String, TypeVariant> dependencies = Collections.emptyMap();
+        List<HyperLink> links = Collections.emptyList();
+
+        boolean isEmpty() {
+            return title == null && description == null && format == null && defaultValue == null && pattern == null
+                    && id == null && reference == null && schemaReference == null && enumerated.isEmpty()
+                    && extendsSchemas.isEmpty() && patternProperties.isEmpty()
+                    && additionalItems == null && disallow == null && dependencies.isEmpty() && links.isEmpty();
+        }
+
+        boolean sameAs(Attributes other) {
+            if (this == other) {
+                return true;
+            }
+            if (!equal(title, other.title) || !equal(description, other.description) || !equal(format, other.format)
+                    || !equal(defaultValue, other.defaultValue) || !equal(pattern, other.pattern)
+                    || !equal(id, other.id) || !equal(reference, other.reference)
+                    || !equal(schemaReference, other.schemaReference) || !enumerated.equals(other.enumerated)
+                    || !extendsSchemas.equals(other.extendsSchemas) || !patternProperties.equals(other.patternProperties)
+                    || !sameType(additionalItems, other.additionalItems) || !sameType(disallow, other.disallow)
+                    || !dependencies.keySet().equals(other.dependencies.keySet()) || links.size() != other.links.size()) {
+                return false;
+            }
+            for (Map.Entry<String, TypeVariant> entry : dependencies.entrySet()) {
+                if (!sameType(entry.getValue(), other.dependencies.get(entry.getKey()))) {
+                    return false;
+                }
+            }
+            for (int i = 0; i < links.size(); i++) {
+                HyperLink link = links.get(i);
+                HyperLink otherLink = other.links.get(i);
+                if (!equal(link.getHref(), otherLink.getHref()) || link.getRel() != otherLink.getRel()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        int hash() {
+            if (this == NO_ATTRIBUTES) {
+                return 0;
+            }
+            int hash = Arrays.hashCode(new Object[] { title, description, format, defaultValue, pattern, id, reference,
+                    schemaReference, enumerated, extendsSchemas, patternProperties, dependencies.keySet() });
+            hash = hash * 31 + typeHash(additionalItems);
+            hash = hash * 31 + typeHash(disallow);
+            for (TypeVariant dependency : dependencies.values()) {
+                hash = hash * 31 + typeHash(dependency);
+            }
+            return hash * 31 + links.size();
+        }
+    }
+
+    private static final Attributes NO_ATTRIBUTES = new Attributes();
+
+    private final int flags;
+    private final SimpleTypeSet types;
+    // interned, in document order
+    private final String[] propertyNames;
+    // positions of the property names in the order of the names, for lookups
+    private final int[] propertyOrder;
+    // the arrays of subschemas are filled in by the Freezer after the schema has been registered
+    private final CompactSchema[] propertySchemas;
+    private final CompactSchema[] items;
+    private final CompactSchema[] schemaTypes;
+    private final Bounds bounds;
+    private final Attributes attributes;
+    // structural hash, with nested schemas hashed by identity, for interning
+    private int shapeHash;
+
+    private CompactSchema(int flags, SimpleTypeSet types, String[] propertyNames, int[] propertyOrder,
+            CompactSchema[] propertySchemas, CompactSchema[] items, CompactSchema[] schemaTypes, Bounds bounds,
+            Attributes attributes) {
+        this.flags = flags;
+        this.types = types;
+        this.propertyNames = propertyNames;
+        this.propertyOrder = propertyOrder;
+        this.propertySchemas = propertySchemas;
+        this.items = items;
+        this.schemaTypes = schemaTypes;
+        this.bounds = bounds;
+        this.attributes = attributes;
+    }
+
+    /**
+     * Compute the structural hash, once the subschemas have been frozen
+     */
+    private void seal() {
+        int hash = flags;
+        hash = hash * 31 + types.hashCode();
+        hash = hash * 31 + Arrays.hashCode(propertyNames);
+        hash = hash * 31 + identityHash(propertySchemas);
+        hash = hash * 31 + identityHash(items);
+        hash = hash * 31 + identityHash(schemaTypes);
+        hash = hash * 31 + bounds.hash();
+        shapeHash = hash * 31 + attributes.hash();
+    }
+
+    /**
+     * @param schema a parsed JsonSchema, or any extension of SchemaDraft3; attributes added by the extension
+     * are not kept
+     * @return compact copy of the schema and all schemas it contains, which does not refer to the source
+     * objects; schemas that occur more than once in the source are copied once
+     */
+    public static CompactSchema freeze(SchemaDraft3<?> schema) {
+        return new Freezer(null).freeze(schema);
+    }
+
+    /**
+     * Freeze a schema, sharing equal subschemas with each other and with the schemas frozen before with
+     * the same interner.  Subschemas are equal if all their attributes are equal, including their ids,
+     * and their own subschemas are equal in turn.
+     *
+     * @param schema a parsed JsonSchema, or any extension of SchemaDraft3; attributes added by the extension
+     * are not kept
+     * @param interner table of the schemas frozen so far, which may be shared between threads
+     * @return compact copy of the schema, which may share subschemas with other copies, or be one itself
+     */
+    public static CompactSchema freeze(SchemaDraft3<?> schema, SchemaInterner interner) {
+        return new Freezer(interner).freeze(schema);
+    }
+
+    /**
+     * Copies one schema graph, remembering the copies so that shared schemas stay shared
+     */
+    private static final class Freezer {
+        private final IdentityHashMap<SchemaDraft3<?>, CompactSchema> frozen = new IdentityHashMap<SchemaDraft3<?>, CompactSchema>();
+        private final SchemaInterner interner;
+
+        Freezer(SchemaInterner interner) {
+            this.interner = interner;
+        }
+
+        CompactSchema freeze(SchemaDraft3<?> schema) {
+            CompactSchema compact = frozen.get(schema);
+            if (compact != null) {
+                return compact;
+            }
+
+            int flags = 0;
+            if (schema.isRequired()) {
+                flags |= REQUIRED;
+            }
+            if (schema.isAdditionalProperties()) {
+                flags |= ADDITIONAL_PROPERTIES;
+            }
+            if (schema.isExclusiveMinimum()) {
+                flags |= EXCLUSIVE_MINIMUM;
+            }
+            if (schema.isExclusiveMaximum()) {
+                flags |= EXCLUSIVE_MAXIMUM;
+            }
+            if (schema.isUniqueItems()) {
+                flags |= UNIQUE_ITEMS;
+            }
+
+            SimpleTypeSet types = SimpleTypeSet.EMPTY;
+            List<? extends SchemaDraft3<?>> sourceTypes = null;
+            if (schema.getType() != null) {
+                flags |= HAS_TYPE;
+                if (schema.getType() instanceof TypeDeserializer.UnionType<?>) {
+                    flags |= TYPE_UNION;
+                }
+                if (schema.getSimpleTypes() != null) {
+                    types = schema.getSimpleTypes();
+                }
+                sourceTypes = schema.getSchemaTypes();
+            }
+
+            String[] propertyNames = NO_NAMES;
+            int[] propertyOrder = NO_POSITIONS;
+            Map<String, ? extends SchemaDraft3<?>> properties = schema.getProperties();
+            if (properties != null && !properties.isEmpty()) {
+                propertyNames = new String[properties.size()];
+                int i = 0;
+                for (String name : properties.keySet()) {
+                    propertyNames[i++] = name.intern();
+                }
+                propertyOrder = sortedPositions(propertyNames);
+            }
+
+            Bounds bounds = new Bounds(schema.getMinimum(), schema.getMaximum(), schema.getMinItems(),
+                    schema.getMaxItems(), schema.getMinLength(), schema.getMaxlength(), schema.getDivisibleBy());
+            if (bounds.isDefault()) {
+                bounds = DEFAULT_BOUNDS;
+            }
+
+            Attributes attributes = new Attributes();
+            attributes.title = schema.getTitle();
+            attributes.description = schema.getDescription();
+            attributes.format = schema.getFormat();
+            attributes.defaultValue = schema.getDefaultValue();
+            attributes.pattern = schema.getPattern();
+            attributes.id = schema.getId();
+            attributes.reference = schema.getReference();
+            attributes.schemaReference = schema.getSchemaReference();
+            if (schema.getEnumerated() != null && !schema.getEnumerated().isEmpty()) {
+                attributes.enumerated = Collections.unmodifiableList(new ArrayList<JsonNode>(schema.getEnumerated()));
+            }
+            if (schema.getExtendsSchemas() != null && !schema.getExtendsSchemas().isEmpty()) {
+                attributes.extendsSchemas = Collections.unmodifiableList(new ArrayList<String>(schema.getExtendsSchemas()));
+            }
+            if (schema.getPatternProperties() != null && !schema.getPatternProperties().isEmpty()) {
+                attributes.patternProperties = Collections.unmodifiableSet(new LinkedHashSet<String>(schema.getPatternProperties()));
+            }
+            if (schema instanceof HyperSchemaDraft3<?>) {
+                List<HyperLink> links = ((HyperSchemaDraft3<?>) schema).getLinks();
+                if (links != null && !links.isEmpty()) {
+                    attributes.links = Collections.unmodifiableList(new ArrayList<HyperLink>(links));
+                }
+            }
+            Map<String, TypeVariant> dependencies = schema.getDependencies();
+            boolean typed = schema.getAdditionalItems() != null || schema.getDisallow() != null
+                    || (dependencies != null && !dependencies.isEmpty());
+            if (!typed && attributes.isEmpty()) {
+                attributes = NO_ATTRIBUTES;
+            }
+
+            List<? extends SchemaDraft3<?>> sourceItems = schema.getItems();
+            CompactSchema[] propertySchemas = allocate(propertyNames.length);
+            CompactSchema[] items = allocate(sourceItems == null ? 0 : sourceItems.size());
+            CompactSchema[] schemaTypes = allocate(sourceTypes == null ? 0 : sourceTypes.size());
+            compact = new CompactSchema(flags, types, propertyNames, propertyOrder, propertySchemas, items, schemaTypes,
+                    bounds, attributes);
+            // registered before its subschemas are frozen, so that a schema that contains itself is copied once
+            frozen.put(schema, compact);
+
+            int i = 0;
+            if (propertySchemas.length > 0) {
+                for (SchemaDraft3<?> property : properties.values()) {
+                    propertySchemas[i++] = freeze(property);
+                }
+            }
+            for (i = 0; i < items.length; i++) {
+                items[i] = freeze(sourceItems.get(i));
+            }
+            for (i = 0; i < schemaTypes.length; i++) {
+                schemaTypes[i] = freeze(sourceTypes.get(i));
+            }
+            if (typed) {
+                attributes.additionalItems = freeze((TypeVariant) schema.getAdditionalItems());
+                attributes.disallow = freeze(schema.getDisallow());
+                if (dependencies != null && !dependencies.isEmpty()) {
+                    LinkedHashMap<String, TypeVariant> frozenDependencies = new LinkedHashMap<String, TypeVariant>();
+                    for (Map.Entry<String, TypeVariant> entry : dependencies.entrySet()) {
+                        frozenDependencies.put(entry.getKey().intern(), freeze(entry.getValue()));
+                    }
+                    attributes.dependencies = Collections.unmodifiableMap(frozenDependencies);
+                }
+            }
+            compact.seal();
+
+            if (interner != null) {
+                // the subschemas have been interned already, so they can be compared by identity
+                CompactSchema interned = interner.intern(compact);
+                if (interned != compact) {
+                    frozen.put(schema, interned);
+                    compact = interned;
+                }
+            }
+            return compact;
+        }
+
+        private static CompactSchema[] allocate(int length) {
+            return length == 0 ? NO_SCHEMAS : new CompactSchema[length];
+        }
+
+        /**
+         * @return the same form of type with its schemas frozen, sharing the simple and false forms
+         */
+        private TypeVariant freeze(TypeVariant type) {
+            if (type == null) {
+                return null;
+            } else if (type instanceof TypeDeserializer.SimpleType) {
+                return TypeDeserializer.simpleType(((TypeDeserializer.SimpleType) type).getName());
+            } else if (type instanceof TypeDeserializer.FalseType) {
+                return TypeDeserializer.FALSE;
+            } else if (type instanceof TypeDeserializer.SchemaType<?>) {
+                SchemaDraft3<?> schema = (SchemaDraft3<?>) ((TypeDeserializer.SchemaType<?>) type).getSchema();
+                return new TypeDeserializer.SchemaType<CompactSchema>(freeze(schema));
+            } else if (type instanceof TypeDeserializer.UnionType<?>) {
+                List<TypeVariant> members = ((TypeDeserializer.UnionType<?>) type).getTypes();
+                ArrayList<TypeVariant> frozenMembers = new ArrayList<TypeVariant>(members.size());
+                for (TypeVariant member : members) {
+                    frozenMembers.add(freeze(member));
+                }
+                return new TypeDeserializer.UnionType<CompactSchema>(frozenMembers);
+            }
+            throw new IllegalArgumentException("unknown form of type: " + type.getClass().getName());
+        }
+    }
+
+    /**
+     * @return the positions of the names, ordered by name
+     */
+    private static int[] sortedPositions(final String[] names) {
+        Integer[] positions = new Integer[names.length];
+        for (int i = 0; i < names.length; i++) {
+            positions[i] = i;
+        }
+        Arrays.sort(positions, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                return names[a].compareTo(names[b]);
+            }
+        });
+        int[] order = new int[names.length];
+        for (int i = 0; i < names.length; i++) {
+            order[i] = positions[i];
+        }
+        return order;
+    }
+
+    /**
+     * Read-only map over the property arrays, in document order, looked up by binary search
+     */
+    private final class PropertyMap extends AbstractMap<String, CompactSchema> {
+        @Override
+        public CompactSchema get(Object key) {
+            return key instanceof String ? getProperty((String) key) : null;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return key instanceof String && getProperty((String) key) != null;
+        }
+
+        @Override
+        public int size() {
+            return propertyNames.length;
+        }
+
+        @Override
+        public Set<Map.Entry<String, CompactSchema>> entrySet() {
+            return new AbstractSet<Map.Entry<String, CompactSchema>>() {
+                @Override
+                public Iterator<Map.Entry<String, CompactSchema>> iterator() {
+                    return new Iterator<Map.Entry<String, CompactSchema>>() {
+                        private int next;
+
+                        public boolean hasNext() {
+                            return next < propertyNames.length;
+                        }
+
+                        public Map.Entry<String, CompactSchema> next() {
+                            if (next == propertyNames.length) {
+                                throw new NoSuchElementException();
+                            }
+                            Map.Entry<String, CompactSchema> entry = new AbstractMap.SimpleImmutableEntry<String, CompactSchema>(
+                                    propertyNames[next], propertySchemas[next]);
+                            next++;
+                            return entry;
+                        }
+
+                        public void remove() {
+                            throw new UnsupportedOperationException();
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return propertyNames.length;
+                }
+            };
+        }
+    }
+
+    int shapeHash() {
+        return shapeHash;
+    }
+
+    /**
+     * @return true if the schemas have the same attributes and the same subschema instances
+     */
+    boolean sameShape(CompactSchema other) {
+        return flags == other.flags && types.equals(other.types) && Arrays.equals(propertyNames, other.propertyNames)
+                && sameInstances(propertySchemas, other.propertySchemas) && sameInstances(items, other.items)
+                && sameInstances(schemaTypes, other.schemaTypes) && bounds.sameAs(other.bounds)
+                && attributes.sameAs(other.attributes);
+    }
+
+    private static boolean sameInstances(CompactSchema[] schemas, CompactSchema[] others) {
+        if (schemas.length != others.length) {
+            return false;
+        }
+        for (int i = 0; i < schemas.length; i++) {
+            if (schemas[i] != others[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int identityHash(CompactSchema[] schemas) {
+        int hash = 1;
+        for (CompactSchema schema : schemas) {
+            hash = hash * 31 + System.identityHashCode(schema);
+        }
+        return hash;
+    }
+
+    private static boolean equal(Object value, Object other) {
+        return value == null ? other == null : value.equals(other);
+    }
+
+    /**
+     * @return true if the forms of type are the same, with the same schema instances
+     */
+    private static boolean sameType(TypeVariant type, TypeVariant other) {
+        if (type == null || other == null) {
+            return type == other;
+        }
+        if (type.getClass() != other.getClass()) {
+            return false;
+        }
+        if (type instanceof TypeDeserializer.SimpleType) {
+            return ((TypeDeserializer.SimpleType) type).getName().equals(((TypeDeserializer.SimpleType) other).getName());
+        } else if (type instanceof TypeDeserializer.SchemaType<?>) {
+            return ((TypeDeserializer.SchemaType<?>) type).getSchema() == ((TypeDeserializer.SchemaType<?>) other).getSchema();
+        } else if (type instanceof TypeDeserializer.UnionType<?>) {
+            List<TypeVariant> members = ((TypeDeserializer.UnionType<?>) type).getTypes();
+            List<TypeVariant> otherMembers = ((TypeDeserializer.UnionType<?>) other).getTypes();
+            if (members.size() != otherMembers.size()) {
+                return false;
+            }
+            for (int i = 0; i < members.size(); i++) {
+                if (!sameType(members.get(i), otherMembers.get(i))) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static int typeHash(TypeVariant type) {
+        if (type == null) {
+            return 0;
+        } else if (type instanceof TypeDeserializer.SimpleType) {
+            return ((TypeDeserializer.SimpleType) type).getName().hashCode();
+        } else if (type instanceof TypeDeserializer.SchemaType<?>) {
+            return System.identityHashCode(((TypeDeserializer.SchemaType<?>) type).getSchema());
+        } else if (type instanceof TypeDeserializer.UnionType<?>) {
+            int hash = 1;
+            for (TypeVariant member : ((TypeDeserializer.UnionType<?>) type).getTypes()) {
+                hash = hash * 31 + typeHash(member);
+            }
+            return hash;
+        }
+        return 1;
+    }
+
+    private static List<CompactSchema> asList(CompactSchema[] schemas) {
+        if (schemas.length == 0) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(Arrays.asList(schemas));
+    }
+
+    /**
+     * @return the declared properties, in document order
+     */
+    public Map<String, CompactSchema> getProperties() {
+        if (propertyNames.length == 0) {
+            return Collections.emptyMap();
+        }
+        return new PropertyMap();
+    }
+
+    /**
+     * @return the schema of a declared property, or null if the property is not declared
+     */
+    public CompactSchema getProperty(String name) {
+        int low = 0;
+        int high = propertyOrder.length - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int position = propertyOrder[middle];
+            int comparison = propertyNames[position].compareTo(name);
+            if (comparison < 0) {
+                low = middle + 1;
+            } else if (comparison > 0) {
+                high = middle - 1;
+            } else {
+                return propertySchemas[position];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the simple types of 'type', or null if there is no type
+     */
+    public SimpleTypeSet getSimpleTypes() {
+        return (flags & HAS_TYPE) == 0 ? null : types;
+    }
+
+    /**
+     * @return the simple types of 'disallow', without names that are not draft 3 types, or null if nothing is disallowed
+     */
+    public SimpleTypeSet getDisallowedTypes() {
+        return attributes.disallow == null ? null : SchemaDraft3.simpleTypes(attributes.disallow, false);
+    }
+
+    /**
+     * @return the schemas in a 'type' union
+     */
+    public List<CompactSchema> getSchemaTypes() {
+        return asList(schemaTypes);
+    }
+
+    /**
+     * @return 'type' in the form it was written, with schemas as CompactSchema, or null if there is no type
+     */
+    public TypeVariant getType() {
+        if ((flags & HAS_TYPE) == 0) {
+            return null;
+        }
+        ArrayList<TypeVariant> members = new ArrayList<TypeVariant>();
+        for (String name : types) {
+            members.add(TypeDeserializer.simpleType(name));
+        }
+        if ((flags & TYPE_UNION) == 0 && members.size() == 1) {
+            return members.get(0);
+        }
+        for (CompactSchema schema : schemaTypes) {
+            members.add(new TypeDeserializer.SchemaType<CompactSchema>(schema));
+        }
+        return new TypeDeserializer.UnionType<CompactSchema>(members);
+    }
+
+    public List<CompactSchema> getItems() {
+        return asList(items);
+    }
+
+    public TypeVariant getAdditionalItems() {
+        return attributes.additionalItems;
+    }
+
+    public boolean isRequired() {
+        return (flags & REQUIRED) != 0;
+    }
+
+    public boolean isAdditionalProperties() {
+        return (flags & ADDITIONAL_PROPERTIES) != 0;
+    }
+
+    public Set<String> getPatternProperties() {
+        return attributes.patternProperties;
+    }
+
+    public Map<String, TypeVariant> getDependencies() {
+        return attributes.dependencies;
+    }
+
+    public long getMinimum() {
+        return bounds.minimum;
+    }
+
+    public long getMaximum() {
+        return bounds.maximum;
+    }
+
+    public boolean isExclusiveMinimum() {
+        return (flags & EXCLUSIVE_MINIMUM) != 0;
+    }
+
+    public boolean isExclusiveMaximum() {
+        return (flags & EXCLUSIVE_MAXIMUM) != 0;
+    }
+
+    public int getMinItems() {
+        return bounds.minItems;
+    }
+
+    public int getMaxItems() {
+        return bounds.maxItems;
+    }
+
+    public boolean isUniqueItems() {
+        return (flags & UNIQUE_ITEMS) != 0;
+    }
+
+    public String getPattern() {
+        return attributes.pattern;
+    }
+
+    public int getMinLength() {
+        return bounds.minLength;
+    }
+
+    public int getMaxlength() {
+        return bounds.maxLength;
+    }
+
+    public List<JsonNode> getEnumerated() {
+        return attributes.enumerated;
+    }
+
+    public String getDefaultValue() {
+        return attributes.defaultValue;
+    }
+
+    public String getTitle() {
+        return attributes.title;
+    }
+
+    public String getDescription() {
+        return attributes.description;
+    }
+
+    public String getFormat() {
+        return attributes.format;
+    }
+
+    public int getDivisibleBy() {
+        return bounds.divisibleBy;
+    }
+
+    public TypeVariant getDisallow() {
+        return attributes.disallow;
+    }
+
+    public List<String> getExtendsSchemas() {
+        return attributes.extendsSchemas;
+    }
+
+    public URI getId() {
+        return attributes.id;
+    }
+
+    public URI getReference() {
+        return attributes.reference;
+    }
+
+    public URI getSchemaReference() {
+        return attributes.schemaReference;
+    }
+
+    /**
+     * @return the links of a hyper schema
+     */
+    public List<HyperLink> getLinks() {
+        return attributes.links;
+    }
+}
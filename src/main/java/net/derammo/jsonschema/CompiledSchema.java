@@ -0,0 +1,520 @@
+/*
+ * Copyright 2011 Ammo Goettsch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package net.derammo.jsonschema;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.node.ValueNode;
+
+/**
+ * One node of a compiled schema tree, built by {@link SchemaCompiler}.  Every check is resolved
+ * when the node is built, so validating an instance only reads the fields of this class.
+ *
+ * The fields are assigned while compiling, because a schema may refer back to itself and the
+ * node must exist before its children are compiled.  They are never modified afterwards, so nodes
+ * with the same shape may be shared by validators compiled from different schemas.
+ */
+final class CompiledSchema {
+    static final CompiledSchema[] NONE = new CompiledSchema[0];
+    static final String[] NO_NAMES = new String[0];
+
+    String id;
+
+    // section 5.1 and 5.25, with the schema members of the unions compiled separately
+    SimpleTypeSet types = SimpleTypeSet.ALL;
+    CompiledSchema[] typeSchemas = NONE;
+    SimpleTypeSet disallowedTypes = SimpleTypeSet.EMPTY;
+    CompiledSchema[] disallowedSchemas = NONE;
+
+    // numbers; the exclusive flags are folded into the inclusive bounds used for integral values
+    boolean checksNumbers;
+    boolean hasMinimum;
+    boolean hasMaximum;
+    long minimum;
+    long maximum;
+    boolean exclusiveMinimum;
+    boolean exclusiveMaximum;
+    long lowest = Long.MIN_VALUE;
+    long highest = Long.MAX_VALUE;
+    long divisibleBy;
+
+    // strings
+    boolean checksStrings;
+    int minLength;
+    int maxLength = Integer.MAX_VALUE;
+    PatternCache.Matcher pattern;
+
+    CanonicalJson.ValueSet enumeration;
+
+    // arrays; items is set when one schema applies to every item, tupleItems otherwise
+    boolean checksArrays;
+    int minItems;
+    int maxItems = Integer.MAX_VALUE;
+    CompiledSchema items;
+    CompiledSchema[] tupleItems = NONE;
+    CompiledSchema additionalItems;
+    boolean additionalItemsForbidden;
+    boolean uniqueItems;
+
+    // objects
+    boolean checksObjects;
+    String[] propertyNames = NO_NAMES;
+    CompiledSchema[] propertySchemas = NONE;
+    PropertyIndex propertyIndex = PropertyIndex.EMPTY;
+    boolean additionalProperties = true;
+    // all of the 'patternProperties' at once, or null if there are none
+    PatternCache.Matcher propertyPatterns;
+    String[] dependencyNames = NO_NAMES;
+    String[][] dependencyProperties = new String[0][];
+    CompiledSchema[] dependencySchemas = NONE;
+
+    // section 5.20 and 5.23, used when transforming instances; the default is null if there is none
+    ValueNode defaultValue;
+    Format format;
+
+    // section 5.26, every instance must also be valid against these
+    CompiledSchema[] extendsSchemas = NONE;
+
+    // set when some check has to look at the whole value, which streaming validation then buffers
+    boolean needsTree;
+
+    /**
+     * Validate an instance, reporting violations to the context.
+     * @return true if the instance is valid
+     */
+    boolean validate(JsonNode instance, ValidationContext context) {
+        int kind = SimpleTypeSet.kindOf(instance);
+        boolean valid = true;
+        if (!types.matchesKind(kind) && !matchesAny(typeSchemas, instance, context)) {
+            valid = false;
+            if (!context.isCollecting("type") || !context.collect("type", SimpleTypeSet.kindName(kind) + " value is not allowed")) {
+                return false;
+            }
+        }
+        if (disallowedTypes.matchesKind(kind) || matchesAny(disallowedSchemas, instance, context)) {
+            valid = false;
+            if (!context.isCollecting("disallow") || !context.collect("disallow", SimpleTypeSet.kindName(kind) + " value is disallowed")) {
+                return false;
+            }
+        }
+        if (enumeration != null && !checkEnumeration(instance, context)) {
+            valid = false;
+            if (!context.isCollecting()) {
+                return false;
+            }
+        }
+        boolean checked = true;
+        switch (kind) {
+        case SimpleTypeSet.INTEGER | SimpleTypeSet.NUMBER:
+            if (checksNumbers) {
+                if (instance.getNumberType() == JsonParser.NumberType.BIG_INTEGER) {
+                    checked = checkDouble(instance.getDoubleValue(), context);
+                } else {
+                    checked = checkLong(instance.getLongValue(), context);
+                }
+            }
+            break;
+        case SimpleTypeSet.NUMBER:
+            if (checksNumbers) {
+                checked = checkDouble(instance.getDoubleValue(), context);
+            }
+            break;
+        case SimpleTypeSet.STRING:
+            if (checksStrings) {
+                checked = checkString(instance.getTextValue(), context);
+            }
+            break;
+        case SimpleTypeSet.ARRAY:
+            if (checksArrays) {
+                checked = checkArray(instance, context);
+            }
+            break;
+        case SimpleTypeSet.OBJECT:
+            if (checksObjects) {
+                checked = checkObject(instance, context);
+            }
+            break;
+        default:
+        }
+        if (!checked) {
+            valid = false;
+            if (!context.isCollecting()) {
+                return false;
+            }
+        }
+        for (CompiledSchema schema : extendsSchemas) {
+            if (!schema.validate(instance, context)) {
+                valid = false;
+                if (!context.isCollecting()) {
+                    return false;
+                }
+            }
+        }
+        return valid;
+    }
+
+    /**
+     * @return true if the instance is valid against at least one of the schemas, without reporting errors
+     */
+    static boolean matchesAny(CompiledSchema[] schemas, JsonNode instance, ValidationContext context) {
+        for (CompiledSchema schema : schemas) {
+            context.beginProbe();
+            boolean valid = schema.validate(instance, context);
+            context.endProbe();
+            if (valid) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param value the instance, or null for an object or array read from a stream, which is not enumerated
+     */
+    boolean checkEnumeration(JsonNode value, ValidationContext context) {
+        if (value == null || !enumeration.contains(value)) {
+            context.collect("enum", "value is not one of the enumerated values");
+            return false;
+        }
+        return true;
+    }
+
+    boolean checkLong(long value, ValidationContext context) {
+        boolean valid = true;
+        if (value < lowest) {
+            valid = false;
+            if (!context.isCollecting("minimum") || !context.collect("minimum", value + " is less than " + (exclusiveMinimum ? "or equal to " : "") + "the minimum of " + minimum)) {
+                return false;
+            }
+        }
+        if (value > highest) {
+            valid = false;
+            if (!context.isCollecting("maximum") || !context.collect("maximum", value + " is greater than " + (exclusiveMaximum ? "or equal to " : "") + "the maximum of " + maximum)) {
+                return false;
+            }
+        }
+        if (divisibleBy != 0 && value % divisibleBy != 0) {
+            valid = false;
+            if (!context.isCollecting("divisibleBy") || !context.collect("divisibleBy", value + " is not divisible by " + divisibleBy)) {
+                return false;
+            }
+        }
+        return valid;
+    }
+
+    boolean checkDouble(double value, ValidationContext context) {
+        boolean valid = true;
+        if (hasMinimum && (value < minimum || (exclusiveMinimum && value == minimum))) {
+            valid = false;
+            if (!context.isCollecting("minimum") || !context.collect("minimum", value + " is less than " + (exclusiveMinimum ? "or equal to " : "") + "the minimum of " + minimum)) {
+                return false;
+            }
+        }
+        if (hasMaximum && (value > maximum || (exclusiveMaximum && value == maximum))) {
+            valid = false;
+            if (!context.isCollecting("maximum") || !context.collect("maximum", value + " is greater than " + (exclusiveMaximum ? "or equal to " : "") + "the maximum of " + maximum)) {
+                return false;
+            }
+        }
+        if (divisibleBy != 0 && value % divisibleBy != 0) {
+            valid = false;
+            if (!context.isCollecting("divisibleBy") || !context.collect("divisibleBy", value + " is not divisible by " + divisibleBy)) {
+                return false;
+            }
+        }
+        return valid;
+    }
+
+    boolean checkString(String value, ValidationContext context) {
+        boolean valid = true;
+        if (minLength > 0 || maxLength != Integer.MAX_VALUE) {
+            int length = value.codePointCount(0, value.length());
+            if (length < minLength) {
+                valid = false;
+                if (!context.isCollecting("minLength") || !context.collect("minLength", "length " + length + " is less than the minimum of " + minLength)) {
+                    return false;
+                }
+            }
+            if (length > maxLength) {
+                valid = false;
+                if (!context.isCollecting("maxlength") || !context.collect("maxlength", "length " + length + " is greater than the maximum of " + maxLength)) {
+                    return false;
+                }
+            }
+        }
+        if (pattern != null && !pattern.find(value)) {
+            valid = false;
+            if (!context.isCollecting("pattern") || !context.collect("pattern", "value does not match the pattern " + pattern.pattern())) {
+                return false;
+            }
+        }
+        return valid;
+    }
+
+    boolean checkItemCount(int size, ValidationContext context) {
+        boolean valid = true;
+        if (size < minItems) {
+            valid = false;
+            if (!context.isCollecting("minItems") || !context.collect("minItems", size + " items is less than the minimum of " + minItems)) {
+                return false;
+            }
+        }
+        if (size > maxItems) {
+            valid = false;
+            if (!context.isCollecting("maxItems") || !context.collect("maxItems", size + " items is greater than the maximum of " + maxItems)) {
+                return false;
+            }
+        }
+        if (additionalItemsForbidden && items == null && size > tupleItems.length) {
+            valid = false;
+            if (!context.isCollecting("additionalItems") || !context.collect("additionalItems", "no more than " + tupleItems.length + " items are allowed")) {
+                return false;
+            }
+        }
+        return valid;
+    }
+
+    /**
+     * @return schema for the item at the given index of an array, or null if the item is not constrained
+     */
+    CompiledSchema itemSchema(int index) {
+        if (items != null) {
+            return items;
+        }
+        if (index < tupleItems.length) {
+            return tupleItems[index];
+        }
+        return additionalItems;
+    }
+
+    private boolean checkArray(JsonNode instance, ValidationContext context) {
+        int size = instance.size();
+        boolean valid = checkItemCount(size, context);
+        if (!valid && !context.isCollecting()) {
+            return false;
+        }
+        if (uniqueItems && !checkUnique(instance, context)) {
+            valid = false;
+            if (!context.isCollecting()) {
+                return false;
+            }
+        }
+        for (int i = 0; i < size; i++) {
+            CompiledSchema schema = itemSchema(i);
+            if (schema != null) {
+                context.pushIndex(i);
+                boolean itemValid = schema.validate(instance.get(i), context);
+                context.pop();
+                if (!itemValid) {
+                    valid = false;
+                    if (!context.isCollecting()) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return valid;
+    }
+
+    /**
+     * Violations are reported in the order of the fields of the instance, followed by missing required properties
+     */
+    private boolean checkObject(JsonNode instance, ValidationContext context) {
+        boolean valid = true;
+        if (propertyNames.length > 0 || !additionalProperties) {
+            long[] seen = context.propertySet(propertyIndex);
+            int expected = 0;
+            Iterator<Map.Entry<String, JsonNode>> fields = instance.getFields();
+            while (fields.hasNext()) {
+                Map.Entry<String, JsonNode> field = fields.next();
+                String name = field.getKey();
+                int index = propertyIndex.indexOf(name, expected);
+                boolean propertyValid;
+                context.pushName(name);
+                if (index >= 0) {
+                    PropertyIndex.add(seen, index);
+                    expected = index + 1;
+                    propertyValid = propertySchemas[index].validate(field.getValue(), context);
+                } else if (additionalProperties || (propertyPatterns != null && propertyPatterns.find(name))) {
+                    propertyValid = true;
+                } else {
+                    propertyValid = false;
+                    context.collect("additionalProperties", "property is not declared");
+                }
+                context.pop();
+                if (!propertyValid) {
+                    valid = false;
+                    if (!context.isCollecting()) {
+                        return false;
+                    }
+                }
+            }
+            for (int i = propertyIndex.nextMissing(seen, 0); i >= 0; i = propertyIndex.nextMissing(seen, i + 1)) {
+                valid = false;
+                context.pushName(propertyNames[i]);
+                boolean collecting = context.collect("required", "property is required");
+                context.pop();
+                if (!collecting) {
+                    return false;
+                }
+            }
+        }
+        for (int i = 0; i < dependencyNames.length; i++) {
+            if (instance.get(dependencyNames[i]) != null && !checkDependency(i, instance, context)) {
+                valid = false;
+                if (!context.isCollecting()) {
+                    return false;
+                }
+            }
+        }
+        return valid;
+    }
+
+    /**
+     * Report each item that is equal to an earlier one, at the position of the later item
+     */
+    boolean checkUnique(JsonNode instance, ValidationContext context) {
+        int size = instance.size();
+        int[] earlier = CanonicalJson.duplicates(instance, context.itemScratch(CanonicalJson.scratchSize(size)));
+        if (earlier == null) {
+            return true;
+        }
+        for (int i = 0; i < earlier.length; i++) {
+            if (earlier[i] >= 0) {
+                context.pushIndex(i);
+                boolean collecting = context.isCollecting("uniqueItems") && context.collect("uniqueItems", "item is equal to item " + earlier[i]);
+                context.pop();
+                if (!collecting) {
+                    break;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return a hash of the checks of this node and the identities of its children
+     * @see #sameShape(CompiledSchema)
+     */
+    int shapeHash() {
+        int hash = Arrays.hashCode(propertyNames);
+        hash = hash * 31 + types.hashCode();
+        hash = hash * 31 + disallowedTypes.hashCode();
+        hash = hash * 31 + Long.hashCode(minimum);
+        hash = hash * 31 + Long.hashCode(maximum);
+        hash = hash * 31 + minLength;
+        hash = hash * 31 + maxLength;
+        hash = hash * 31 + minItems;
+        hash = hash * 31 + maxItems;
+        hash = hash * 31 + (enumeration == null ? 0 : enumeration.valuesHash());
+        for (CompiledSchema child : children()) {
+            hash = hash * 31 + System.identityHashCode(child);
+        }
+        return hash;
+    }
+
+    /**
+     * @return true if the nodes make the same checks, and refer to the same child instances
+     */
+    boolean sameShape(CompiledSchema other) {
+        return equal(id, other.id) && types.equals(other.types) && sameInstances(typeSchemas, other.typeSchemas)
+                && disallowedTypes.equals(other.disallowedTypes)
+                && sameInstances(disallowedSchemas, other.disallowedSchemas)
+                && minimum == other.minimum && maximum == other.maximum
+                && exclusiveMinimum == other.exclusiveMinimum && exclusiveMaximum == other.exclusiveMaximum
+                && divisibleBy == other.divisibleBy && minLength == other.minLength && maxLength == other.maxLength
+                && pattern == other.pattern
+                && (enumeration == null ? other.enumeration == null
+                        : other.enumeration != null && enumeration.sameValues(other.enumeration))
+                && minItems == other.minItems && maxItems == other.maxItems && items == other.items
+                && sameInstances(tupleItems, other.tupleItems) && additionalItems == other.additionalItems
+                && additionalItemsForbidden == other.additionalItemsForbidden && uniqueItems == other.uniqueItems
+                && Arrays.equals(propertyNames, other.propertyNames)
+                && sameInstances(propertySchemas, other.propertySchemas)
+                && propertyIndex.sameRequired(other.propertyIndex) && additionalProperties == other.additionalProperties
+                && propertyPatterns == other.propertyPatterns && Arrays.equals(dependencyNames, other.dependencyNames)
+                && Arrays.deepEquals(dependencyProperties, other.dependencyProperties)
+                && sameInstances(dependencySchemas, other.dependencySchemas)
+                && equal(defaultValue, other.defaultValue) && format == other.format
+                && sameInstances(extendsSchemas, other.extendsSchemas);
+    }
+
+    private static boolean sameInstances(CompiledSchema[] schemas, CompiledSchema[] others) {
+        if (schemas.length != others.length) {
+            return false;
+        }
+        for (int i = 0; i < schemas.length; i++) {
+            if (schemas[i] != others[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean equal(Object value, Object other) {
+        return value == null ? other == null : value.equals(other);
+    }
+
+    /**
+     * @return the nodes this node refers to directly, which may include this node
+     */
+    ArrayList<CompiledSchema> children() {
+        ArrayList<CompiledSchema> children = new ArrayList<CompiledSchema>();
+        children.addAll(Arrays.asList(typeSchemas));
+        children.addAll(Arrays.asList(disallowedSchemas));
+        children.addAll(Arrays.asList(tupleItems));
+        children.addAll(Arrays.asList(propertySchemas));
+        children.addAll(Arrays.asList(dependencySchemas));
+        children.addAll(Arrays.asList(extendsSchemas));
+        children.add(items);
+        children.add(additionalItems);
+        // dependencies without a schema, and absent item schemas
+        children.removeAll(Collections.singleton(null));
+        return children;
+    }
+
+    /**
+     * @return true if the property is listed in 'properties' or matches one of the 'patternProperties'
+     */
+    boolean isDeclaredProperty(String name) {
+        if (propertyIndex.indexOf(name) >= 0) {
+            return true;
+        }
+        return propertyPatterns != null && propertyPatterns.find(name);
+    }
+
+    private boolean checkDependency(int index, JsonNode instance, ValidationContext context) {
+        boolean valid = true;
+        for (String name : dependencyProperties[index]) {
+            if (instance.get(name) == null) {
+                valid = false;
+                if (!context.isCollecting("dependencies") || !context.collect("dependencies", "property " + dependencyNames[index] + " requires property " + name)) {
+                    return false;
+                }
+            }
+        }
+        if (dependencySchemas[index] != null && !dependencySchemas[index].validate(instance, context)) {
+            return false;
+        }
+        return valid;
+    }
+}
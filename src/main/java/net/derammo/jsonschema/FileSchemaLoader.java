@@ -0,0 +1,75 @@
+/*
+ * Copyright 2011 Ammo Goettsch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package net.derammo.jsonschema;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+
+/**
+ * Loads schema documents from files in a local directory
+ */
+public class FileSchemaLoader implements SchemaLoader {
+    private final URI base;
+    private final File directory;
+
+    /**
+     * @param directory directory holding the documents, which are then identified by their file: URIs
+     */
+    public FileSchemaLoader(File directory) {
+        this(directory.toURI(), directory);
+    }
+
+    /**
+     * @param base URI prefix under which the documents are published, such as http://example.com/schemas/
+     * @param directory directory holding the documents, at the same relative paths as under the base URI
+     */
+    public FileSchemaLoader(URI base, File directory) {
+        this.base = base.normalize();
+        this.directory = directory;
+    }
+
+    public InputStream open(URI uri) throws IOException {
+        File file = getFile(uri);
+        if (file == null || !file.isFile()) {
+            return null;
+        }
+        return new FileInputStream(file);
+    }
+
+    /**
+     * @return the file holding the document, or null if the URI is not below the base URI or the file is
+     * not inside the directory, such as through encoded dot segments or a symbolic link
+     */
+    File getFile(URI uri) throws IOException {
+        URI relative = base.relativize(uri.normalize());
+        if (relative.isAbsolute()) {
+            return null;
+        }
+        File file = new File(directory, relative.getPath()).getCanonicalFile();
+        String inside = directory.getCanonicalPath() + File.separator;
+        if (!file.getPath().startsWith(inside)) {
+            return null;
+        }
+        return file;
+    }
+
+    File getDirectory() {
+        return directory;
+    }
+}
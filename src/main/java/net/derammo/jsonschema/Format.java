@@ -0,0 +1,219 @@
+/*
+ * Copyright 2011 Ammo Goettsch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package net.derammo.jsonschema;
+
+import java.io.IOException;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+
+import org.codehaus.jackson.JsonGenerator;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+
+/**
+ * Values of 'format' (section 5.23) that have a canonical form, and how to write a value in that form.
+ * Values that cannot be converted, or only to a type the schema does not allow, are left as they are,
+ * for validation to judge.
+ */
+enum Format {
+    /**
+     * ISO 8601 in UTC, with fractional seconds only if there are any; also converts milliseconds since the epoch
+     */
+    DATE_TIME("date-time", SimpleTypeSet.STRING) {
+        @Override
+        boolean write(JsonParser parser, JsonGenerator generator) throws IOException {
+            Instant instant;
+            if (parser.getCurrentToken() == JsonToken.VALUE_NUMBER_INT) {
+                if (parser.getNumberType() == JsonParser.NumberType.BIG_INTEGER) {
+                    return false;
+                }
+                instant = Instant.ofEpochMilli(parser.getLongValue());
+            } else {
+                instant = parseDateTime(parser);
+            }
+            if (instant == null) {
+                return false;
+            }
+            generator.writeString(DateTimeFormatter.ISO_INSTANT.format(instant));
+            return true;
+        }
+    },
+    /**
+     * YYYY-MM-DD
+     */
+    DATE("date", SimpleTypeSet.STRING) {
+        @Override
+        boolean write(JsonParser parser, JsonGenerator generator) throws IOException {
+            if (parser.getCurrentToken() != JsonToken.VALUE_STRING) {
+                return false;
+            }
+            try {
+                generator.writeString(LocalDate.parse(parser.getText().trim()).toString());
+                return true;
+            } catch (DateTimeException e) {
+                return false;
+            }
+        }
+    },
+    /**
+     * hh:mm:ss, with fractional seconds only if there are any
+     */
+    TIME("time", SimpleTypeSet.STRING) {
+        @Override
+        boolean write(JsonParser parser, JsonGenerator generator) throws IOException {
+            if (parser.getCurrentToken() != JsonToken.VALUE_STRING) {
+                return false;
+            }
+            try {
+                LocalTime time = LocalTime.parse(parser.getText().trim());
+                generator.writeString((time.getNano() == 0 ? SECONDS : DateTimeFormatter.ISO_LOCAL_TIME).format(time));
+                return true;
+            } catch (DateTimeException e) {
+                return false;
+            }
+        }
+    },
+    /**
+     * Milliseconds since the epoch, as a number; also converts date-time strings and strings of digits
+     */
+    UTC_MILLISEC("utc-millisec", SimpleTypeSet.INTEGER | SimpleTypeSet.NUMBER) {
+        @Override
+        boolean write(JsonParser parser, JsonGenerator generator) throws IOException {
+            if (parser.getCurrentToken() != JsonToken.VALUE_STRING) {
+                return false;
+            }
+            String text = parser.getText().trim();
+            try {
+                generator.writeNumber(Long.parseLong(text));
+                return true;
+            } catch (NumberFormatException e) {
+                // not a number, so perhaps a date
+            }
+            Instant instant = parseDateTime(parser);
+            if (instant == null) {
+                return false;
+            }
+            try {
+                generator.writeNumber(instant.toEpochMilli());
+                return true;
+            } catch (ArithmeticException e) {
+                // too far from the epoch for a long
+                return false;
+            }
+        }
+    },
+    /**
+     * Lower case, without the dot of a fully qualified name
+     */
+    HOST_NAME("host-name", SimpleTypeSet.STRING) {
+        @Override
+        boolean write(JsonParser parser, JsonGenerator generator) throws IOException {
+            if (parser.getCurrentToken() != JsonToken.VALUE_STRING) {
+                return false;
+            }
+            String host = parser.getText().trim().toLowerCase(Locale.ROOT);
+            if (host.endsWith(".")) {
+                host = host.substring(0, host.length() - 1);
+            }
+            generator.writeString(host);
+            return true;
+        }
+    },
+    /**
+     * Domain in lower case; the local part is case sensitive and kept
+     */
+    EMAIL("email", SimpleTypeSet.STRING) {
+        @Override
+        boolean write(JsonParser parser, JsonGenerator generator) throws IOException {
+            if (parser.getCurrentToken() != JsonToken.VALUE_STRING) {
+                return false;
+            }
+            String address = parser.getText().trim();
+            int at = address.lastIndexOf('@');
+            if (at < 0) {
+                return false;
+            }
+            generator.writeString(address.substring(0, at + 1) + address.substring(at + 1).toLowerCase(Locale.ROOT));
+            return true;
+        }
+    };
+
+    private static final DateTimeFormatter SECONDS = DateTimeFormatter.ofPattern("HH:mm:ss");
+
+    private final String name;
+    // kind of the values written, as in SimpleTypeSet
+    private final int kind;
+
+    private Format(String name, int kind) {
+        this.name = name;
+        this.kind = kind;
+    }
+
+    /**
+     * @return the format with this name, or null if values of that format are not converted
+     */
+    static Format of(String name) {
+        if (name != null) {
+            for (Format format : values()) {
+                if (format.name.equals(name)) {
+                    return format;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return true if the schema allows the type of the values written, so that converting a value does
+     *         not make it invalid
+     */
+    boolean fits(CompiledSchema schema) {
+        return schema.types.matchesKind(kind) && !schema.disallowedTypes.matchesKind(kind);
+    }
+
+    /**
+     * Write the current scalar value of the parser in canonical form
+     * @return false if the value cannot be converted, in which case nothing has been written
+     */
+    abstract boolean write(JsonParser parser, JsonGenerator generator) throws IOException;
+
+    /**
+     * @return the date-time string of the parser as an instant, or null if it is not one; a space or lower case
+     *         't' may separate date and time, and 'z' may be lower case
+     */
+    private static Instant parseDateTime(JsonParser parser) throws IOException {
+        if (parser.getCurrentToken() != JsonToken.VALUE_STRING) {
+            return null;
+        }
+        String text = parser.getText().trim();
+        if (text.length() > 10 && (text.charAt(10) == ' ' || text.charAt(10) == 't')) {
+            text = text.substring(0, 10) + 'T' + text.substring(11);
+        }
+        if (text.endsWith("z")) {
+            text = text.substring(0, text.length() - 1) + 'Z';
+        }
+        try {
+            return OffsetDateTime.parse(text).toInstant();
+        } catch (DateTimeException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2011 Ammo Goettsch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package net.derammo.jsonschema;
+
+import org.codehaus.jackson.JsonNode;
+
+/**
+ * Base class of the validator classes generated by {@link SchemaValidator#generate()}.  It is public
+ * only because the generated classes are defined by their own class loaders, and it is not meant to
+ * be extended otherwise.
+ *
+ * The context passed around by generated code is a {@link ValidationContext}, typed as Object here so
+ * that generated classes do not refer to package-private types.
+ */
+public abstract class GeneratedValidator {
+    // nodes of the compiled schema, in the order they are numbered by the generated code
+    private CompiledSchema[] nodes;
+
+    protected GeneratedValidator() {
+    }
+
+    void setNodes(CompiledSchema[] nodes) {
+        this.nodes = nodes;
+    }
+
+    /**
+     * Validate an instance against the root schema, reporting violations to the context.
+     * @return true if the instance is valid
+     */
+    protected abstract boolean validate(JsonNode instance, Object context);
+
+    protected static int kind(JsonNode value) {
+        return SimpleTypeSet.kindOf(value);
+    }
+
+    protected static String kindName(int kind) {
+        return SimpleTypeSet.kindName(kind);
+    }
+
+    /**
+     * @see ValidationContext#collect(String, String)
+     */
+    protected static boolean collect(Object context, String keyword, String message) {
+        return ((ValidationContext) context).collect(keyword, message);
+    }
+
+    protected static boolean collecting(Object context) {
+        return ((ValidationContext) context).isCollecting();
+    }
+
+    /**
+     * @see ValidationContext#isCollecting(String)
+     */
+    protected static boolean collecting(Object context, String keyword) {
+        return ((ValidationContext) context).isCollecting(keyword);
+    }
+
+    protected static void pushName(Object context, String name) {
+        ((ValidationContext) context).pushName(name);
+    }
+
+    protected static void pushIndex(Object context, int index) {
+        ((ValidationContext) context).pushIndex(index);
+    }
+
+    protected static void pop(Object context) {
+        ((ValidationContext) context).pop();
+    }
+
+    protected static void beginProbe(Object context) {
+        ((ValidationContext) context).beginProbe();
+    }
+
+    protected static void endProbe(Object context) {
+        ((ValidationContext) context).endProbe();
+    }
+
+    /**
+     * @return true if the value is one of those enumerated by the node, otherwise the violation is reported
+     */
+    protected final boolean enumerated(int node, JsonNode value, Object context) {
+        return nodes[node].checkEnumeration(value, (ValidationContext) context);
+    }
+
+    /**
+     * @return true if no item of the array equals another, otherwise each duplicate is reported
+     */
+    protected final boolean unique(int node, JsonNode array, Object context) {
+        return nodes[node].checkUnique(array, (ValidationContext) context);
+    }
+
+    /**
+     * @return true if the text matches the 'pattern' of the node
+     */
+    protected final boolean matches(int node, String text) {
+        return nodes[node].pattern.find(text);
+    }
+
+    /**
+     * @return true if the name matches one of the 'patternProperties' of the node
+     */
+    protected final boolean matchesPropertyPattern(int node, String name) {
+        return nodes[node].isDeclaredProperty(name);
+    }
+}
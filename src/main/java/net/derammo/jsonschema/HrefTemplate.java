@@ -0,0 +1,253 @@
+/*
+ * Copyright 2011 Ammo Goettsch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package net.derammo.jsonschema;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.codehaus.jackson.JsonGenerator;
+import org.codehaus.jackson.JsonNode;
+
+/**
+ * The 'href' of a link, parsed once into literal text and the names of the instance properties that are
+ * substituted for {name} (section 6.1.1.1).  The name may be percent-encoded, so that it can contain
+ * braces, and {@literal {@}} stands for the instance itself.
+ *
+ * Substituted values are percent-encoded as UTF-8, leaving only the unreserved characters of RFC 3986, so a
+ * value cannot add path segments or a query to the link.  Strings are substituted as they are, numbers and
+ * booleans as their JSON text, and missing properties, nulls, objects and arrays as nothing.  The literal
+ * text is already part of a URI and is copied as written.
+ *
+ * Expanding appends to a StringBuilder or writes to a JsonGenerator, and allocates nothing but the growth
+ * of the builder, so the links of every item of a large collection can be written without building strings.
+ * Instances are immutable and may be shared between threads.
+ *
+ * <pre>
+ * StringBuilder href = new StringBuilder();
+ * for (JsonNode item : items) {
+ *     href.setLength(0);
+ *     template.expand(item, href);
+ * }
+ * </pre>
+ */
+public final class HrefTemplate {
+    // substituted for the name @
+    private static final String INSTANCE = "@";
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+    // buffers for writing expansions to a generator, which takes characters from an array
+    private static final ThreadLocal<StringBuilder> EXPANSION = new ThreadLocal<StringBuilder>() {
+        @Override
+        protected StringBuilder initialValue() {
+            return new StringBuilder(128);
+        }
+    };
+    private static final ThreadLocal<char[][]> CHARACTERS = new ThreadLocal<char[][]>() {
+        @Override
+        protected char[][] initialValue() {
+            return new char[][] { new char[128] };
+        }
+    };
+
+    private final String template;
+    // literals[i] precedes names[i], and the last literal follows the last name
+    private final String[] literals;
+    private final String[] names;
+
+    private HrefTemplate(String template, String[] literals, String[] names) {
+        this.template = template;
+        this.literals = literals;
+        this.names = names;
+    }
+
+    /**
+     * @param href the 'href' of a link; text between unmatched braces is literal
+     */
+    public static HrefTemplate compile(String href) {
+        ArrayList<String> literals = new ArrayList<String>();
+        ArrayList<String> names = new ArrayList<String>();
+        int start = 0;
+        int open = href.indexOf('{');
+        while (open >= 0) {
+            int close = href.indexOf('}', open + 1);
+            if (close < 0) {
+                break;
+            }
+            literals.add(href.substring(start, open));
+            names.add(decode(href.substring(open + 1, close)));
+            start = close + 1;
+            open = href.indexOf('{', start);
+        }
+        literals.add(href.substring(start));
+        return new HrefTemplate(href, literals.toArray(new String[literals.size()]), names.toArray(new String[names.size()]));
+    }
+
+    public String getTemplate() {
+        return template;
+    }
+
+    /**
+     * @return names of the properties that are substituted, in the order they occur; "@" is the instance itself
+     */
+    public List<String> getPropertyNames() {
+        return Collections.unmodifiableList(Arrays.asList(names));
+    }
+
+    /**
+     * @return the expanded link
+     */
+    public String expand(JsonNode instance) {
+        if (names.length == 0) {
+            return template;
+        }
+        return expand(instance, new StringBuilder(template.length() + 16)).toString();
+    }
+
+    /**
+     * Append the expanded link, without allocating anything but the growth of the builder
+     * @param instance the instance the link belongs to
+     * @param out builder to append to
+     * @return the builder
+     */
+    public StringBuilder expand(JsonNode instance, StringBuilder out) {
+        for (int i = 0; i < names.length; i++) {
+            out.append(literals[i]);
+            JsonNode value = names[i] == INSTANCE ? instance : instance.get(names[i]);
+            if (value != null) {
+                appendValue(value, out);
+            }
+        }
+        return out.append(literals[names.length]);
+    }
+
+    /**
+     * Write the expanded link as a string value, through buffers that are reused by the calling thread
+     * @param instance the instance the link belongs to
+     * @param generator positioned where a value may be written
+     */
+    public void write(JsonNode instance, JsonGenerator generator) throws IOException {
+        if (names.length == 0) {
+            generator.writeString(template);
+            return;
+        }
+        StringBuilder expansion = EXPANSION.get();
+        expansion.setLength(0);
+        expand(instance, expansion);
+        char[][] holder = CHARACTERS.get();
+        int length = expansion.length();
+        if (holder[0].length < length) {
+            holder[0] = new char[Math.max(length, holder[0].length * 2)];
+        }
+        expansion.getChars(0, length, holder[0], 0);
+        generator.writeString(holder[0], 0, length);
+    }
+
+    @Override
+    public String toString() {
+        return template;
+    }
+
+    private static void appendValue(JsonNode value, StringBuilder out) {
+        if (value.isTextual()) {
+            appendEncoded(value.getTextValue(), out);
+        } else if (value.isIntegralNumber() && value.getNumberType() != org.codehaus.jackson.JsonParser.NumberType.BIG_INTEGER) {
+            // digits and the sign need no encoding
+            out.append(value.getLongValue());
+        } else if (value.isNumber()) {
+            // only the plus of an exponent would need encoding, and Java does not write it
+            out.append(value.asText());
+        } else if (value.isBoolean()) {
+            out.append(value.getBooleanValue());
+        }
+    }
+
+    /**
+     * Append text percent-encoded as UTF-8, except the unreserved characters of RFC 3986
+     */
+    static void appendEncoded(String text, StringBuilder out) {
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '-' || c == '.'
+                        || c == '_' || c == '~') {
+                    out.append(c);
+                } else {
+                    appendByte(c, out);
+                }
+            } else if (c < 0x800) {
+                appendByte(0xc0 | (c >> 6), out);
+                appendByte(0x80 | (c & 0x3f), out);
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(text.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, text.charAt(++i));
+                appendByte(0xf0 | (codePoint >> 18), out);
+                appendByte(0x80 | ((codePoint >> 12) & 0x3f), out);
+                appendByte(0x80 | ((codePoint >> 6) & 0x3f), out);
+                appendByte(0x80 | (codePoint & 0x3f), out);
+            } else {
+                // an unpaired surrogate is written as the replacement character, as by String.getBytes
+                if (Character.isSurrogate(c)) {
+                    c = '\ufffd';
+                }
+                appendByte(0xe0 | (c >> 12), out);
+                appendByte(0x80 | ((c >> 6) & 0x3f), out);
+                appendByte(0x80 | (c & 0x3f), out);
+            }
+        }
+    }
+
+    private static void appendByte(int b, StringBuilder out) {
+        out.append('%').append(HEX[(b >> 4) & 0xf]).append(HEX[b & 0xf]);
+    }
+
+    /**
+     * @return the name with percent-encoded UTF-8 decoded, and the instance marker as the shared constant
+     */
+    private static String decode(String name) {
+        if (name.equals(INSTANCE)) {
+            return INSTANCE;
+        }
+        if (name.indexOf('%') < 0) {
+            return name;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(name.length());
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c == '%' && i + 2 < name.length() && Character.digit(name.charAt(i + 1), 16) >= 0
+                    && Character.digit(name.charAt(i + 2), 16) >= 0) {
+                bytes.write(Integer.parseInt(name.substring(i + 1, i + 3), 16));
+                i += 2;
+            } else if (c < 0x80) {
+                bytes.write(c);
+            } else {
+                // characters that were not encoded are kept as they are, whole code points at a time
+                int codePoint = name.codePointAt(i);
+                i += Character.charCount(codePoint) - 1;
+                if (Character.isSurrogate(c) && !Character.isSupplementaryCodePoint(codePoint)) {
+                    codePoint = '\ufffd';
+                }
+                byte[] encoded = new String(Character.toChars(codePoint)).getBytes(StandardCharsets.UTF_8);
+                bytes.write(encoded, 0, encoded.length);
+            }
+        }
+        return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
@@ -15,22 +15,40 @@
  */
 package net.derammo.jsonschema;
 
+import org.codehaus.jackson.annotate.JsonIgnore;
+
 public class HyperLink {
   String href;
   Relation rel;
+  // parsed from href when first expanded
+  private volatile HrefTemplate template;
 
   public enum Relation {
     related
   }
 
   public String getHref() {
-    // REVISIT: this class should handle the URI escaping rules 
-    // for this field, since java.net.URI cannot handle JSON pointers 
+    // the template as written; use getHrefTemplate() to expand it with escaped instance values,
+    // since java.net.URI cannot handle JSON pointers
     return href;
   }
 
   public void setHref(String href) {
     this.href = href;
+    this.template = null;
+  }
+
+  /**
+   * @return href parsed for expansion against instances, or null if there is no href
+   */
+  @JsonIgnore
+  public HrefTemplate getHrefTemplate() {
+    HrefTemplate result = template;
+    if (result == null && href != null) {
+      result = HrefTemplate.compile(href);
+      template = result;
+    }
+    return result;
   }
 
   public Relation getRel() {
@@ -0,0 +1,273 @@
+/*
+ * Copyright 2011 Ammo Goettsch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package net.derammo.jsonschema;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+
+import net.derammo.jsonschema.TypeDeserializer.TypeVariant;
+
+import org.codehaus.jackson.JsonParseException;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.util.TokenBuffer;
+
+/**
+ * Reads schemas whose subschemas are only parsed when they are first used.  'properties', 'items'
+ * and union 'type's are skipped when a schema is read, and only their byte ranges in the document
+ * are kept.  The first call of {@link SchemaDraft3#getProperties()}, {@link SchemaDraft3#getItems()}
+ * or of the getters of 'type' reads the schemas of that attribute, which are in turn lazy.  The
+ * other attributes, including those of application schema classes, are bound as usual.
+ *
+ * Reading a large document this way only costs a scan of its tokens, and the time and memory to
+ * build schemas are spent on the parts that are used.  The document is kept in memory until all
+ * of its subschemas have been read.  Subschemas may be read from several threads; each is read once.
+ *
+ * An attribute that turns out not to be well-formed when it is read causes the getter to throw
+ * IllegalStateException, since the getters cannot throw the original exception.
+ *
+ * @param <ApplicationSchema> class the documents are bound to, such as JsonSchema
+ */
+public final class LazySchemaReader<ApplicationSchema extends SchemaDraft3<ApplicationSchema>> {
+    // attributes whose schemas are read lazily
+    static final int PROPERTIES = 0;
+    static final int ITEMS = 1;
+    static final int TYPE = 2;
+
+    private final Class<ApplicationSchema> schemaClass;
+    private final ObjectMapper mapper;
+
+    /**
+     * @param schemaClass class the documents are bound to, such as JsonSchema
+     */
+    public LazySchemaReader(Class<ApplicationSchema> schemaClass) {
+        this(schemaClass, SchemaModule.createObjectMapper(schemaClass));
+    }
+
+    /**
+     * @param schemaClass class the documents are bound to, such as JsonSchema
+     * @param mapper mapper used to bind the attributes of each schema, as created by {@link SchemaModule#createObjectMapper(Class)}
+     */
+    public LazySchemaReader(Class<ApplicationSchema> schemaClass, ObjectMapper mapper) {
+        this.schemaClass = schemaClass;
+        this.mapper = mapper;
+    }
+
+    /**
+     * @param document UTF-8 encoded schema document, which must not be changed afterwards
+     * @return the root schema, whose subschemas are read when they are first used
+     * @throws IOException if the root schema is not well-formed
+     */
+    public ApplicationSchema read(byte[] document) throws IOException {
+        return read(document, 0, document.length);
+    }
+
+    /**
+     * @param in UTF-8 encoded schema document, which is read to the end but not closed
+     * @see #read(byte[])
+     */
+    public ApplicationSchema read(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int count;
+        while ((count = in.read(buffer)) > 0) {
+            out.write(buffer, 0, count);
+        }
+        return read(out.toByteArray());
+    }
+
+    /**
+     * Read the schema in a range of a document, binding all attributes but the lazy ones
+     */
+    ApplicationSchema read(byte[] document, int offset, int length) throws IOException {
+        JsonParser parser = mapper.getJsonFactory().createJsonParser(document, offset, length);
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new JsonParseException("a schema must be an object", parser.getCurrentLocation());
+        }
+        TokenBuffer attributes = new TokenBuffer(mapper);
+        attributes.writeStartObject();
+        Pending pending = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+            int part = lazyPart(name, token);
+            if (part < 0) {
+                attributes.writeFieldName(name);
+                attributes.copyCurrentStructure(parser);
+            } else {
+                if (pending == null) {
+                    pending = new Pending(document);
+                }
+                pending.defer(part, skip(parser));
+            }
+        }
+        attributes.writeEndObject();
+        parser.close();
+        JsonParser buffered = attributes.asParser(mapper);
+        buffered.nextToken();
+        ApplicationSchema schema = mapper.readValue(buffered, schemaClass);
+        if (pending != null) {
+            schema.attachPending(pending);
+        }
+        return schema;
+    }
+
+    /**
+     * @return the attribute to read lazily, or -1 if it is bound now
+     */
+    private static int lazyPart(String name, JsonToken token) {
+        if (token == JsonToken.START_OBJECT) {
+            if ("properties".equals(name)) {
+                return PROPERTIES;
+            }
+            if ("items".equals(name)) {
+                return ITEMS;
+            }
+        } else if (token == JsonToken.START_ARRAY) {
+            if ("items".equals(name)) {
+                return ITEMS;
+            }
+            if ("type".equals(name)) {
+                return TYPE;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Skip the object or array starting at the current token
+     * @return the byte range of the value in the document, as start and end offsets
+     */
+    private static long skip(JsonParser parser) throws IOException {
+        // for byte sources, the character offset of the current location counts bytes from the start
+        // of the array, and is the offset of the last byte of the current token
+        long start = parser.getCurrentLocation().getCharOffset();
+        parser.skipChildren();
+        long end = parser.getCurrentLocation().getCharOffset() + 1;
+        return (start << 32) | end;
+    }
+
+    private void readPart(ApplicationSchema schema, int part, byte[] document, long range) throws IOException {
+        int start = (int) (range >>> 32);
+        int end = (int) range;
+        JsonParser parser = mapper.getJsonFactory().createJsonParser(document, start, end - start);
+        JsonToken token = parser.nextToken();
+        switch (part) {
+        case PROPERTIES: {
+            LinkedHashMap<String, ApplicationSchema> properties = new LinkedHashMap<String, ApplicationSchema>();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.getCurrentName();
+                properties.put(name, readSchema(parser, document));
+            }
+            schema.setProperties(properties);
+            break;
+        }
+        case ITEMS: {
+            ArrayList<ApplicationSchema> items = new ArrayList<ApplicationSchema>();
+            if (token == JsonToken.START_OBJECT) {
+                // a single schema, which is read as a list of one as with ACCEPT_SINGLE_VALUE_AS_ARRAY
+                items.add(read(document, start, end - start));
+            } else {
+                while (parser.nextToken() != JsonToken.END_ARRAY) {
+                    items.add(readSchema(parser, document));
+                }
+            }
+            schema.setItems(items);
+            break;
+        }
+        default: {
+            // see TypeDeserializer.deserialize for the eager version
+            ArrayList<TypeVariant> types = new ArrayList<TypeVariant>();
+            while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+                if (token == JsonToken.VALUE_STRING) {
+                    types.add(TypeDeserializer.simpleType(parser));
+                } else if (token == JsonToken.START_OBJECT) {
+                    types.add(new TypeDeserializer.SchemaType<ApplicationSchema>(readSchema(parser, document)));
+                } else {
+                    throw new JsonParseException("union types can only directly contain simple types and schemas",
+                            parser.getCurrentLocation());
+                }
+            }
+            schema.setType(new TypeDeserializer.UnionType<ApplicationSchema>(types));
+        }
+        }
+        parser.close();
+    }
+
+    /**
+     * Read the schema starting at the current or next token, leaving the parser on its last token
+     */
+    private ApplicationSchema readSchema(JsonParser parser, byte[] document) throws IOException {
+        if (parser.getCurrentToken() != JsonToken.START_OBJECT && parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new JsonParseException("a schema must be an object", parser.getCurrentLocation());
+        }
+        long range = skip(parser);
+        int start = (int) (range >>> 32);
+        return read(document, start, (int) range - start);
+    }
+
+    /**
+     * The lazy attributes of one schema that have not been read yet, as byte ranges of the document
+     */
+    final class Pending {
+        private final byte[] document;
+        // start and end offsets of each attribute, or 0 once it has been read or replaced
+        private final long[] ranges = new long[3];
+        private volatile int remaining;
+
+        Pending(byte[] document) {
+            this.document = document;
+        }
+
+        void defer(int part, long range) {
+            if (ranges[part] == 0) {
+                remaining++;
+            }
+            ranges[part] = range;
+        }
+
+        @SuppressWarnings("unchecked")
+        void materialize(SchemaDraft3<?> schema, int part) {
+            // the volatile read orders the read of the range after the write of the attribute that cleared it
+            if (remaining == 0) {
+                return;
+            }
+            synchronized (this) {
+                long range = ranges[part];
+                if (range == 0) {
+                    return;
+                }
+                try {
+                    // the setter discards the range
+                    readPart((ApplicationSchema) schema, part, document, range);
+                } catch (IOException e) {
+                    throw new IllegalStateException("cannot read subschemas of " + schema + ": " + e.getMessage(), e);
+                }
+            }
+        }
+
+        synchronized void discard(int part) {
+            if (ranges[part] != 0) {
+                ranges[part] = 0;
+                remaining--;
+            }
+        }
+    }
+}
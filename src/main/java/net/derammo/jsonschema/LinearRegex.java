@@ -0,0 +1,754 @@
+/*
+ * Copyright 2011 Ammo Goettsch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package net.derammo.jsonschema;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Regular expressions of the ECMA 262 dialect used by 'pattern' and 'patternProperties', matched by
+ * simulating all paths through the expression at once (a Pike VM), so the time to match is linear in
+ * the length of the text whatever the pattern.  Several patterns may be compiled into one program,
+ * which then finds whether any of them matches in a single pass over the text.
+ *
+ * Everything but back references and lookahead is supported: alternation, groups, greedy and lazy
+ * quantifiers, character classes with the \d, \w and \s escapes, '.', and the anchors ^, $, \b and \B.
+ * Since only the question whether a pattern matches is answered, captures and laziness make no
+ * difference.  Patterns using anything else are rejected with PatternSyntaxException.
+ *
+ * Matching can be bounded by a number of steps, one for each state of the program that is live at a
+ * position of the text; text that takes more steps throws {@link PatternBudgetException}, rather than
+ * failing to match, since a pattern that fails to match can make an instance valid.
+ */
+final class LinearRegex implements PatternCache.Matcher {
+    // more instructions than this, usually from large counted repetitions, are rejected
+    static final int MAX_PROGRAM = 20000;
+
+    // instructions; those that consume a character are CHAR, CLASS and ANY
+    private static final int CHAR = 0;
+    private static final int CLASS = 1;
+    private static final int ANY = 2;
+    private static final int SPLIT = 3;
+    private static final int JUMP = 4;
+    private static final int MATCH = 5;
+    private static final int LINE_START = 6;
+    private static final int LINE_END = 7;
+    private static final int WORD_BOUNDARY = 8;
+    private static final int NOT_WORD_BOUNDARY = 9;
+
+    private static final char[] DIGIT = { '0', '9' };
+    private static final char[] WORD = { '0', '9', 'A', 'Z', '_', '_', 'a', 'z' };
+    private static final char[] SPACE = { '\t', '\r', ' ', ' ', '\u00a0', '\u00a0', '\u1680', '\u1680', '\u180e', '\u180e',
+            '\u2000', '\u200a', '\u2028', '\u2029', '\u202f', '\u202f', '\u205f', '\u205f', '\u3000', '\u3000',
+            '\ufeff', '\ufeff' };
+
+    /**
+     * Lists of states for one match, reused by the matches of a thread
+     */
+    private static final class Scratch {
+        int[] current;
+        int[] next;
+        int[] stack;
+        // generation in which each state was last added to a list
+        int[] marks;
+        int generation;
+
+        Scratch(int size) {
+            current = new int[size];
+            next = new int[size];
+            // each state pushes at most two others, once per generation
+            stack = new int[size * 2 + 1];
+            marks = new int[size];
+        }
+    }
+
+    private final String pattern;
+    private final int stepBudget;
+    private final int[] ops;
+    private final int[] args;
+    private final int[] alternatives;
+    // sorted inclusive ranges of the character classes, as pairs of characters
+    private final char[][] classes;
+    // true if every pattern starts with ^, so matches can only start at the start of the text
+    private final boolean anchored;
+    private final ThreadLocal<Scratch> scratch = new ThreadLocal<Scratch>() {
+        @Override
+        protected Scratch initialValue() {
+            return new Scratch(ops.length);
+        }
+    };
+
+    /**
+     * @param patterns patterns that the text is matched against at once
+     * @param stepBudget number of steps after which matching gives up, or 0 for no limit
+     * @throws PatternSyntaxException if a pattern is not valid or uses features that are not supported
+     */
+    LinearRegex(List<String> patterns, int stepBudget) {
+        Compiler compiler = new Compiler();
+        compiler.compileAny(patterns);
+        this.pattern = patterns.size() == 1 ? patterns.get(0) : patterns.toString();
+        this.stepBudget = stepBudget;
+        this.ops = Arrays.copyOf(compiler.ops, compiler.size);
+        this.args = Arrays.copyOf(compiler.args, compiler.size);
+        this.alternatives = Arrays.copyOf(compiler.alternatives, compiler.size);
+        this.classes = compiler.classes.toArray(new char[compiler.classes.size()][]);
+        this.anchored = startsWithLineStart(0, new boolean[ops.length]);
+    }
+
+    private boolean startsWithLineStart(int pc, boolean[] visited) {
+        if (visited[pc]) {
+            return true;
+        }
+        visited[pc] = true;
+        switch (ops[pc]) {
+        case SPLIT:
+            return startsWithLineStart(args[pc], visited) && startsWithLineStart(alternatives[pc], visited);
+        case JUMP:
+            return startsWithLineStart(args[pc], visited);
+        default:
+            return ops[pc] == LINE_START;
+        }
+    }
+
+    public String pattern() {
+        return pattern;
+    }
+
+    /**
+     * @return true if some part of the text matches one of the patterns
+     * @throws PatternBudgetException if matching takes more steps than the budget
+     */
+    public boolean find(String text) {
+        Scratch s = scratch.get();
+        if (s.generation > Integer.MAX_VALUE - text.length() - 2) {
+            Arrays.fill(s.marks, 0);
+            s.generation = 0;
+        }
+        long steps = 0;
+        long budget = stepBudget == 0 ? Long.MAX_VALUE : stepBudget;
+        int length = text.length();
+        int generation = ++s.generation;
+        // a match may start at every position, so the start state is added to each list
+        int count = add(s, s.current, 0, 0, generation, text);
+        if (count < 0) {
+            return true;
+        }
+        for (int i = 0; i < length && (count > 0 || !anchored); i++) {
+            char c = text.charAt(i);
+            generation = ++s.generation;
+            int nextCount = 0;
+            steps += count;
+            if (steps > budget) {
+                throw new PatternBudgetException("matching " + length + " characters against " + pattern
+                        + " takes more than " + stepBudget + " steps");
+            }
+            for (int t = 0; t < count; t++) {
+                int pc = s.current[t];
+                boolean consumed;
+                switch (ops[pc]) {
+                case CHAR:
+                    consumed = c == args[pc];
+                    break;
+                case CLASS:
+                    consumed = contains(classes[args[pc]], c);
+                    break;
+                default:
+                    consumed = !isLineTerminator(c);
+                }
+                if (consumed) {
+                    int added = addTo(s, s.next, nextCount, pc + 1, i + 1, generation, text);
+                    if (added < 0) {
+                        return true;
+                    }
+                    nextCount = added;
+                }
+            }
+            if (!anchored) {
+                nextCount = addTo(s, s.next, nextCount, 0, i + 1, generation, text);
+                if (nextCount < 0) {
+                    return true;
+                }
+            }
+            int[] swap = s.current;
+            s.current = s.next;
+            s.next = swap;
+            count = nextCount;
+        }
+        return false;
+    }
+
+    private int add(Scratch s, int[] list, int start, int position, int generation, String text) {
+        return addTo(s, list, 0, start, position, generation, text);
+    }
+
+    /**
+     * Add the states that consume characters and are reachable from a state without consuming any
+     * @return the new size of the list, or -1 if the match state is reachable
+     */
+    private int addTo(Scratch s, int[] list, int count, int start, int position, int generation, String text) {
+        int[] stack = s.stack;
+        int[] marks = s.marks;
+        int top = 0;
+        stack[top++] = start;
+        while (top > 0) {
+            int pc = stack[--top];
+            if (marks[pc] == generation) {
+                continue;
+            }
+            marks[pc] = generation;
+            switch (ops[pc]) {
+            case SPLIT:
+                stack[top++] = alternatives[pc];
+                stack[top++] = args[pc];
+                break;
+            case JUMP:
+                stack[top++] = args[pc];
+                break;
+            case MATCH:
+                return -1;
+            case LINE_START:
+                if (position == 0) {
+                    stack[top++] = pc + 1;
+                }
+                break;
+            case LINE_END:
+                if (position == text.length()) {
+                    stack[top++] = pc + 1;
+                }
+                break;
+            case WORD_BOUNDARY:
+            case NOT_WORD_BOUNDARY:
+                boolean boundary = isWord(text, position - 1) != isWord(text, position);
+                if (boundary == (ops[pc] == WORD_BOUNDARY)) {
+                    stack[top++] = pc + 1;
+                }
+                break;
+            default:
+                list[count++] = pc;
+            }
+        }
+        return count;
+    }
+
+    private static boolean isWord(String text, int index) {
+        return index >= 0 && index < text.length() && contains(WORD, text.charAt(index));
+    }
+
+    private static boolean isLineTerminator(char c) {
+        return c == '\n' || c == '\r' || c == '\u2028' || c == '\u2029';
+    }
+
+    private static boolean contains(char[] ranges, char c) {
+        // binary search for the last range starting at or before c
+        int low = 0;
+        int high = ranges.length / 2 - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (ranges[middle * 2] > c) {
+                high = middle - 1;
+            } else if (ranges[middle * 2 + 1] < c) {
+                low = middle + 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Parses patterns and writes the program as it goes
+     */
+    private static final class Compiler {
+        int[] ops = new int[64];
+        int[] args = new int[64];
+        int[] alternatives = new int[64];
+        int size;
+        final ArrayList<char[]> classes = new ArrayList<char[]>();
+
+        // the pattern being parsed
+        private String source;
+        private int index;
+
+        void compileAny(List<String> patterns) {
+            // a chain of SPLITs, one per pattern, each followed by the pattern and a jump to the shared match
+            ArrayList<Integer> jumps = new ArrayList<Integer>();
+            for (int p = 0; p < patterns.size(); p++) {
+                int split = -1;
+                if (p < patterns.size() - 1) {
+                    split = emit(SPLIT, size + 1);
+                }
+                source = patterns.get(p);
+                index = 0;
+                Node node = parseAlternation();
+                if (index < source.length()) {
+                    throw error(source.charAt(index) == ')' ? "unmatched closing ')'" : "unexpected character");
+                }
+                node.emit(this);
+                jumps.add(emit(JUMP, 0));
+                if (split >= 0) {
+                    alternatives[split] = size;
+                }
+            }
+            int match = emit(MATCH, 0);
+            for (int jump : jumps) {
+                args[jump] = match;
+            }
+        }
+
+        int emit(int op, int arg) {
+            if (size == MAX_PROGRAM) {
+                throw new PatternSyntaxException("pattern is too large to match in linear time", source, -1);
+            }
+            if (size == ops.length) {
+                ops = Arrays.copyOf(ops, size * 2);
+                args = Arrays.copyOf(args, size * 2);
+                alternatives = Arrays.copyOf(alternatives, size * 2);
+            }
+            ops[size] = op;
+            args[size] = arg;
+            return size++;
+        }
+
+        private Node parseAlternation() {
+            Node first = parseSequence();
+            if (!peek('|')) {
+                return first;
+            }
+            ArrayList<Node> choices = new ArrayList<Node>();
+            choices.add(first);
+            while (peek('|')) {
+                index++;
+                choices.add(parseSequence());
+            }
+            return new Alternation(choices);
+        }
+
+        private Node parseSequence() {
+            ArrayList<Node> items = new ArrayList<Node>();
+            while (index < source.length() && !peek('|') && !peek(')')) {
+                Node atom = parseAtom();
+                items.add(parseQuantifier(atom));
+            }
+            return new Sequence(items);
+        }
+
+        private Node parseAtom() {
+            char c = source.charAt(index++);
+            switch (c) {
+            case '^':
+                return new Instruction(LINE_START, 0);
+            case '$':
+                return new Instruction(LINE_END, 0);
+            case '.':
+                return new Instruction(ANY, 0);
+            case '(':
+                if (peek('?')) {
+                    if (index + 1 < source.length() && source.charAt(index + 1) == ':') {
+                        index += 2;
+                    } else {
+                        throw error("lookahead is not supported");
+                    }
+                }
+                Node group = parseAlternation();
+                if (!peek(')')) {
+                    throw error("missing closing ')'");
+                }
+                index++;
+                return group;
+            case '[':
+                return parseClass();
+            case '\\':
+                return parseEscape();
+            case '*':
+            case '+':
+            case '?':
+                throw error("nothing to repeat");
+            case '{':
+                if (quantifierAt(index - 1)) {
+                    throw error("nothing to repeat");
+                }
+                return new Instruction(CHAR, c);
+            default:
+                return new Instruction(CHAR, c);
+            }
+        }
+
+        private Node parseEscape() {
+            if (index == source.length()) {
+                throw error("pattern ends with a backslash");
+            }
+            char c = source.charAt(index++);
+            switch (c) {
+            case 'b':
+                return new Instruction(WORD_BOUNDARY, 0);
+            case 'B':
+                return new Instruction(NOT_WORD_BOUNDARY, 0);
+            case 'd':
+            case 'D':
+            case 'w':
+            case 'W':
+            case 's':
+            case 'S':
+                return new CharClass(this, shorthand(c));
+            default:
+                if (c >= '1' && c <= '9') {
+                    throw error("back references are not supported");
+                }
+                return new Instruction(CHAR, escapedCharacter(c));
+            }
+        }
+
+        /**
+         * @return the character denoted by an escape that stands for a single character, the backslash and c already read
+         */
+        private char escapedCharacter(char c) {
+            switch (c) {
+            case 't':
+                return '\t';
+            case 'n':
+                return '\n';
+            case 'v':
+                return '\u000b';
+            case 'f':
+                return '\f';
+            case 'r':
+                return '\r';
+            case '0':
+                return '\0';
+            case 'c':
+                if (index < source.length() && Character.isLetter(source.charAt(index)) && source.charAt(index) < 128) {
+                    return (char) (source.charAt(index++) % 32);
+                }
+                return c;
+            case 'x':
+                return hex(2, c);
+            case 'u':
+                return hex(4, c);
+            default:
+                // identity escape
+                return c;
+            }
+        }
+
+        private char hex(int digits, char otherwise) {
+            if (index + digits > source.length()) {
+                return otherwise;
+            }
+            int value = 0;
+            for (int i = 0; i < digits; i++) {
+                int digit = Character.digit(source.charAt(index + i), 16);
+                if (digit < 0) {
+                    return otherwise;
+                }
+                value = value * 16 + digit;
+            }
+            index += digits;
+            return (char) value;
+        }
+
+        private Node parseClass() {
+            boolean negated = peek('^');
+            if (negated) {
+                index++;
+            }
+            StringBuilder ranges = new StringBuilder();
+            while (!peek(']')) {
+                if (index == source.length()) {
+                    throw error("missing closing ']'");
+                }
+                char low = source.charAt(index++);
+                if (low == '\\') {
+                    if (index == source.length()) {
+                        throw error("pattern ends with a backslash");
+                    }
+                    char escaped = source.charAt(index++);
+                    if ("dDwWsS".indexOf(escaped) >= 0) {
+                        ranges.append(shorthand(escaped));
+                        continue;
+                    }
+                    if (escaped >= '1' && escaped <= '9') {
+                        throw error("back references are not supported");
+                    }
+                    // in a class \b is a backspace
+                    low = escaped == 'b' ? '\b' : escapedCharacter(escaped);
+                }
+                char high = low;
+                if (peek('-') && index + 1 < source.length() && source.charAt(index + 1) != ']') {
+                    index++;
+                    high = source.charAt(index++);
+                    if (high == '\\') {
+                        if (index == source.length()) {
+                            throw error("pattern ends with a backslash");
+                        }
+                        char escaped = source.charAt(index++);
+                        if ("dDwWsS".indexOf(escaped) >= 0) {
+                            throw error("a range cannot end with a class escape");
+                        }
+                        high = escaped == 'b' ? '\b' : escapedCharacter(escaped);
+                    }
+                    if (high < low) {
+                        throw error("range out of order in character class");
+                    }
+                }
+                ranges.append(low).append(high);
+            }
+            index++;
+            char[] normalized = normalize(ranges.toString().toCharArray());
+            if (negated) {
+                normalized = complement(normalized);
+            }
+            return new CharClass(this, normalized);
+        }
+
+        private char[] shorthand(char c) {
+            char[] ranges;
+            switch (Character.toLowerCase(c)) {
+            case 'd':
+                ranges = DIGIT;
+                break;
+            case 'w':
+                ranges = WORD;
+                break;
+            default:
+                ranges = SPACE;
+            }
+            return Character.isUpperCase(c) ? complement(ranges) : ranges;
+        }
+
+        private Node parseQuantifier(Node atom) {
+            if (index == source.length()) {
+                return atom;
+            }
+            int min;
+            int max;
+            char c = source.charAt(index);
+            if (c == '*') {
+                min = 0;
+                max = -1;
+                index++;
+            } else if (c == '+') {
+                min = 1;
+                max = -1;
+                index++;
+            } else if (c == '?') {
+                min = 0;
+                max = 1;
+                index++;
+            } else if (c == '{' && quantifierAt(index)) {
+                int close = source.indexOf('}', index);
+                String bounds = source.substring(index + 1, close);
+                int comma = bounds.indexOf(',');
+                try {
+                    if (comma < 0) {
+                        min = Integer.parseInt(bounds);
+                        max = min;
+                    } else {
+                        min = Integer.parseInt(bounds.substring(0, comma));
+                        max = comma == bounds.length() - 1 ? -1 : Integer.parseInt(bounds.substring(comma + 1));
+                    }
+                } catch (NumberFormatException e) {
+                    throw error("repetition count is too large");
+                }
+                if (max >= 0 && max < min) {
+                    throw error("numbers out of order in quantifier");
+                }
+                if (min > MAX_PROGRAM || max > MAX_PROGRAM) {
+                    throw new PatternSyntaxException("pattern is too large to match in linear time", source, index);
+                }
+                index = close + 1;
+            } else {
+                return atom;
+            }
+            // lazy quantifiers match the same texts
+            if (peek('?')) {
+                index++;
+            }
+            if (index < source.length() && "*+?".indexOf(source.charAt(index)) >= 0) {
+                throw error("nothing to repeat");
+            }
+            return new Repetition(atom, min, max);
+        }
+
+        /**
+         * @return true if the text at the index is a counted quantifier, otherwise the brace is a literal
+         */
+        private boolean quantifierAt(int at) {
+            int close = source.indexOf('}', at);
+            return close > at + 1 && source.substring(at + 1, close).matches("[0-9]+(,[0-9]*)?");
+        }
+
+        private boolean peek(char c) {
+            return index < source.length() && source.charAt(index) == c;
+        }
+
+        private PatternSyntaxException error(String description) {
+            return new PatternSyntaxException(description, source, index - 1);
+        }
+    }
+
+    /**
+     * @return the ranges sorted and merged
+     */
+    private static char[] normalize(char[] ranges) {
+        int count = ranges.length / 2;
+        long[] sorted = new long[count];
+        for (int i = 0; i < count; i++) {
+            sorted[i] = ((long) ranges[i * 2] << 16) | ranges[i * 2 + 1];
+        }
+        Arrays.sort(sorted);
+        StringBuilder merged = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            char low = (char) (sorted[i] >>> 16);
+            char high = (char) sorted[i];
+            int last = merged.length() - 1;
+            if (last > 0 && low <= merged.charAt(last) + 1) {
+                if (high > merged.charAt(last)) {
+                    merged.setCharAt(last, high);
+                }
+            } else {
+                merged.append(low).append(high);
+            }
+        }
+        return merged.toString().toCharArray();
+    }
+
+    private static char[] complement(char[] ranges) {
+        StringBuilder result = new StringBuilder();
+        int next = 0;
+        for (int i = 0; i < ranges.length; i += 2) {
+            if (ranges[i] > next) {
+                result.append((char) next).append((char) (ranges[i] - 1));
+            }
+            next = ranges[i + 1] + 1;
+        }
+        if (next <= Character.MAX_VALUE) {
+            result.append((char) next).append(Character.MAX_VALUE);
+        }
+        return result.toString().toCharArray();
+    }
+
+    /**
+     * A parsed part of a pattern, which writes its instructions to the program
+     */
+    private interface Node {
+        void emit(Compiler compiler);
+    }
+
+    private static final class Instruction implements Node {
+        private final int op;
+        private final int arg;
+
+        Instruction(int op, int arg) {
+            this.op = op;
+            this.arg = arg;
+        }
+
+        public void emit(Compiler compiler) {
+            compiler.emit(op, arg);
+        }
+    }
+
+    private static final class CharClass implements Node {
+        private final int index;
+
+        CharClass(Compiler compiler, char[] ranges) {
+            index = compiler.classes.size();
+            compiler.classes.add(ranges);
+        }
+
+        public void emit(Compiler compiler) {
+            compiler.emit(CLASS, index);
+        }
+    }
+
+    private static final class Sequence implements Node {
+        private final List<Node> items;
+
+        Sequence(List<Node> items) {
+            this.items = items;
+        }
+
+        public void emit(Compiler compiler) {
+            for (Node item : items) {
+                item.emit(compiler);
+            }
+        }
+    }
+
+    private static final class Alternation implements Node {
+        private final List<Node> choices;
+
+        Alternation(List<Node> choices) {
+            this.choices = choices;
+        }
+
+        public void emit(Compiler compiler) {
+            ArrayList<Integer> jumps = new ArrayList<Integer>();
+            for (int i = 0; i < choices.size(); i++) {
+                int split = -1;
+                if (i < choices.size() - 1) {
+                    split = compiler.emit(SPLIT, compiler.size + 1);
+                }
+                choices.get(i).emit(compiler);
+                if (split >= 0) {
+                    jumps.add(compiler.emit(JUMP, 0));
+                    compiler.alternatives[split] = compiler.size;
+                }
+            }
+            for (int jump : jumps) {
+                compiler.args[jump] = compiler.size;
+            }
+        }
+    }
+
+    private static final class Repetition implements Node {
+        private final Node item;
+        private final int min;
+        // -1 for no limit
+        private final int max;
+
+        Repetition(Node item, int min, int max) {
+            this.item = item;
+            this.min = min;
+            this.max = max;
+        }
+
+        public void emit(Compiler compiler) {
+            for (int i = 0; i < min; i++) {
+                item.emit(compiler);
+            }
+            if (max < 0) {
+                // loop: SPLIT body, out; body; JUMP loop
+                int split = compiler.emit(SPLIT, compiler.size + 1);
+                item.emit(compiler);
+                compiler.emit(JUMP, split);
+                compiler.alternatives[split] = compiler.size;
+            } else {
+                // nested optional copies, each skipping to the end
+                ArrayList<Integer> splits = new ArrayList<Integer>();
+                for (int i = min; i < max; i++) {
+                    splits.add(compiler.emit(SPLIT, compiler.size + 1));
+                    item.emit(compiler);
+                }
+                for (int split : splits) {
+                    compiler.alternatives[split] = compiler.size;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2011 Ammo Goettsch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package net.derammo.jsonschema;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A map holding at most a fixed number of entries, which evicts the least recently used entry
+ * when full.  All methods are synchronized, so it may be shared between threads.
+ */
+final class LruCache<K, V> {
+    private final LinkedHashMap<K, V> entries;
+
+    LruCache(final int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("cache capacity must be positive");
+        }
+        entries = new LinkedHashMap<K, V>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    synchronized V get(K key) {
+        return entries.get(key);
+    }
+
+    synchronized void put(K key, V value) {
+        entries.put(key, value);
+    }
+
+    /**
+     * @return the value already kept for the key, or null if there was none and the value has been added
+     */
+    synchronized V putIfAbsent(K key, V value) {
+        V existing = entries.get(key);
+        if (existing == null) {
+            entries.put(key, value);
+        }
+        return existing;
+    }
+
+    synchronized V remove(K key) {
+        return entries.remove(key);
+    }
+
+    synchronized void clear() {
+        entries.clear();
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2011 Ammo Goettsch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package net.derammo.jsonschema;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URI;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Provides schema documents held in memory, for example schemas built by the application or tests
+ */
+public class MemorySchemaLoader implements SchemaLoader {
+    private final ConcurrentHashMap<URI, byte[]> documents = new ConcurrentHashMap<URI, byte[]>();
+
+    /**
+     * @param uri absolute URI of the document, without a fragment
+     * @param json content of the document
+     */
+    public void put(URI uri, String json) {
+        try {
+            documents.put(uri.normalize(), json.getBytes("UTF-8"));
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public void remove(URI uri) {
+        documents.remove(uri.normalize());
+    }
+
+    public InputStream open(URI uri) {
+        byte[] content = documents.get(uri.normalize());
+        if (content == null) {
+            return null;
+        }
+        return new ByteArrayInputStream(content);
+    }
+}
@@ -0,0 +1,31 @@
+/*
+ * Copyright 2011 Ammo Goettsch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package net.derammo.jsonschema;
+
+/**
+ * Thrown by a validator when matching text against a pattern takes more steps than the budget of its
+ * {@link PatternCache}.  The text is then neither known to match nor known not to match, so the instance
+ * is neither accepted nor rejected.
+ *
+ * @see PatternCache#linear(int, int)
+ */
+public class PatternBudgetException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public PatternBudgetException(String message) {
+        super(message);
+    }
+}
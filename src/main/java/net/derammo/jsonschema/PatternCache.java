@@ -0,0 +1,185 @@
+/*
+ * Copyright 2011 Ammo Goettsch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package net.derammo.jsonschema;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Compiled 'pattern' and 'patternProperties' expressions, shared by the validators compiled with it and
+ * kept up to a fixed number, evicting the least recently used.  Validators compiled from many schemas
+ * with the same patterns compile each pattern once.
+ *
+ * By default patterns are matched by java.util.regex, which backtracks, so a pattern from an untrusted
+ * schema can take time exponential in the length of the text.  A cache created by
+ * {@link #linear(int, int)} matches in linear time instead, with an optional limit on the work per
+ * match, and rejects patterns that need backtracking (back references and lookahead).  With either
+ * engine the 'patternProperties' of a schema are combined, and with the linear one each property name
+ * is then matched against all of them in a single pass.
+ */
+public final class PatternCache {
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    private static final PatternCache DEFAULT = backtracking(DEFAULT_CAPACITY);
+
+    /**
+     * A compiled pattern, or several patterns of which any may match.  Instances may be shared between threads.
+     */
+    interface Matcher {
+        /**
+         * @return true if some part of the text matches
+         * @throws PatternBudgetException if the matcher gives up
+         */
+        boolean find(String text);
+
+        /**
+         * @return the source of the pattern, or a list of the sources
+         */
+        String pattern();
+    }
+
+    private final boolean linear;
+    private final int stepBudget;
+    // keyed by the source of a pattern, or by a sorted list of the sources of combined patterns
+    private final LruCache<Object, Matcher> matchers;
+
+    private PatternCache(int capacity, boolean linear, int stepBudget) {
+        this.matchers = new LruCache<Object, Matcher>(capacity);
+        this.linear = linear;
+        this.stepBudget = stepBudget;
+    }
+
+    /**
+     * @return the cache used by validators compiled without a cache of their own, which uses java.util.regex
+     */
+    public static PatternCache getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * @param capacity number of patterns, and separately of combined patterns, that are kept
+     * @return a cache whose patterns are matched by java.util.regex
+     */
+    public static PatternCache backtracking(int capacity) {
+        return new PatternCache(capacity, false, 0);
+    }
+
+    /**
+     * @param capacity number of patterns that are kept
+     * @param stepBudget limit on the work per match, in steps of the automaton (roughly the length of the
+     *        text times the number of alternatives live at once), past which validation throws
+     *        {@link PatternBudgetException}; 0 for no limit
+     * @return a cache whose patterns are matched in time linear in the length of the text
+     */
+    public static PatternCache linear(int capacity, int stepBudget) {
+        if (stepBudget < 0) {
+            throw new IllegalArgumentException("step budget must not be negative");
+        }
+        return new PatternCache(capacity, true, stepBudget);
+    }
+
+    /**
+     * @return true if patterns are matched in linear time
+     */
+    public boolean isLinear() {
+        return linear;
+    }
+
+    /**
+     * @throws java.util.regex.PatternSyntaxException if the pattern is not valid, or not supported by the linear engine
+     */
+    Matcher get(String pattern) {
+        Matcher matcher = matchers.get(pattern);
+        if (matcher == null) {
+            matcher = compile(Collections.singletonList(pattern));
+            matchers.put(pattern, matcher);
+        }
+        return matcher;
+    }
+
+    /**
+     * @return a matcher that finds whether any of the patterns matches
+     * @throws java.util.regex.PatternSyntaxException if a pattern is not valid, or not supported by the linear engine
+     */
+    Matcher getAny(Collection<String> patterns) {
+        if (patterns.size() == 1) {
+            return get(patterns.iterator().next());
+        }
+        ArrayList<String> key = new ArrayList<String>(patterns);
+        Collections.sort(key);
+        Matcher matcher = matchers.get(key);
+        if (matcher == null) {
+            matcher = compile(key);
+            matchers.put(key, matcher);
+        }
+        return matcher;
+    }
+
+    private Matcher compile(List<String> patterns) {
+        if (linear) {
+            return new LinearRegex(patterns, stepBudget);
+        }
+        if (patterns.size() == 1) {
+            return new Backtracking(Pattern.compile(patterns.get(0)));
+        }
+        // alternatives cannot simply be joined, since they would number their groups differently
+        final Matcher[] any = new Matcher[patterns.size()];
+        for (int i = 0; i < any.length; i++) {
+            any[i] = get(patterns.get(i));
+        }
+        final String sources = patterns.toString();
+        return new Matcher() {
+            public boolean find(String text) {
+                for (Matcher matcher : any) {
+                    if (matcher.find(text)) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+
+            public String pattern() {
+                return sources;
+            }
+        };
+    }
+
+    private static final class Backtracking implements Matcher {
+        private final Pattern pattern;
+        private final ThreadLocal<java.util.regex.Matcher> matcher;
+
+        Backtracking(final Pattern pattern) {
+            this.pattern = pattern;
+            this.matcher = new ThreadLocal<java.util.regex.Matcher>() {
+                @Override
+                protected java.util.regex.Matcher initialValue() {
+                    return pattern.matcher("");
+                }
+            };
+        }
+
+        public boolean find(String text) {
+            return matcher.get().reset(text).find();
+        }
+
+        public String pattern() {
+            return pattern.pattern();
+        }
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright 2011 Ammo Goettsch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package net.derammo.jsonschema;
+
+import java.util.Arrays;
+
+/**
+ * The 'properties' of one schema, indexed for matching the field names of instances, and the set of those
+ * that are required.  Built once per schema by {@link SchemaCompiler}.
+ *
+ * Names are found in an open-addressed table that is at most half full, so most lookups take a single
+ * probe.  The names are interned, as are the field names read by Jackson's parsers, so a match is usually
+ * decided by identity.  Callers that read fields in schema order can pass the position they expect next
+ * and skip the table altogether.
+ *
+ * Sets of properties, such as those seen in an instance, are bit sets held in long arrays from
+ * {@link #newSet()}, so that finding the missing required properties of an object takes one operation per
+ * 64 properties.
+ */
+final class PropertyIndex {
+    static final PropertyIndex EMPTY = new PropertyIndex(new String[0], new boolean[0]);
+
+    // in the order of the schema
+    private final String[] names;
+    private final String[] slots;
+    private final int[] hashes;
+    private final int[] positions;
+    private final int mask;
+    private final int shift;
+    private final long[] required;
+
+    /**
+     * @param names interned property names, in the order of the schema
+     * @param required for each name, whether it is required
+     */
+    PropertyIndex(String[] names, boolean[] required) {
+        this.names = names;
+        int capacity = Integer.highestOneBit(Math.max(names.length, 1) * 2 - 1) << 1;
+        slots = new String[capacity];
+        hashes = new int[capacity];
+        positions = new int[capacity];
+        mask = capacity - 1;
+        shift = Integer.numberOfLeadingZeros(capacity) + 1;
+        for (int i = 0; i < names.length; i++) {
+            int hash = names[i].hashCode();
+            int slot = slot(hash);
+            while (slots[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = names[i];
+            hashes[slot] = hash;
+            positions[slot] = i;
+        }
+        this.required = new long[words(names.length)];
+        for (int i = 0; i < names.length; i++) {
+            if (required[i]) {
+                this.required[i >>> 6] |= 1L << i;
+            }
+        }
+    }
+
+    int size() {
+        return names.length;
+    }
+
+    /**
+     * @return position of the property in the schema, or -1 if it is not one of the 'properties'
+     */
+    int indexOf(String name) {
+        int hash = name.hashCode();
+        int slot = slot(hash);
+        String candidate;
+        while ((candidate = slots[slot]) != null) {
+            if (candidate == name || (hashes[slot] == hash && candidate.equals(name))) {
+                return positions[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * @param expected position the name is likely to have, such as the one after the previous field
+     * @see #indexOf(String)
+     */
+    int indexOf(String name, int expected) {
+        // only identity is worth checking here, since a name that is not interned has to be hashed anyway
+        if (expected < names.length && names[expected] == name) {
+            return expected;
+        }
+        return indexOf(name);
+    }
+
+    boolean isRequired(int index) {
+        return (required[index >>> 6] & (1L << index)) != 0;
+    }
+
+    /**
+     * @return true if the same properties are required by both, given that they have the same names
+     */
+    boolean sameRequired(PropertyIndex other) {
+        return Arrays.equals(required, other.required);
+    }
+
+    /**
+     * @return an empty set of properties
+     */
+    long[] newSet() {
+        return new long[required.length];
+    }
+
+    /**
+     * @return true if the set, which may be longer than needed, is large enough for the properties of this schema
+     */
+    boolean fits(long[] set) {
+        return set.length >= required.length;
+    }
+
+    /**
+     * Remove every property of this schema from the set
+     */
+    void clear(long[] set) {
+        for (int i = 0; i < required.length; i++) {
+            set[i] = 0;
+        }
+    }
+
+    static void add(long[] set, int index) {
+        set[index >>> 6] |= 1L << index;
+    }
+
+    static boolean contains(long[] set, int index) {
+        return (set[index >>> 6] & (1L << index)) != 0;
+    }
+
+    /**
+     * @param seen properties present in an instance
+     * @param from first position to consider
+     * @return position of the first required property at or after from that is not in the set, or -1 if there is none
+     */
+    int nextMissing(long[] seen, int from) {
+        int word = from >>> 6;
+        if (word >= required.length) {
+            return -1;
+        }
+        long missing = required[word] & ~seen[word] & (-1L << from);
+        while (missing == 0) {
+            if (++word == required.length) {
+                return -1;
+            }
+            missing = required[word] & ~seen[word];
+        }
+        return (word << 6) + Long.numberOfTrailingZeros(missing);
+    }
+
+    private static int words(int count) {
+        return (count + 63) >>> 6;
+    }
+
+    private int slot(int hash) {
+        // String caches its hash, but similar names have similar hashes, which multiplying spreads over the table
+        return (hash * 0x9E3779B9) >>> shift;
+    }
+}
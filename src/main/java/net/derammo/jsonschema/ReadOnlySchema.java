@@ -0,0 +1,119 @@
+/*
+ * Copyright 2011 Ammo Goettsch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package net.derammo.jsonschema;
+
+import java.net.URI;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import net.derammo.jsonschema.TypeDeserializer.TypeVariant;
+
+import org.codehaus.jackson.JsonNode;
+
+/**
+ * The attributes of a draft 3 schema, as read by the compiler and the registry.  Implemented by the
+ * parsed {@link SchemaDraft3} and by its frozen copy {@link CompactSchema}, so either can be compiled.
+ *
+ * Collections and attributes that are absent in the document may be null or empty, and schemas in
+ * forms of 'type' are instances of the same implementation.
+ */
+public interface ReadOnlySchema {
+    /**
+     * @return 'type' in the form it was written, or null if there is no type
+     */
+    TypeVariant getType();
+
+    /**
+     * @return the simple types of 'type', or null if there is no type
+     */
+    SimpleTypeSet getSimpleTypes();
+
+    /**
+     * @return the schemas in a 'type' union
+     */
+    List<? extends ReadOnlySchema> getSchemaTypes();
+
+    /**
+     * @return the simple types of 'disallow', without names that are not draft 3 types, or null if nothing is disallowed
+     */
+    SimpleTypeSet getDisallowedTypes();
+
+    /**
+     * @return the declared properties, in document order
+     */
+    Map<String, ? extends ReadOnlySchema> getProperties();
+
+    Set<String> getPatternProperties();
+
+    boolean isAdditionalProperties();
+
+    /**
+     * @return the schemas of 'items'; a single schema is a list of one
+     */
+    List<? extends ReadOnlySchema> getItems();
+
+    /**
+     * @return one of the forms of type, or null
+     */
+    Object getAdditionalItems();
+
+    boolean isRequired();
+
+    Map<String, TypeVariant> getDependencies();
+
+    long getMinimum();
+
+    long getMaximum();
+
+    boolean isExclusiveMinimum();
+
+    boolean isExclusiveMaximum();
+
+    int getMinItems();
+
+    int getMaxItems();
+
+    boolean isUniqueItems();
+
+    String getPattern();
+
+    int getMinLength();
+
+    int getMaxlength();
+
+    List<JsonNode> getEnumerated();
+
+    String getDefaultValue();
+
+    String getTitle();
+
+    String getDescription();
+
+    String getFormat();
+
+    int getDivisibleBy();
+
+    TypeVariant getDisallow();
+
+    List<String> getExtendsSchemas();
+
+    URI getId();
+
+    URI getReference();
+
+    URI getSchemaReference();
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2011 Ammo Goettsch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package net.derammo.jsonschema;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.type.JavaType;
+
+/**
+ * Binds JSON values to objects with an ObjectMapper while validating them against a schema, in a single
+ * pass over the tokens.  Each token is checked by the streaming validator just before the mapper reads it,
+ * so no tree is built and the source is not read twice.  Values the mapper skips, such as ignored
+ * properties, are validated too.
+ *
+ * The validator predicts that the fields of an object follow the order of 'properties' in the schema, and
+ * only looks names up when they do not.
+ *
+ * Instances are immutable and may be shared between threads, as long as the mapper is not reconfigured.
+ *
+ * <pre>
+ * SchemaBinder&lt;Order&gt; binder = SchemaBinder.create(schema, mapper, Order.class);
+ * Order order = binder.read(input);
+ * </pre>
+ *
+ * @param <T> class of the bound values
+ */
+public final class SchemaBinder<T> {
+    private final SchemaValidator validator;
+    private final ObjectMapper mapper;
+    private final JavaType type;
+    private final boolean failFast;
+
+    SchemaBinder(SchemaValidator validator, ObjectMapper mapper, JavaType type, boolean failFast) {
+        this.validator = validator;
+        this.mapper = mapper;
+        this.type = type;
+        this.failFast = failFast;
+    }
+
+    /**
+     * Compile a schema and create a binder for it.  Compiling takes time, so binders should be kept.
+     * @param schema schema of the values, with any references already linked
+     * @param mapper binds the values, with its configuration and modules
+     * @param type class of the bound values
+     */
+    public static <T> SchemaBinder<T> create(ReadOnlySchema schema, ObjectMapper mapper, Class<T> type) {
+        return new SchemaCompiler().compile(schema).binder(mapper, type);
+    }
+
+    /**
+     * @return a binder that stops reading at the first violation, which reports only that one, and leaves
+     *         the parser inside the value
+     */
+    public SchemaBinder<T> failFast() {
+        return failFast ? this : new SchemaBinder<T>(validator, mapper, type, true);
+    }
+
+    /**
+     * Read the next value of a token stream.  Afterwards the parser is positioned on the last token of the
+     * value, so a stream of several values can be read one at a time.
+     *
+     * @param parser source of the value, either before or on its first token
+     * @return the bound value
+     * @throws ValidationException if the value is not valid, even if the mapper could not bind it either
+     * @throws IOException if the source cannot be read, or the mapper cannot bind a valid value
+     */
+    @SuppressWarnings("unchecked")
+    public T read(JsonParser parser) throws IOException {
+        return (T) validator.bind(parser, mapper, type, failFast);
+    }
+
+    /**
+     * @see #read(JsonParser)
+     */
+    public T read(InputStream input) throws IOException {
+        JsonParser parser = mapper.getJsonFactory().createJsonParser(input);
+        try {
+            return read(parser);
+        } finally {
+            parser.close();
+        }
+    }
+
+    /**
+     * @see #read(JsonParser)
+     */
+    public T read(Reader input) throws IOException {
+        JsonParser parser = mapper.getJsonFactory().createJsonParser(input);
+        try {
+            return read(parser);
+        } finally {
+            parser.close();
+        }
+    }
+
+    /**
+     * @see #read(JsonParser)
+     */
+    public T read(String content) throws IOException {
+        JsonParser parser = mapper.getJsonFactory().createJsonParser(content);
+        try {
+            return read(parser);
+        } finally {
+            parser.close();
+        }
+    }
+}
@@ -0,0 +1,373 @@
+/*
+ * Copyright 2011 Ammo Goettsch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package net.derammo.jsonschema;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.derammo.jsonschema.TypeDeserializer.TypeVariant;
+
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.node.TextNode;
+import org.codehaus.jackson.node.ValueNode;
+
+/**
+ * Turns a parsed schema into a tree of {@link CompiledSchema} nodes, once, so that instances
+ * can be validated without looking at the schema objects again.
+ *
+ * <pre>
+ * SchemaValidator validator = new SchemaCompiler().compile(schema);
+ * List&lt;ValidationError&gt; errors = validator.validate(instance);
+ * </pre>
+ */
+public class SchemaCompiler {
+    /**
+     * Resolved targets of '$ref' and 'extends', supplied by a {@link SchemaRegistry}
+     */
+    interface References {
+        /**
+         * @return the schema referenced by '$ref', or null if the schema has no reference
+         */
+        ReadOnlySchema getReference(ReadOnlySchema schema);
+
+        /**
+         * @return the schemas named by 'extends', or null if there are none
+         */
+        List<ReadOnlySchema> getExtends(ReadOnlySchema schema);
+    }
+
+    // only used to read the text of defaults, which needs no configuration
+    private static final ObjectMapper DEFAULT_READER = new ObjectMapper();
+
+    /**
+     * Looks up compiled nodes by their shape
+     */
+    private static final class Shape {
+        final CompiledSchema node;
+        final int hash;
+
+        Shape(CompiledSchema node) {
+            this.node = node;
+            this.hash = node.shapeHash();
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Shape && node.sameShape(((Shape) other).node);
+        }
+    }
+
+    /**
+     * State of one call to {@link SchemaCompiler#compile(ReadOnlySchema)}
+     */
+    private static final class Compilation {
+        final IdentityHashMap<ReadOnlySchema, CompiledSchema> compiled = new IdentityHashMap<ReadOnlySchema, CompiledSchema>();
+        // nodes from the shared table, whose children are all shared as well
+        final IdentityHashMap<CompiledSchema, Boolean> shared = new IdentityHashMap<CompiledSchema, Boolean>();
+        int referenceDepth;
+    }
+
+    /**
+     * Distinct nodes of the validators compiled so far, so that equal subschemas of different schemas,
+     * and different versions of a schema, share nodes; compared bottom up like those of SchemaInterner.
+     * A registry keeps one for the compilers it creates.
+     */
+    static final class Nodes {
+        private final LruCache<Shape, CompiledSchema> shapes = new LruCache<Shape, CompiledSchema>(4096);
+    }
+
+    private final References references;
+    private final PatternCache patterns;
+    private final Nodes nodes;
+
+    /**
+     * Create a compiler for self-contained schemas; '$ref' and 'extends' are not followed, use a
+     * {@link SchemaRegistry} to compile schemas that refer to other schemas.
+     */
+    public SchemaCompiler() {
+        this(null, PatternCache.getDefault(), new Nodes());
+    }
+
+    /**
+     * @param patterns source of the compiled 'pattern' and 'patternProperties' expressions, which decides how they are matched
+     * @see #SchemaCompiler()
+     */
+    public SchemaCompiler(PatternCache patterns) {
+        this(null, patterns, new Nodes());
+    }
+
+    SchemaCompiler(References references, PatternCache patterns, Nodes nodes) {
+        this.references = references;
+        this.patterns = patterns;
+        this.nodes = nodes;
+    }
+
+    /**
+     * @param schema a parsed JsonSchema, any extension of SchemaDraft3, or a CompactSchema
+     * @return validator for the schema; this does not refer to the schema objects, which may be changed afterwards
+     * @throws java.util.regex.PatternSyntaxException if the schema contains an invalid pattern
+     */
+    public SchemaValidator compile(ReadOnlySchema schema) {
+        Compilation compilation = new Compilation();
+        CompiledSchema root = compile(schema, compilation);
+        return new SchemaValidator(root, compilation.referenceDepth);
+    }
+
+    private CompiledSchema compile(ReadOnlySchema schema, Compilation compilation) {
+        CompiledSchema node = compilation.compiled.get(schema);
+        if (node != null) {
+            return node;
+        }
+        if (references != null) {
+            // section 5.28, the referenced schema is used instead of this one
+            ReadOnlySchema target = references.getReference(schema);
+            if (target != null) {
+                node = compile(target, compilation);
+                compilation.compiled.put(schema, node);
+                compilation.referenceDepth = Math.max(compilation.referenceDepth, referenceChain(schema));
+                return node;
+            }
+        }
+        node = new CompiledSchema();
+        compilation.compiled.put(schema, node);
+
+        if (schema.getId() != null) {
+            node.id = schema.getId().toString();
+        }
+        compileTypes(schema, node, compilation);
+        compileNumbers(schema, node);
+        compileStrings(schema, node);
+        compileArrays(schema, node, compilation);
+        compileObjects(schema, node, compilation);
+        if (schema.getDefaultValue() != null) {
+            node.defaultValue = compileDefault(schema.getDefaultValue(), node.types);
+        }
+        node.format = Format.of(schema.getFormat());
+        // an empty list stands for an absent 'enum' in a CompactSchema
+        if (schema.getEnumerated() != null && !schema.getEnumerated().isEmpty()) {
+            node.enumeration = new CanonicalJson.ValueSet(schema.getEnumerated());
+        }
+        if (references != null) {
+            node.extendsSchemas = compileAll(references.getExtends(schema), compilation);
+        }
+        // streams are only compared with enumerated objects and arrays, and checked for duplicate items, as trees
+        node.needsTree = node.typeSchemas.length > 0 || node.disallowedSchemas.length > 0
+                || node.dependencyNames.length > 0 || node.extendsSchemas.length > 0 || node.uniqueItems
+                || (node.enumeration != null && node.enumeration.hasContainers());
+        return share(schema, node, compilation);
+    }
+
+    /**
+     * @return an equal node compiled before, or the node, which is then kept for later compilations; nodes
+     *         that are part of a cycle, and their parents, are not shared, since they have been referred to
+     *         before they were complete
+     */
+    private CompiledSchema share(ReadOnlySchema schema, CompiledSchema node, Compilation compilation) {
+        for (CompiledSchema child : node.children()) {
+            if (!compilation.shared.containsKey(child)) {
+                return node;
+            }
+        }
+        CompiledSchema existing = nodes.shapes.putIfAbsent(new Shape(node), node);
+        if (existing != null) {
+            node = existing;
+            compilation.compiled.put(schema, node);
+        }
+        compilation.shared.put(node, Boolean.TRUE);
+        return node;
+    }
+
+    /**
+     * @return the number of references followed from the schema to the one that is compiled in its place
+     */
+    private int referenceChain(ReadOnlySchema schema) {
+        // cycles of references are rejected by the registry before compiling
+        int length = 0;
+        ReadOnlySchema target = references.getReference(schema);
+        while (target != null) {
+            length++;
+            target = references.getReference(target);
+        }
+        return length;
+    }
+
+    /**
+     * @param text the 'default', which is read as text whatever its JSON type
+     * @return the default as the JSON value it most likely was: a number, boolean or null if the schema does not
+     *         allow strings and the text is one, a string otherwise
+     */
+    private static ValueNode compileDefault(String text, SimpleTypeSet types) {
+        if (!types.matchesKind(SimpleTypeSet.STRING)) {
+            try {
+                JsonNode value = DEFAULT_READER.readTree(text);
+                if (value instanceof ValueNode && !value.isTextual() && types.matchesKind(SimpleTypeSet.kindOf(value))) {
+                    return (ValueNode) value;
+                }
+            } catch (IOException e) {
+                // not JSON, so it can only be a string
+            }
+        }
+        return TextNode.valueOf(text);
+    }
+
+    private void compileTypes(ReadOnlySchema schema, CompiledSchema node, Compilation compilation) {
+        if (schema.getSimpleTypes() != null) {
+            node.types = schema.getSimpleTypes();
+            node.typeSchemas = compileAll(schema.getSchemaTypes(), compilation);
+        }
+        if (schema.getDisallow() != null) {
+            ArrayList<String> names = new ArrayList<String>();
+            ArrayList<ReadOnlySchema> schemas = new ArrayList<ReadOnlySchema>();
+            collect(schema.getDisallow(), names, schemas);
+            node.disallowedTypes = SimpleTypeSet.of(names, false);
+            node.disallowedSchemas = compileAll(schemas, compilation);
+        }
+    }
+
+    private void compileNumbers(ReadOnlySchema schema, CompiledSchema node) {
+        node.minimum = schema.getMinimum();
+        node.maximum = schema.getMaximum();
+        node.exclusiveMinimum = schema.isExclusiveMinimum();
+        node.exclusiveMaximum = schema.isExclusiveMaximum();
+        node.hasMinimum = node.minimum != Long.MIN_VALUE;
+        node.hasMaximum = node.maximum != Long.MAX_VALUE;
+        if (node.hasMinimum) {
+            node.lowest = node.exclusiveMinimum ? node.minimum + 1 : node.minimum;
+        }
+        if (node.hasMaximum) {
+            node.highest = node.exclusiveMaximum ? node.maximum - 1 : node.maximum;
+        }
+        // the default of 1 cannot be told apart from an explicit 1, and 0 is not allowed by section 5.24
+        if (schema.getDivisibleBy() > 1) {
+            node.divisibleBy = schema.getDivisibleBy();
+        }
+        node.checksNumbers = node.hasMinimum || node.hasMaximum || node.divisibleBy != 0;
+    }
+
+    private void compileStrings(ReadOnlySchema schema, CompiledSchema node) {
+        node.minLength = schema.getMinLength();
+        node.maxLength = schema.getMaxlength();
+        if (schema.getPattern() != null) {
+            node.pattern = patterns.get(schema.getPattern());
+        }
+        node.checksStrings = node.minLength > 0 || node.maxLength != Integer.MAX_VALUE || node.pattern != null;
+    }
+
+    private void compileArrays(ReadOnlySchema schema, CompiledSchema node, Compilation compilation) {
+        node.minItems = schema.getMinItems();
+        node.maxItems = schema.getMaxItems();
+        List<? extends ReadOnlySchema> items = schema.getItems();
+        if (items != null && items.size() == 1) {
+            // a single schema has been converted to a list of one by the ObjectMapper, see SchemaDraft3.items
+            node.items = compile(items.get(0), compilation);
+        } else if (items != null && items.size() > 1) {
+            node.tupleItems = compileAll(items, compilation);
+            Object additionalItems = schema.getAdditionalItems();
+            if (additionalItems instanceof TypeDeserializer.FalseType) {
+                node.additionalItemsForbidden = true;
+            } else if (additionalItems instanceof TypeDeserializer.SchemaType<?>) {
+                node.additionalItems = compile((ReadOnlySchema) ((TypeDeserializer.SchemaType<?>) additionalItems).getSchema(), compilation);
+            }
+        }
+        node.uniqueItems = schema.isUniqueItems();
+        node.checksArrays = node.minItems > 0 || node.maxItems != Integer.MAX_VALUE || node.items != null
+                || node.tupleItems.length > 0 || node.uniqueItems;
+    }
+
+    private void compileObjects(ReadOnlySchema schema, CompiledSchema node, Compilation compilation) {
+        Map<String, ? extends ReadOnlySchema> properties = schema.getProperties();
+        if (properties != null && !properties.isEmpty()) {
+            int count = properties.size();
+            node.propertyNames = new String[count];
+            node.propertySchemas = new CompiledSchema[count];
+            boolean[] required = new boolean[count];
+            int i = 0;
+            for (Map.Entry<String, ? extends ReadOnlySchema> entry : properties.entrySet()) {
+                // parsers intern field names, so names of instances match by identity
+                node.propertyNames[i] = entry.getKey().intern();
+                node.propertySchemas[i] = compile(entry.getValue(), compilation);
+                required[i] = entry.getValue().isRequired();
+                i++;
+            }
+            node.propertyIndex = new PropertyIndex(node.propertyNames, required);
+        }
+        node.additionalProperties = schema.isAdditionalProperties();
+        if (!node.additionalProperties) {
+            if (schema.getPatternProperties() != null && !schema.getPatternProperties().isEmpty()) {
+                node.propertyPatterns = patterns.getAny(schema.getPatternProperties());
+            }
+        }
+        if (schema.getDependencies() != null && !schema.getDependencies().isEmpty()) {
+            int count = schema.getDependencies().size();
+            node.dependencyNames = new String[count];
+            node.dependencyProperties = new String[count][];
+            node.dependencySchemas = new CompiledSchema[count];
+            int i = 0;
+            for (Map.Entry<String, TypeVariant> entry : schema.getDependencies().entrySet()) {
+                // a dependency is a property name, an array of property names, or a schema (section 5.8)
+                ArrayList<String> names = new ArrayList<String>();
+                ArrayList<ReadOnlySchema> schemas = new ArrayList<ReadOnlySchema>();
+                collect(entry.getValue(), names, schemas);
+                node.dependencyNames[i] = entry.getKey();
+                node.dependencyProperties[i] = names.toArray(new String[names.size()]);
+                if (!schemas.isEmpty()) {
+                    node.dependencySchemas[i] = compile(schemas.get(0), compilation);
+                }
+                i++;
+            }
+        }
+        node.checksObjects = node.propertyNames.length > 0 || !node.additionalProperties || node.dependencyNames.length > 0;
+    }
+
+    private CompiledSchema[] compileAll(Collection<? extends ReadOnlySchema> schemas, Compilation compilation) {
+        if (schemas == null || schemas.isEmpty()) {
+            return CompiledSchema.NONE;
+        }
+        CompiledSchema[] nodes = new CompiledSchema[schemas.size()];
+        int i = 0;
+        for (ReadOnlySchema schema : schemas) {
+            nodes[i++] = compile(schema, compilation);
+        }
+        return nodes;
+    }
+
+    /**
+     * Split one of the forms of 'type' into its simple type names and schemas
+     */
+    private static void collect(TypeVariant variant, List<String> names, List<ReadOnlySchema> schemas) {
+        if (variant instanceof TypeDeserializer.SimpleType) {
+            names.add(((TypeDeserializer.SimpleType) variant).getName());
+        } else if (variant instanceof TypeDeserializer.SchemaType<?>) {
+            schemas.add((ReadOnlySchema) ((TypeDeserializer.SchemaType<?>) variant).getSchema());
+        } else if (variant instanceof TypeDeserializer.UnionType<?>) {
+            TypeDeserializer.UnionType<?> union = (TypeDeserializer.UnionType<?>) variant;
+            names.addAll(union.getSimpleTypes());
+            for (Object schema : union.getSchemaTypes()) {
+                schemas.add((ReadOnlySchema) schema);
+            }
+        }
+    }
+}
@@ -17,21 +17,24 @@ package net.derammo.jsonschema;
 
 import java.net.URI;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 
 import net.derammo.jsonschema.TypeDeserializer.TypeVariant;
 
+import org.codehaus.jackson.JsonNode;
 import org.codehaus.jackson.annotate.JsonIgnore;
 import org.codehaus.jackson.annotate.JsonProperty;
 import org.codehaus.jackson.map.annotate.JsonDeserialize;
+import org.codehaus.jackson.node.NullNode;
 
 /**
  * A Jackson binding-based JSON ApplicationSchema draft 3 reader. 
  * 
  * @author ammo
  */
-public class SchemaDraft3<ApplicationSchema extends SchemaDraft3<ApplicationSchema> > {
+public class SchemaDraft3<ApplicationSchema extends SchemaDraft3<ApplicationSchema> > implements ReadOnlySchema {
     /**
      * @see <a href="http://tools.ietf.org/html/draft-zyp-json-schema-03#section-5.1">section-5.1</a> of JSON ApplicationSchema draft 3
      */
@@ -47,8 +50,10 @@ public class SchemaDraft3<ApplicationSchema extends SchemaDraft3<ApplicationSche
     private HashSet<String> patternProperties;
     /**
      * @see <a href="http://tools.ietf.org/html/draft-zyp-json-schema-03#section-5.4">section-5.4</a> of JSON ApplicationSchema draft 3
+     * 
+     * The default is to allow additional properties, as specified in the draft.
      */
-    private boolean additionalProperties = false;
+    private boolean additionalProperties = true;
     /**
      * @see <a href="http://tools.ietf.org/html/draft-zyp-json-schema-03#section-5.5">section-5.5</a> of JSON ApplicationSchema draft 3
      * 
@@ -59,6 +64,7 @@ public class SchemaDraft3<ApplicationSchema extends SchemaDraft3<ApplicationSche
     /**
      * @see <a href="http://tools.ietf.org/html/draft-zyp-json-schema-03#section-5.6">section-5.6</a> of JSON ApplicationSchema draft 3
      */
+    @JsonDeserialize(using = TypeDeserializer.class)
     private TypeDeserializer.TypeVariant additionalItems;
     /**
      * @see <a href="http://tools.ietf.org/html/draft-zyp-json-schema-03#section-5.7">section-5.7</a> of JSON ApplicationSchema draft 3
@@ -110,10 +116,9 @@ public class SchemaDraft3<ApplicationSchema extends SchemaDraft3<ApplicationSche
     private int maxlength = Integer.MAX_VALUE;
     /**
      * @see <a href="http://tools.ietf.org/html/draft-zyp-json-schema-03#section-5.19">section-5.19</a> of JSON ApplicationSchema draft 3
-     * Simplified to only support string values, instead of general JSON 
      */
     @JsonProperty("enum")
-    private ArrayList<String> enumerated;
+    private ArrayList<JsonNode> enumerated;
     /**
      * @see <a href="http://tools.ietf.org/html/draft-zyp-json-schema-03#section-5.20">section-5.20</a> of JSON ApplicationSchema draft 3
      * Simplified to only support string values, instead of general JSON 
@@ -139,6 +144,7 @@ public class SchemaDraft3<ApplicationSchema extends SchemaDraft3<ApplicationSche
     /**
      * @see <a href="http://tools.ietf.org/html/draft-zyp-json-schema-03#section-5.25">section-5.25</a> of JSON ApplicationSchema draft 3
      */
+    @JsonDeserialize(using = TypeDeserializer.class)
     private TypeDeserializer.TypeVariant disallow;
     /**
      * @see <a href="http://tools.ietf.org/html/draft-zyp-json-schema-03#section-5.26">section-5.26</a> of JSON ApplicationSchema draft 3
@@ -168,32 +174,69 @@ public class SchemaDraft3<ApplicationSchema extends SchemaDraft3<ApplicationSche
      */
     @SuppressWarnings("unchecked")
     public void setType(TypeDeserializer.TypeVariant type) {
-        // convert based on type
-        this.simpleTypes = new HashSet<String>();
+        // convert based on type; section 5.1 allows unknown type names to be treated as "any"
+        this.simpleTypes = simpleTypes(type, true);
         this.schemaTypes = new ArrayList<ApplicationSchema>();
-
-        if (type instanceof TypeDeserializer.SimpleType) {
-            simpleTypes.add(((TypeDeserializer.SimpleType) type).getName());
-        }
         if (type instanceof TypeDeserializer.UnionType) {
-            simpleTypes.addAll(((TypeDeserializer.UnionType<ApplicationSchema>) type).getSimpleTypes());
             schemaTypes.addAll(((TypeDeserializer.UnionType<ApplicationSchema>) type).getSchemaTypes());
         }
         
         // also store the original version, for serialization purposes
         this.type = type;
+        discard(LazySchemaReader.TYPE);
     }
 
     // implementation of the various forms of 'type'
     @JsonIgnore
     protected ArrayList<ApplicationSchema>              schemaTypes;
     @JsonIgnore
-    protected HashSet<String>                           simpleTypes;
+    protected SimpleTypeSet                             simpleTypes;
+    @JsonIgnore
+    protected SimpleTypeSet                             disallowedTypes;
+
+    static SimpleTypeSet simpleTypes(TypeDeserializer.TypeVariant type, boolean unknownMatchesAny) {
+        if (type instanceof TypeDeserializer.SimpleType) {
+            return SimpleTypeSet.of(Collections.singletonList(((TypeDeserializer.SimpleType) type).getName()), unknownMatchesAny);
+        }
+        if (type instanceof TypeDeserializer.UnionType) {
+            return SimpleTypeSet.of(((TypeDeserializer.UnionType<?>) type).getSimpleTypes(), unknownMatchesAny);
+        }
+        return SimpleTypeSet.EMPTY;
+    }
+
+    // subschemas not read yet, when this schema was read by a LazySchemaReader
+    private volatile LazySchemaReader<?>.Pending pending;
+
+    /**
+     * Not a setter, so that Jackson does not take it for a property
+     */
+    void attachPending(LazySchemaReader<?>.Pending pending) {
+        this.pending = pending;
+    }
+
+    private void materialize(int part) {
+        LazySchemaReader<?>.Pending current = pending;
+        if (current != null) {
+            current.materialize(this, part);
+        }
+    }
+
+    private void discard(int part) {
+        LazySchemaReader<?>.Pending current = pending;
+        if (current != null) {
+            current.discard(part);
+        }
+    }
 
     // this reference is needed to construct the correct deserializer 
     // TODO: how do you bind this to make sure this is the class of ApplicationSchema?  Type erasure
     // causes the static parts of this class to be untyped.
-    private static Class<?> applicationSchemaClass = JsonSchema.class;
+    private static volatile Class<?> applicationSchemaClass = JsonSchema.class;
+    /**
+     * Set the class used for schemas in unions by every ObjectMapper without a {@link SchemaModule}
+     * @deprecated this affects all ObjectMappers in the JVM; register a {@link SchemaModule} with the ObjectMapper instead
+     */
+    @Deprecated
     public static void setApplicationSchemaClass(Class<? extends SchemaDraft3<?> > clazz) {
         SchemaDraft3.applicationSchemaClass = clazz;
     }
@@ -202,19 +245,33 @@ public class SchemaDraft3<ApplicationSchema extends SchemaDraft3<ApplicationSche
     }
     
     public ArrayList<ApplicationSchema> getSchemaTypes() {
+        materialize(LazySchemaReader.TYPE);
         return schemaTypes;
     }
 
-    public HashSet<String> getSimpleTypes() {
+    /**
+     * @return the simple types of 'type', or null if there is no type
+     */
+    public SimpleTypeSet getSimpleTypes() {
+        materialize(LazySchemaReader.TYPE);
         return simpleTypes;
     }
 
+    /**
+     * @return the simple types of 'disallow', without names that are not draft 3 types, or null if nothing is disallowed
+     */
+    public SimpleTypeSet getDisallowedTypes() {
+        return disallowedTypes;
+    }
+
     public ArrayList<ApplicationSchema> getItems() {
+        materialize(LazySchemaReader.ITEMS);
         return items;
     }
 
     public void setItems(ArrayList<ApplicationSchema> items) {
         this.items = items;
+        discard(LazySchemaReader.ITEMS);
     }
 
     public boolean isRequired() {
@@ -242,11 +299,13 @@ public class SchemaDraft3<ApplicationSchema extends SchemaDraft3<ApplicationSche
     }
 
     public LinkedHashMap<String, ApplicationSchema> getProperties() {
+        materialize(LazySchemaReader.PROPERTIES);
         return properties;
     }
 
     public void setProperties(LinkedHashMap<String, ApplicationSchema> properties) {
         this.properties = properties;
+        discard(LazySchemaReader.PROPERTIES);
     }
 
     public String getPattern() {
@@ -365,11 +424,19 @@ public class SchemaDraft3<ApplicationSchema extends SchemaDraft3<ApplicationSche
         this.maxlength = maxlength;
     }
 
-    public ArrayList<String> getEnumerated() {
+    public ArrayList<JsonNode> getEnumerated() {
         return enumerated;
     }
 
-    public void setEnumerated(ArrayList<String> enumerated) {
+    public void setEnumerated(ArrayList<JsonNode> enumerated) {
+        if (enumerated != null) {
+            // Jackson binds a JSON null in the list as a Java null
+            for (int i = 0; i < enumerated.size(); i++) {
+                if (enumerated.get(i) == null) {
+                    enumerated.set(i, NullNode.getInstance());
+                }
+            }
+        }
         this.enumerated = enumerated;
     }
 
@@ -403,6 +470,7 @@ public class SchemaDraft3<ApplicationSchema extends SchemaDraft3<ApplicationSche
 
     public void setDisallow(TypeDeserializer.TypeVariant disallow) {
         this.disallow = disallow;
+        this.disallowedTypes = disallow == null ? null : simpleTypes(disallow, false);
     }
 
     public ArrayList<String> getExtendsSchemas() {
@@ -438,6 +506,7 @@ public class SchemaDraft3<ApplicationSchema extends SchemaDraft3<ApplicationSche
     }
 
     public TypeDeserializer.TypeVariant getType() {
+        materialize(LazySchemaReader.TYPE);
         return type;
     }
 }
\ No newline at end of file
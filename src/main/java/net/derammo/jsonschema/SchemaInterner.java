@@ -0,0 +1,94 @@
+/*
+ * Copyright 2011 Ammo Goettsch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package net.derammo.jsonschema;
+
+/**
+ * Table of the distinct schemas frozen by {@link CompactSchema#freeze(SchemaDraft3, SchemaInterner)}, so
+ * that equal subschemas, such as the same string type with a maximum length repeated under many
+ * properties, are kept once however many documents they occur in.
+ *
+ * Schemas are frozen bottom up and each is looked up by its attributes and the identity of its already
+ * shared subschemas, so comparing two schemas does not descend into their subschemas.  The table may
+ * be used by several threads at once, and keeps up to a fixed number of schemas, evicting the least
+ * recently used.  Schemas frozen before an eviction stay shared with each other.
+ *
+ * <pre>
+ * SchemaInterner interner = new SchemaInterner();
+ * for (JsonSchema schema : schemas) {
+ *     compact.add(CompactSchema.freeze(schema, interner));
+ * }
+ * </pre>
+ */
+public final class SchemaInterner {
+    public static final int DEFAULT_CAPACITY = 65536;
+
+    /**
+     * Compares schemas by shape instead of identity
+     */
+    private static final class Key {
+        final CompactSchema schema;
+
+        Key(CompactSchema schema) {
+            this.schema = schema;
+        }
+
+        @Override
+        public int hashCode() {
+            return schema.shapeHash();
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Key && schema.sameShape(((Key) other).schema);
+        }
+    }
+
+    private final LruCache<Key, CompactSchema> schemas;
+
+    public SchemaInterner() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity number of distinct schemas that are kept
+     */
+    public SchemaInterner(int capacity) {
+        schemas = new LruCache<Key, CompactSchema>(capacity);
+    }
+
+    /**
+     * @return number of distinct schemas in the table
+     */
+    public int size() {
+        return schemas.size();
+    }
+
+    /**
+     * Forget all schemas; those frozen before stay shared with each other, but not with those frozen afterwards
+     */
+    public void clear() {
+        schemas.clear();
+    }
+
+    /**
+     * @param schema a schema whose subschemas have been interned already
+     * @return the equal schema in the table, or the given schema, which has then been added
+     */
+    CompactSchema intern(CompactSchema schema) {
+        CompactSchema existing = schemas.putIfAbsent(new Key(schema), schema);
+        return existing == null ? schema : existing;
+    }
+}
@@ -0,0 +1,32 @@
+/*
+ * Copyright 2011 Ammo Goettsch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package net.derammo.jsonschema;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+
+/**
+ * Source of schema documents for a {@link SchemaRegistry}
+ */
+public interface SchemaLoader {
+    /**
+     * @param uri absolute URI of a schema document, without a fragment
+     * @return the content of the document, or null if this loader does not provide it
+     * @throws IOException if the document exists but cannot be read
+     */
+    InputStream open(URI uri) throws IOException;
+}
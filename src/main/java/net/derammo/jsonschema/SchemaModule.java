@@ -0,0 +1,91 @@
+/*
+ * Copyright 2011 Ammo Goettsch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package net.derammo.jsonschema;
+
+import org.codehaus.jackson.Version;
+import org.codehaus.jackson.map.DeserializationConfig;
+import org.codehaus.jackson.map.Module;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.map.annotate.JsonDeserialize;
+import org.codehaus.jackson.map.introspect.Annotated;
+import org.codehaus.jackson.map.introspect.NopAnnotationIntrospector;
+
+/**
+ * Binds the class used for schemas in unions ('type', 'disallow' and the like) to one ObjectMapper,
+ * instead of the JVM-wide {@link SchemaDraft3#setApplicationSchemaClass(Class)}.  Different mappers
+ * can then read different extensions of the schema at the same time.
+ *
+ * <pre>
+ * ObjectMapper mapper = SchemaModule.createObjectMapper(MySchema.class);
+ * MySchema schema = mapper.readValue(in, MySchema.class);
+ * </pre>
+ */
+public class SchemaModule extends Module {
+    private final Class<? extends SchemaDraft3<?>> applicationSchemaClass;
+
+    public SchemaModule() {
+        this(JsonSchema.class);
+    }
+
+    /**
+     * @param applicationSchemaClass class to create for every schema found in a union
+     */
+    public SchemaModule(Class<? extends SchemaDraft3<?>> applicationSchemaClass) {
+        this.applicationSchemaClass = applicationSchemaClass;
+    }
+
+    /**
+     * @param applicationSchemaClass class to create for every schema found in a union
+     * @return a new ObjectMapper configured to read schemas of the given class
+     */
+    public static ObjectMapper createObjectMapper(Class<? extends SchemaDraft3<?>> applicationSchemaClass) {
+        ObjectMapper mapper = new ObjectMapper();
+        mapper.registerModule(new SchemaModule(applicationSchemaClass));
+        // this is required for schema.items, which can be an array or atom
+        mapper.configure(DeserializationConfig.Feature.ACCEPT_SINGLE_VALUE_AS_ARRAY, true);
+        return mapper;
+    }
+
+    public Class<? extends SchemaDraft3<?>> getApplicationSchemaClass() {
+        return applicationSchemaClass;
+    }
+
+    @Override
+    public String getModuleName() {
+        return "JsonSchemaDraft3";
+    }
+
+    @Override
+    public Version version() {
+        return Version.unknownVersion();
+    }
+
+    @Override
+    public void setupModule(SetupContext context) {
+        // Jackson derives a deserializer for each property from this one, which keeps the schema class
+        final TypeDeserializer typeDeserializer = new TypeDeserializer(applicationSchemaClass);
+        context.insertAnnotationIntrospector(new NopAnnotationIntrospector() {
+            @Override
+            public Object findDeserializer(Annotated am) {
+                JsonDeserialize annotation = am.getAnnotation(JsonDeserialize.class);
+                if (annotation != null && annotation.using() == TypeDeserializer.class) {
+                    return typeDeserializer;
+                }
+                return null;
+            }
+        });
+    }
+}
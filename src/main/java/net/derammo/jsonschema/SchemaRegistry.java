@@ -0,0 +1,668 @@
+/*
+ * Copyright 2011 Ammo Goettsch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package net.derammo.jsonschema;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.map.ObjectMapper;
+
+/**
+ * Loads schema documents on demand and resolves the references between them.
+ *
+ * Schemas are found by the URI of their document, optionally followed by a JSON pointer fragment
+ * (http://example.com/a.json#/properties/b) or by the URI given as their 'id'.  '$ref' and 'extends'
+ * are resolved when a validator is requested, relative to the 'id' of the enclosing schemas.
+ *
+ * Loaded documents and compiled validators are kept in caches of bounded size, which evict the least
+ * recently used entry.  All methods may be called from several threads.  Documents are read when they
+ * are first needed, one after another, unless they have been loaded ahead with {@link #load(URI)}, which
+ * reads a document and all those it refers to in parallel.
+ *
+ * @param <ApplicationSchema> class the documents are bound to, such as JsonSchema
+ */
+public class SchemaRegistry<ApplicationSchema extends SchemaDraft3<ApplicationSchema>> {
+    public static final int DEFAULT_CACHE_SIZE = 256;
+
+    /**
+     * A loaded document, with its schemas indexed by JSON pointer and by id
+     */
+    private static final class Document {
+        final URI uri;
+        final ReadOnlySchema root;
+        private final HashMap<String, ReadOnlySchema> pointers = new HashMap<String, ReadOnlySchema>();
+        private final HashMap<URI, ReadOnlySchema> ids = new HashMap<URI, ReadOnlySchema>();
+        // resolution scope of every schema in the document, which changes below a schema with an id
+        private final IdentityHashMap<ReadOnlySchema, URI> bases = new IdentityHashMap<ReadOnlySchema, URI>();
+
+        Document(URI uri, ReadOnlySchema root) {
+            this.uri = uri;
+            this.root = root;
+        }
+
+        synchronized ReadOnlySchema getPointer(String pointer) {
+            return pointers.get(pointer);
+        }
+
+        synchronized ReadOnlySchema getId(URI id) {
+            return ids.get(id);
+        }
+
+        synchronized URI getBase(ReadOnlySchema schema) {
+            URI base = bases.get(schema);
+            return base == null ? uri : base;
+        }
+
+        synchronized void add(ReadOnlySchema schema, String pointer, URI base) {
+            pointers.put(pointer, schema);
+            bases.put(schema, base);
+        }
+
+        synchronized void addId(ReadOnlySchema schema, URI id) {
+            ids.put(id, schema);
+        }
+
+        /**
+         * @return every schema indexed so far, with the URI its references are resolved against
+         */
+        synchronized IdentityHashMap<ReadOnlySchema, URI> getBases() {
+            return new IdentityHashMap<ReadOnlySchema, URI>(bases);
+        }
+    }
+
+    /**
+     * Executor of loads that are not given one: virtual threads where the runtime has them, otherwise
+     * daemon threads that are created as needed and kept for a minute
+     */
+    private static final class DefaultExecutor {
+        static final ExecutorService INSTANCE = create();
+
+        private static ExecutorService create() {
+            try {
+                return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (NoSuchMethodException e) {
+                // before Java 21
+            } catch (IllegalAccessException e) {
+                // not expected for a public method
+            } catch (InvocationTargetException e) {
+                // not expected, the factory only allocates
+            }
+            return Executors.newCachedThreadPool(new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "schema-loader-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+    }
+
+    /**
+     * A schema together with the document it was found in
+     */
+    private static final class Located {
+        final Document document;
+        final ReadOnlySchema schema;
+
+        Located(Document document, ReadOnlySchema schema) {
+            this.document = document;
+            this.schema = schema;
+        }
+    }
+
+    private final Class<ApplicationSchema> schemaClass;
+    private final ObjectMapper mapper;
+    private final List<SchemaLoader> loaders;
+    private volatile SchemaSnapshot snapshot;
+    private volatile ValidationListener listener;
+    private volatile PatternCache patterns = PatternCache.getDefault();
+    // nodes shared by the validators compiled with the current patterns
+    private volatile SchemaCompiler.Nodes nodes = new SchemaCompiler.Nodes();
+    private final LruCache<URI, Document> documents;
+    private final LruCache<URI, SchemaValidator> validators;
+    // document holding the schema with each id, which may have been evicted since
+    private final ConcurrentHashMap<URI, URI> idDocuments = new ConcurrentHashMap<URI, URI>();
+    // validators compiled from each document, including those that were evicted since
+    private final ConcurrentHashMap<URI, Set<URI>> dependents = new ConcurrentHashMap<URI, Set<URI>>();
+    // documents being read by load(), so that concurrent loads of one document read it once
+    private final ConcurrentHashMap<URI, CompletableFuture<Document>> reading = new ConcurrentHashMap<URI, CompletableFuture<Document>>();
+
+    /**
+     * @param schemaClass class the documents are bound to, such as JsonSchema
+     * @param loaders sources of documents, which are asked in turn
+     */
+    public SchemaRegistry(Class<ApplicationSchema> schemaClass, SchemaLoader... loaders) {
+        this(schemaClass, SchemaModule.createObjectMapper(schemaClass), DEFAULT_CACHE_SIZE, loaders);
+    }
+
+    /**
+     * @param schemaClass class the documents are bound to, such as JsonSchema
+     * @param mapper mapper used to parse the documents, as created by {@link SchemaModule#createObjectMapper(Class)}
+     * @param cacheSize number of documents, and separately of validators, that are kept
+     * @param loaders sources of documents, which are asked in turn
+     */
+    public SchemaRegistry(Class<ApplicationSchema> schemaClass, ObjectMapper mapper, int cacheSize, SchemaLoader... loaders) {
+        this.schemaClass = schemaClass;
+        this.mapper = mapper;
+        this.loaders = new ArrayList<SchemaLoader>(Arrays.asList(loaders));
+        this.documents = new LruCache<URI, Document>(cacheSize);
+        this.validators = new LruCache<URI, SchemaValidator>(cacheSize);
+    }
+
+    /**
+     * Read documents from a snapshot instead of parsing them, where the snapshot holds them.  Others are
+     * still read by the loaders.
+     * @param snapshot a current snapshot of the documents, or null to parse all of them
+     */
+    public void setSnapshot(SchemaSnapshot snapshot) {
+        this.snapshot = snapshot;
+    }
+
+    /**
+     * Compile the patterns of validators with the given cache from now on, which decides how they are
+     * matched.  Cached validators are dropped, so that they are compiled again.
+     * @param patterns a cache, such as one created by {@link PatternCache#linear(int, int)} for untrusted schemas
+     */
+    public void setPatternCache(PatternCache patterns) {
+        this.patterns = patterns;
+        nodes = new SchemaCompiler.Nodes();
+        validators.clear();
+    }
+
+    /**
+     * Instrument the validators compiled from now on, reporting each under the URI it was requested
+     * with.  Cached validators are dropped, so that they are compiled again; validators that were
+     * returned before keep reporting to the previous listener, if any.
+     * @param listener receives the outcome of each validation, or null to stop instrumenting validators
+     * @see ValidationMetrics
+     */
+    public void setListener(ValidationListener listener) {
+        this.listener = listener;
+        validators.clear();
+    }
+
+    /**
+     * @param uri URI of a document, optionally with a JSON pointer fragment, or the id of a schema
+     * @return the schema, as parsed; references in it are not resolved
+     * @throws SchemaException if there is no such schema
+     * @throws IOException if the document cannot be read
+     */
+    @SuppressWarnings("unchecked")
+    public ApplicationSchema getSchema(URI uri) throws IOException {
+        return (ApplicationSchema) locate(uri).schema;
+    }
+
+    /**
+     * Load a schema on the default executor, which uses virtual threads where the runtime has them.
+     * @see #load(URI, Executor)
+     */
+    public CompletableFuture<ApplicationSchema> load(URI uri) {
+        return load(uri, DefaultExecutor.INSTANCE);
+    }
+
+    /**
+     * Load the document of a schema, and the documents named by the '$ref' and 'extends' of its schemas,
+     * transitively, into the document cache.  Each document is read and parsed by a task of its own,
+     * as soon as a document referring to it has been parsed, so the time taken is that of the longest
+     * chain of references rather than the sum of all documents.  A document that is already cached, or
+     * being loaded by another call, is not read again.  Afterwards {@link #getValidator(URI)} finds the
+     * documents it needs in the cache, unless the cache is too small to hold all of them.
+     *
+     * @param uri URI of a document, optionally with a JSON pointer fragment, or the id of a schema
+     * @param executor runs the tasks that read documents, which block while reading
+     * @return the schema, as from {@link #getSchema(URI)}, once all documents have been loaded; completed
+     *         exceptionally with the IOException of the first document that could not be read
+     */
+    public CompletableFuture<ApplicationSchema> load(final URI uri, final Executor executor) {
+        final URI absolute = uri.normalize();
+        URI idDocument = idDocuments.get(absolute);
+        final Loading loading = new Loading(executor);
+        try {
+            loading.fetch(idDocument != null ? idDocument : withoutFragment(absolute));
+        } catch (SchemaException e) {
+            loading.done.completeExceptionally(e);
+        }
+        return loading.done.thenApplyAsync(new Function<Void, ApplicationSchema>() {
+            public ApplicationSchema apply(Void loaded) {
+                try {
+                    return getSchema(absolute);
+                } catch (IOException e) {
+                    throw new CompletionException(e);
+                }
+            }
+        }, executor);
+    }
+
+    /**
+     * @param uri URI of a document, optionally with a JSON pointer fragment, or the id of a schema
+     * @return validator for the schema, with all references resolved
+     * @throws SchemaException if there is no such schema, a reference cannot be resolved, or references form a cycle
+     * @throws IOException if a document cannot be read
+     */
+    public SchemaValidator getValidator(URI uri) throws IOException {
+        URI key = uri.normalize();
+        SchemaValidator validator = validators.get(key);
+        if (validator == null) {
+            Located root = locate(key);
+            Linker linker = new Linker();
+            linker.link(root.document, root.schema);
+            linker.checkCycles();
+            validator = new SchemaCompiler(linker, patterns, nodes).compile(root.schema);
+            ValidationListener current = listener;
+            if (current != null) {
+                validator = validator.instrument(key.toString(), current);
+            }
+            validators.put(key, validator);
+            for (URI document : linker.getDocuments()) {
+                Set<URI> uris = dependents.get(document);
+                if (uris == null) {
+                    Set<URI> created = Collections.newSetFromMap(new ConcurrentHashMap<URI, Boolean>());
+                    uris = dependents.putIfAbsent(document, created);
+                    if (uris == null) {
+                        uris = created;
+                    }
+                }
+                uris.add(key);
+            }
+        }
+        return validator;
+    }
+
+    /**
+     * Forget a document that has changed, together with every validator that used it, so that they are
+     * read and compiled again when next requested.  Other documents and validators are kept.
+     * @param document URI of the document, without a fragment
+     * @return URIs of the validators that were compiled from the document, whether or not they were still cached
+     */
+    public Set<URI> invalidate(URI document) {
+        URI key = document.normalize();
+        documents.remove(key);
+        idDocuments.values().removeAll(Collections.singleton(key));
+        Set<URI> uris = dependents.remove(key);
+        if (uris == null) {
+            return Collections.emptySet();
+        }
+        for (URI uri : uris) {
+            validators.remove(uri);
+        }
+        return uris;
+    }
+
+    /**
+     * Forget all documents and validators
+     */
+    public void clear() {
+        nodes = new SchemaCompiler.Nodes();
+        documents.clear();
+        validators.clear();
+        idDocuments.clear();
+        dependents.clear();
+    }
+
+    private Located locate(URI uri) throws IOException {
+        URI absolute = uri.normalize();
+        URI idDocument = idDocuments.get(absolute);
+        if (idDocument != null) {
+            Document document = getDocument(idDocument);
+            ReadOnlySchema schema = document.getId(absolute);
+            if (schema != null) {
+                return new Located(document, schema);
+            }
+        }
+        Document document = getDocument(withoutFragment(absolute));
+        String fragment = absolute.getFragment();
+        if (fragment == null || fragment.length() == 0) {
+            return new Located(document, document.root);
+        }
+        ReadOnlySchema schema;
+        if (fragment.startsWith("/")) {
+            schema = document.getPointer(fragment);
+            if (schema == null) {
+                schema = bindFragment(document, fragment);
+            }
+        } else {
+            schema = document.getId(absolute);
+        }
+        if (schema == null) {
+            throw new SchemaException("no schema found at " + absolute);
+        }
+        return new Located(document, schema);
+    }
+
+    private Document getDocument(URI uri) throws IOException {
+        Document document = documents.get(uri);
+        if (document == null) {
+            document = new Document(uri, read(uri));
+            index(document, document.root, "", uri);
+            documents.put(uri, document);
+        }
+        return document;
+    }
+
+    /**
+     * @return the document, read by a task on the executor unless it is cached or already being read
+     */
+    private CompletableFuture<Document> getDocumentAsync(final URI uri, Executor executor) {
+        Document cached = documents.get(uri);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        final CompletableFuture<Document> future = new CompletableFuture<Document>();
+        CompletableFuture<Document> existing = reading.putIfAbsent(uri, future);
+        if (existing != null) {
+            return existing;
+        }
+        executor.execute(new Runnable() {
+            public void run() {
+                try {
+                    future.complete(getDocument(uri));
+                } catch (Throwable e) {
+                    future.completeExceptionally(e);
+                } finally {
+                    reading.remove(uri, future);
+                }
+            }
+        });
+        return future;
+    }
+
+    /**
+     * One call of {@link SchemaRegistry#load(URI, Executor)}: the documents found so far, and the
+     * number of them that are still being read
+     */
+    private final class Loading {
+        final Executor executor;
+        final CompletableFuture<Void> done = new CompletableFuture<Void>();
+        private final Set<URI> seen = Collections.newSetFromMap(new ConcurrentHashMap<URI, Boolean>());
+        private final AtomicInteger outstanding = new AtomicInteger();
+
+        Loading(Executor executor) {
+            this.executor = executor;
+        }
+
+        void fetch(URI document) {
+            if (!seen.add(document)) {
+                return;
+            }
+            outstanding.incrementAndGet();
+            getDocumentAsync(document, executor).whenComplete(new BiConsumer<Document, Throwable>() {
+                public void accept(Document loaded, Throwable failure) {
+                    if (failure != null) {
+                        done.completeExceptionally(failure instanceof CompletionException ? failure.getCause() : failure);
+                        return;
+                    }
+                    try {
+                        for (URI target : references(loaded)) {
+                            fetch(target);
+                        }
+                    } catch (SchemaException e) {
+                        done.completeExceptionally(e);
+                        return;
+                    }
+                    // the references were counted before this document is uncounted
+                    if (outstanding.decrementAndGet() == 0) {
+                        done.complete(null);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * @return URIs of the documents named by the '$ref' and 'extends' of the schemas in a document
+     */
+    private Set<URI> references(Document document) throws SchemaException {
+        HashSet<URI> targets = new HashSet<URI>();
+        for (Map.Entry<ReadOnlySchema, URI> entry : document.getBases().entrySet()) {
+            ReadOnlySchema schema = entry.getKey();
+            URI base = entry.getValue();
+            if (schema.getReference() != null) {
+                targets.add(base.resolve(schema.getReference()).normalize());
+            }
+            if (schema.getExtendsSchemas() != null) {
+                for (String extended : schema.getExtendsSchemas()) {
+                    try {
+                        targets.add(base.resolve(new URI(extended)).normalize());
+                    } catch (URISyntaxException e) {
+                        throw new SchemaException("invalid URI in extends: " + extended, e);
+                    }
+                }
+            }
+        }
+        HashSet<URI> documents = new HashSet<URI>();
+        for (URI target : targets) {
+            URI idDocument = idDocuments.get(target);
+            documents.add(idDocument != null ? idDocument : withoutFragment(target));
+        }
+        return documents;
+    }
+
+    private InputStream open(URI uri) throws IOException {
+        for (SchemaLoader loader : loaders) {
+            InputStream in = loader.open(uri);
+            if (in != null) {
+                return in;
+            }
+        }
+        throw new SchemaException("no loader provides " + uri);
+    }
+
+    private ApplicationSchema read(URI uri) throws IOException {
+        SchemaSnapshot current = snapshot;
+        if (current != null) {
+            ApplicationSchema schema = current.getDocument(uri, schemaClass);
+            if (schema != null) {
+                return schema;
+            }
+        }
+        InputStream in = open(uri);
+        try {
+            return mapper.readValue(in, schemaClass);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Bind a part of a document that is not one of its schemas, such as a definition referred to by pointer
+     */
+    private ReadOnlySchema bindFragment(Document document, String pointer) throws IOException {
+        JsonNode node;
+        InputStream in = open(document.uri);
+        try {
+            node = mapper.readTree(in);
+        } finally {
+            in.close();
+        }
+        for (String segment : pointer.substring(1).split("/", -1)) {
+            if (node == null) {
+                break;
+            }
+            segment = segment.replace("~1", "/").replace("~0", "~");
+            node = node.isArray() ? node.get(parseIndex(segment)) : node.get(segment);
+        }
+        if (node == null || !node.isObject()) {
+            return null;
+        }
+        ApplicationSchema schema = mapper.readValue(node, schemaClass);
+        index(document, schema, pointer, document.uri);
+        return schema;
+    }
+
+    private static int parseIndex(String segment) {
+        try {
+            return Integer.parseInt(segment);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private void index(final Document document, ReadOnlySchema schema, final String pointer, URI base) throws IOException {
+        if (schema.getId() != null) {
+            base = base.resolve(schema.getId()).normalize();
+            document.addId(schema, base);
+            idDocuments.put(base, document.uri);
+        }
+        document.add(schema, pointer, base);
+        final URI scope = base;
+        Subschemas.visit(schema, new Subschemas.Visitor() {
+            public void visit(ReadOnlySchema subschema, String relative, boolean sameInstance) throws IOException {
+                index(document, subschema, pointer + relative, scope);
+            }
+        });
+        if (schema.getItems() != null && schema.getItems().size() == 1) {
+            // a single schema has been converted to a list of one, see SchemaDraft3.items
+            document.add(schema.getItems().get(0), pointer + "/items", scope);
+        }
+    }
+
+    private static URI withoutFragment(URI uri) throws SchemaException {
+        if (uri.getFragment() == null) {
+            return uri;
+        }
+        try {
+            return new URI(uri.getScheme(), uri.getSchemeSpecificPart(), null);
+        } catch (URISyntaxException e) {
+            throw new SchemaException("invalid schema URI " + uri, e);
+        }
+    }
+
+    /**
+     * Resolves the references reachable from one schema, for the compiler
+     */
+    private final class Linker implements SchemaCompiler.References {
+        private final IdentityHashMap<ReadOnlySchema, ReadOnlySchema> references = new IdentityHashMap<ReadOnlySchema, ReadOnlySchema>();
+        private final IdentityHashMap<ReadOnlySchema, List<ReadOnlySchema>> extensions = new IdentityHashMap<ReadOnlySchema, List<ReadOnlySchema>>();
+        private final IdentityHashMap<ReadOnlySchema, Document> linked = new IdentityHashMap<ReadOnlySchema, Document>();
+
+        public ReadOnlySchema getReference(ReadOnlySchema schema) {
+            return references.get(schema);
+        }
+
+        public List<ReadOnlySchema> getExtends(ReadOnlySchema schema) {
+            return extensions.get(schema);
+        }
+
+        /**
+         * @return URIs of the documents holding the linked schemas
+         */
+        Set<URI> getDocuments() {
+            HashSet<URI> uris = new HashSet<URI>();
+            for (Document document : linked.values()) {
+                uris.add(document.uri);
+            }
+            return uris;
+        }
+
+        void link(final Document document, ReadOnlySchema schema) throws IOException {
+            if (linked.put(schema, document) != null) {
+                return;
+            }
+            URI base = document.getBase(schema);
+            if (schema.getReference() != null) {
+                Located target = locate(base.resolve(schema.getReference()));
+                references.put(schema, target.schema);
+                link(target.document, target.schema);
+            }
+            if (schema.getExtendsSchemas() != null) {
+                List<ReadOnlySchema> targets = new ArrayList<ReadOnlySchema>();
+                for (String extended : schema.getExtendsSchemas()) {
+                    Located target;
+                    try {
+                        target = locate(base.resolve(new URI(extended)));
+                    } catch (URISyntaxException e) {
+                        throw new SchemaException("invalid URI in extends: " + extended, e);
+                    }
+                    targets.add(target.schema);
+                    link(target.document, target.schema);
+                }
+                extensions.put(schema, targets);
+            }
+            Subschemas.visit(schema, new Subschemas.Visitor() {
+                public void visit(ReadOnlySchema subschema, String pointer, boolean sameInstance) throws IOException {
+                    link(document, subschema);
+                }
+            });
+        }
+
+        /**
+         * Make sure no schema applies to an instance through a chain of schemas that leads back to itself,
+         * such as two schemas extending each other, which would make validation run forever.
+         */
+        void checkCycles() throws IOException {
+            final IdentityHashMap<ReadOnlySchema, Boolean> done = new IdentityHashMap<ReadOnlySchema, Boolean>();
+            for (ReadOnlySchema schema : linked.keySet()) {
+                checkCycles(schema, new IdentityHashMap<ReadOnlySchema, Boolean>(), done);
+            }
+        }
+
+        private void checkCycles(ReadOnlySchema schema, final IdentityHashMap<ReadOnlySchema, Boolean> path,
+                final IdentityHashMap<ReadOnlySchema, Boolean> done) throws IOException {
+            if (done.containsKey(schema)) {
+                return;
+            }
+            if (path.put(schema, Boolean.TRUE) != null) {
+                URI base = linked.get(schema).getBase(schema);
+                throw new SchemaException("circular reference involving schema at " + base);
+            }
+            ReadOnlySchema target = references.get(schema);
+            if (target != null) {
+                // the other attributes of a schema with a reference are not used
+                checkCycles(target, path, done);
+            } else {
+                if (extensions.containsKey(schema)) {
+                    for (ReadOnlySchema extended : extensions.get(schema)) {
+                        checkCycles(extended, path, done);
+                    }
+                }
+                Subschemas.visit(schema, new Subschemas.Visitor() {
+                    public void visit(ReadOnlySchema subschema, String pointer, boolean sameInstance) throws IOException {
+                        if (sameInstance) {
+                            checkCycles(subschema, path, done);
+                        }
+                    }
+                });
+            }
+            path.remove(schema);
+            done.put(schema, Boolean.TRUE);
+        }
+    }
+}
@@ -0,0 +1,811 @@
+/*
+ * Copyright 2011 Ammo Goettsch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package net.derammo.jsonschema;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Constructor;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.derammo.jsonschema.TypeDeserializer.TypeVariant;
+
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.node.ArrayNode;
+import org.codehaus.jackson.node.BigIntegerNode;
+import org.codehaus.jackson.node.BooleanNode;
+import org.codehaus.jackson.node.DecimalNode;
+import org.codehaus.jackson.node.DoubleNode;
+import org.codehaus.jackson.node.IntNode;
+import org.codehaus.jackson.node.JsonNodeFactory;
+import org.codehaus.jackson.node.LongNode;
+import org.codehaus.jackson.node.NullNode;
+import org.codehaus.jackson.node.ObjectNode;
+import org.codehaus.jackson.node.TextNode;
+
+/**
+ * A binary image of a set of parsed schema documents, written once, for instance when the schemas
+ * are packaged, and read when the application starts instead of the JSON documents.
+ *
+ * The file is memory mapped, and each document is rebuilt from it the first time it is asked for,
+ * by calling the setters of the schema class directly; nothing is tokenized or bound by Jackson.
+ * All strings are stored once, in a table at the start of the file.
+ *
+ * Only the attributes of draft 3 and of hyper schemas are stored, so a snapshot can only be written
+ * for {@link JsonSchema} and the other classes of this package that add no attributes.
+ *
+ * A snapshot is written with a version chosen by the application, such as a digest of the documents
+ * or the version of the package holding them, and is only opened for that version and the current
+ * format.  Otherwise {@link #open(File, String)} returns null, and the JSON documents should be read
+ * instead, for which {@link SchemaRegistry#setSnapshot(SchemaSnapshot)} falls back to its loaders.
+ *
+ * <pre>
+ * SchemaSnapshot snapshot = SchemaSnapshot.open(file, SCHEMA_VERSION);
+ * if (snapshot != null) {
+ *     registry.setSnapshot(snapshot);
+ * }
+ * </pre>
+ */
+public final class SchemaSnapshot {
+    static final int MAGIC = 0x4a535333;
+    // 2: values of 'enum' are stored as JSON text
+    // 3: values of 'enum' are stored as tagged values, absent properties and items are told from empty ones
+    static final int FORMAT_VERSION = 3;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    // tags of the forms of 'type', 'disallow', 'additionalItems' and dependencies
+    private static final int SIMPLE = 0;
+    private static final int FALSE = 1;
+    private static final int SCHEMA = 2;
+    private static final int UNION = 3;
+
+    // tags of the JSON values of 'enum', one for each class of node that a parsed document holds
+    private static final int NULL_VALUE = 0;
+    private static final int TRUE_VALUE = 1;
+    private static final int FALSE_VALUE = 2;
+    private static final int INT_VALUE = 3;
+    private static final int LONG_VALUE = 4;
+    private static final int BIG_INTEGER_VALUE = 5;
+    private static final int DOUBLE_VALUE = 6;
+    private static final int DECIMAL_VALUE = 7;
+    private static final int STRING_VALUE = 8;
+    private static final int ARRAY_VALUE = 9;
+    private static final int OBJECT_VALUE = 10;
+
+    // attributes present in a schema, in the order they are stored
+    private static final int TYPE = 1;
+    private static final int PROPERTIES = 1 << 1;
+    private static final int PATTERN_PROPERTIES = 1 << 2;
+    private static final int NO_ADDITIONAL_PROPERTIES = 1 << 3;
+    private static final int ITEMS = 1 << 4;
+    private static final int ADDITIONAL_ITEMS = 1 << 5;
+    private static final int REQUIRED = 1 << 6;
+    private static final int DEPENDENCIES = 1 << 7;
+    private static final int MINIMUM = 1 << 8;
+    private static final int MAXIMUM = 1 << 9;
+    private static final int EXCLUSIVE_MINIMUM = 1 << 10;
+    private static final int EXCLUSIVE_MAXIMUM = 1 << 11;
+    private static final int MIN_ITEMS = 1 << 12;
+    private static final int MAX_ITEMS = 1 << 13;
+    private static final int UNIQUE_ITEMS = 1 << 14;
+    private static final int PATTERN = 1 << 15;
+    private static final int MIN_LENGTH = 1 << 16;
+    private static final int MAX_LENGTH = 1 << 17;
+    private static final int ENUM = 1 << 18;
+    private static final int DEFAULT = 1 << 19;
+    private static final int TITLE = 1 << 20;
+    private static final int DESCRIPTION = 1 << 21;
+    private static final int FORMAT = 1 << 22;
+    private static final int DIVISIBLE_BY = 1 << 23;
+    private static final int DISALLOW = 1 << 24;
+    private static final int EXTENDS = 1 << 25;
+    private static final int ID = 1 << 26;
+    private static final int REFERENCE = 1 << 27;
+    private static final int SCHEMA_REFERENCE = 1 << 28;
+    private static final int LINKS = 1 << 29;
+    // 'properties' and 'items' that are null rather than empty, which is their default
+    private static final int NULL_PROPERTIES = 1 << 30;
+    private static final int NULL_ITEMS = 1 << 31;
+
+    private static final HyperLink.Relation[] RELATIONS = HyperLink.Relation.values();
+
+    private final ByteBuffer buffer;
+    private final String schemaClassName;
+    private final int[] stringOffsets;
+    // decoded on first use; the strings are immutable, so racing threads at worst decode one twice
+    private final String[] strings;
+    private final HashMap<String, Integer> documents = new HashMap<String, Integer>();
+    private final int body;
+    // constructor of the class the schemas were written as, once it is known
+    private volatile Constructor<?> constructor;
+
+    private SchemaSnapshot(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        schemaClassName = readUtf(buffer);
+        int count = buffer.getInt();
+        stringOffsets = new int[count];
+        strings = new String[count];
+        for (int i = 0; i < count; i++) {
+            stringOffsets[i] = buffer.position();
+            buffer.position(buffer.position() + 4 + buffer.getInt(buffer.position()));
+        }
+        int documentCount = buffer.getInt();
+        for (int i = 0; i < documentCount; i++) {
+            String uri = string(buffer.getInt());
+            documents.put(uri, buffer.getInt());
+        }
+        body = buffer.position();
+    }
+
+    /**
+     * Map a snapshot file, if it is current
+     * @param file snapshot written by {@link #write(File, String, Map)}
+     * @param version version of the schemas the application expects
+     * @return the snapshot, or null if the file does not exist, is of another format or of another version
+     * @throws IOException if the file cannot be read
+     */
+    public static SchemaSnapshot open(File file, String version) throws IOException {
+        if (!file.isFile()) {
+            return null;
+        }
+        ByteBuffer buffer;
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            // the mapping stays valid after the file is closed
+            buffer = in.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, in.length());
+        } finally {
+            in.close();
+        }
+        if (buffer.remaining() < 8 || buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+            return null;
+        }
+        if (!version.equals(readUtf(buffer))) {
+            return null;
+        }
+        return new SchemaSnapshot(buffer);
+    }
+
+    /**
+     * @return URIs of the documents in the snapshot
+     */
+    public List<URI> getDocuments() {
+        ArrayList<URI> uris = new ArrayList<URI>();
+        for (String uri : documents.keySet()) {
+            uris.add(URI.create(uri));
+        }
+        return uris;
+    }
+
+    /**
+     * Rebuild a document of the snapshot.  Every call returns new schema objects.
+     * @param uri URI of the document, without a fragment
+     * @param schemaClass class to rebuild the schemas as, which must be the class they were written as
+     * @return the root schema of the document, or null if the snapshot does not contain it or holds another class
+     */
+    public <ApplicationSchema extends SchemaDraft3<ApplicationSchema>> ApplicationSchema getDocument(URI uri, Class<ApplicationSchema> schemaClass)
+            throws IOException {
+        Integer offset = documents.get(uri.normalize().toString());
+        if (offset == null || !schemaClass.getName().equals(schemaClassName)) {
+            return null;
+        }
+        @SuppressWarnings("unchecked")
+        Constructor<ApplicationSchema> constructor = (Constructor<ApplicationSchema>) this.constructor;
+        if (constructor == null) {
+            try {
+                constructor = schemaClass.getDeclaredConstructor();
+                constructor.setAccessible(true);
+            } catch (NoSuchMethodException e) {
+                throw new SchemaException(schemaClass.getName() + " has no constructor without arguments", e);
+            }
+            this.constructor = constructor;
+        }
+        ByteBuffer in = buffer.duplicate();
+        in.position(body + offset);
+        return new Reader<ApplicationSchema>(in, constructor).schema();
+    }
+
+    private String string(int index) {
+        if (index < 0) {
+            return null;
+        }
+        String string = strings[index];
+        if (string == null) {
+            ByteBuffer in = buffer.duplicate();
+            in.position(stringOffsets[index]);
+            string = readUtf(in);
+            strings[index] = string;
+        }
+        return string;
+    }
+
+    private static String readUtf(ByteBuffer in) {
+        int length = in.getInt();
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, UTF8);
+    }
+
+    /**
+     * Rebuilds the schemas of one document
+     */
+    private final class Reader<ApplicationSchema extends SchemaDraft3<ApplicationSchema>> {
+        private final ByteBuffer in;
+        private final Constructor<ApplicationSchema> constructor;
+
+        Reader(ByteBuffer in, Constructor<ApplicationSchema> constructor) {
+            this.in = in;
+            this.constructor = constructor;
+        }
+
+        ApplicationSchema schema() throws IOException {
+            ApplicationSchema schema;
+            try {
+                schema = constructor.newInstance();
+            } catch (Exception e) {
+                throw new SchemaException("cannot create " + constructor.getDeclaringClass().getName(), e);
+            }
+            int present = in.getInt();
+            if ((present & TYPE) != 0) {
+                schema.setType(variant());
+            }
+            if ((present & PROPERTIES) != 0) {
+                int count = in.getInt();
+                LinkedHashMap<String, ApplicationSchema> properties = new LinkedHashMap<String, ApplicationSchema>(count * 2);
+                for (int i = 0; i < count; i++) {
+                    String name = string(in.getInt());
+                    properties.put(name, schema());
+                }
+                schema.setProperties(properties);
+            } else if ((present & NULL_PROPERTIES) != 0) {
+                schema.setProperties(null);
+            }
+            if ((present & PATTERN_PROPERTIES) != 0) {
+                schema.setPatternProperties(new HashSet<String>(strings()));
+            }
+            if ((present & NO_ADDITIONAL_PROPERTIES) != 0) {
+                schema.setAdditionalProperties(false);
+            }
+            if ((present & ITEMS) != 0) {
+                int count = in.getInt();
+                ArrayList<ApplicationSchema> items = new ArrayList<ApplicationSchema>(count);
+                for (int i = 0; i < count; i++) {
+                    items.add(schema());
+                }
+                schema.setItems(items);
+            } else if ((present & NULL_ITEMS) != 0) {
+                schema.setItems(null);
+            }
+            if ((present & ADDITIONAL_ITEMS) != 0) {
+                schema.setAdditionalItems(variant());
+            }
+            if ((present & REQUIRED) != 0) {
+                schema.setRequired(true);
+            }
+            if ((present & DEPENDENCIES) != 0) {
+                int count = in.getInt();
+                LinkedHashMap<String, TypeVariant> dependencies = new LinkedHashMap<String, TypeVariant>(count * 2);
+                for (int i = 0; i < count; i++) {
+                    String name = string(in.getInt());
+                    dependencies.put(name, variant());
+                }
+                schema.setDependencies(dependencies);
+            }
+            if ((present & MINIMUM) != 0) {
+                schema.setMinimum(in.getLong());
+            }
+            if ((present & MAXIMUM) != 0) {
+                schema.setMaximum(in.getLong());
+            }
+            schema.setExclusiveMinimum((present & EXCLUSIVE_MINIMUM) != 0);
+            schema.setExclusiveMaximum((present & EXCLUSIVE_MAXIMUM) != 0);
+            if ((present & MIN_ITEMS) != 0) {
+                schema.setMinItems(in.getInt());
+            }
+            if ((present & MAX_ITEMS) != 0) {
+                schema.setMaxItems(in.getInt());
+            }
+            schema.setUniqueItems((present & UNIQUE_ITEMS) != 0);
+            if ((present & PATTERN) != 0) {
+                schema.setPattern(string(in.getInt()));
+            }
+            if ((present & MIN_LENGTH) != 0) {
+                schema.setMinLength(in.getInt());
+            }
+            if ((present & MAX_LENGTH) != 0) {
+                schema.setMaxlength(in.getInt());
+            }
+            if ((present & ENUM) != 0) {
+                schema.setEnumerated(values());
+            }
+            if ((present & DEFAULT) != 0) {
+                schema.setDefaultValue(string(in.getInt()));
+            }
+            if ((present & TITLE) != 0) {
+                schema.setTitle(string(in.getInt()));
+            }
+            if ((present & DESCRIPTION) != 0) {
+                schema.setDescription(string(in.getInt()));
+            }
+            if ((present & FORMAT) != 0) {
+                schema.setFormat(string(in.getInt()));
+            }
+            if ((present & DIVISIBLE_BY) != 0) {
+                schema.setDivisibleBy(in.getInt());
+            }
+            if ((present & DISALLOW) != 0) {
+                schema.setDisallow(variant());
+            }
+            if ((present & EXTENDS) != 0) {
+                schema.setExtendsSchemas(strings());
+            }
+            if ((present & ID) != 0) {
+                schema.setId(URI.create(string(in.getInt())));
+            }
+            if ((present & REFERENCE) != 0) {
+                schema.setReference(URI.create(string(in.getInt())));
+            }
+            if ((present & SCHEMA_REFERENCE) != 0) {
+                schema.setSchemaReference(URI.create(string(in.getInt())));
+            }
+            if ((present & LINKS) != 0) {
+                int count = in.getInt();
+                ArrayList<HyperLink> links = new ArrayList<HyperLink>(count);
+                for (int i = 0; i < count; i++) {
+                    HyperLink link = new HyperLink();
+                    link.setHref(string(in.getInt()));
+                    int relation = in.getInt();
+                    link.setRel(relation < 0 ? null : RELATIONS[relation]);
+                    links.add(link);
+                }
+                ((HyperSchemaDraft3<?>) schema).setLinks(links);
+            }
+            return schema;
+        }
+
+        private TypeVariant variant() throws IOException {
+            int tag = in.get();
+            switch (tag) {
+            case SIMPLE:
+                return TypeDeserializer.simpleType(string(in.getInt()));
+            case FALSE:
+                return TypeDeserializer.FALSE;
+            case SCHEMA:
+                return new TypeDeserializer.SchemaType<ApplicationSchema>(schema());
+            case UNION:
+                int count = in.getInt();
+                ArrayList<TypeVariant> types = new ArrayList<TypeVariant>(count);
+                for (int i = 0; i < count; i++) {
+                    types.add(variant());
+                }
+                return new TypeDeserializer.UnionType<ApplicationSchema>(types);
+            default:
+                throw new SchemaException("snapshot is damaged, unknown type tag " + tag);
+            }
+        }
+
+        private ArrayList<String> strings() {
+            int count = in.getInt();
+            ArrayList<String> list = new ArrayList<String>(count);
+            for (int i = 0; i < count; i++) {
+                list.add(string(in.getInt()));
+            }
+            return list;
+        }
+
+        private ArrayList<JsonNode> values() throws IOException {
+            int count = in.getInt();
+            ArrayList<JsonNode> list = new ArrayList<JsonNode>(count);
+            for (int i = 0; i < count; i++) {
+                list.add(value());
+            }
+            return list;
+        }
+
+        private JsonNode value() throws IOException {
+            int tag = in.get();
+            switch (tag) {
+            case NULL_VALUE:
+                return NullNode.getInstance();
+            case TRUE_VALUE:
+                return BooleanNode.TRUE;
+            case FALSE_VALUE:
+                return BooleanNode.FALSE;
+            case INT_VALUE:
+                return IntNode.valueOf(in.getInt());
+            case LONG_VALUE:
+                return LongNode.valueOf(in.getLong());
+            case BIG_INTEGER_VALUE:
+                return BigIntegerNode.valueOf(new BigInteger(string(in.getInt())));
+            case DOUBLE_VALUE:
+                return DoubleNode.valueOf(in.getDouble());
+            case DECIMAL_VALUE:
+                return DecimalNode.valueOf(new BigDecimal(string(in.getInt())));
+            case STRING_VALUE:
+                return TextNode.valueOf(string(in.getInt()));
+            case ARRAY_VALUE: {
+                int count = in.getInt();
+                ArrayNode array = JsonNodeFactory.instance.arrayNode();
+                for (int i = 0; i < count; i++) {
+                    array.add(value());
+                }
+                return array;
+            }
+            case OBJECT_VALUE: {
+                int count = in.getInt();
+                ObjectNode object = JsonNodeFactory.instance.objectNode();
+                for (int i = 0; i < count; i++) {
+                    String name = string(in.getInt());
+                    object.put(name, value());
+                }
+                return object;
+            }
+            default:
+                throw new SchemaException("snapshot is damaged, unknown value tag " + tag);
+            }
+        }
+    }
+
+    /**
+     * Write a snapshot of parsed documents
+     * @param file file to write, which is replaced
+     * @param version version of the schemas, which must be given again to open the snapshot
+     * @param documents root schemas by the URIs of their documents, all of the same class
+     * @throws IllegalArgumentException if the schemas are of a class with attributes that a snapshot cannot hold
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(File file, String version, Map<URI, ? extends SchemaDraft3<?>> documents) throws IOException {
+        Writer writer = new Writer();
+        ArrayList<Integer> uris = new ArrayList<Integer>();
+        ArrayList<Integer> offsets = new ArrayList<Integer>();
+        Class<?> schemaClass = null;
+        for (Map.Entry<URI, ? extends SchemaDraft3<?>> entry : documents.entrySet()) {
+            Class<?> documentClass = entry.getValue().getClass();
+            if (schemaClass == null) {
+                if (documentClass != JsonSchema.class && documentClass != HyperSchemaDraft3.class && documentClass != SchemaDraft3.class) {
+                    throw new IllegalArgumentException(documentClass.getName() + " may have attributes a snapshot does not hold");
+                }
+                schemaClass = documentClass;
+            } else if (documentClass != schemaClass) {
+                throw new IllegalArgumentException("documents of " + schemaClass.getName() + " and " + documentClass.getName() + " cannot be mixed");
+            }
+            uris.add(writer.index(entry.getKey().normalize().toString()));
+            offsets.add(writer.body.size());
+            writer.schema(entry.getValue());
+        }
+
+        OutputStream stream = new FileOutputStream(file);
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            writeUtf(out, version);
+            writeUtf(out, schemaClass == null ? JsonSchema.class.getName() : schemaClass.getName());
+            out.writeInt(writer.strings.size());
+            for (String string : writer.strings) {
+                writeUtf(out, string);
+            }
+            out.writeInt(uris.size());
+            for (int i = 0; i < uris.size(); i++) {
+                out.writeInt(uris.get(i));
+                out.writeInt(offsets.get(i));
+            }
+            writer.bytes.writeTo(out);
+            out.flush();
+        } finally {
+            stream.close();
+        }
+    }
+
+    /**
+     * Write a snapshot of the JSON documents in a directory, as a step of a build.
+     * Arguments: snapshot file, version, base URI of the documents, directory holding them
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 4) {
+            System.err.println("usage: SchemaSnapshot <snapshot file> <version> <base URI> <directory>");
+            System.exit(2);
+        }
+        URI base = URI.create(args[2]);
+        File directory = new File(args[3]);
+        ObjectMapper mapper = SchemaModule.createObjectMapper(JsonSchema.class);
+        LinkedHashMap<URI, JsonSchema> documents = new LinkedHashMap<URI, JsonSchema>();
+        addDocuments(mapper, base, directory, "", documents);
+        write(new File(args[0]), args[1], documents);
+    }
+
+    private static void addDocuments(ObjectMapper mapper, URI base, File directory, String path, Map<URI, JsonSchema> documents)
+            throws IOException {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            throw new IOException("cannot list " + directory);
+        }
+        Arrays.sort(files);
+        for (File file : files) {
+            if (file.isDirectory()) {
+                addDocuments(mapper, base, file, path + file.getName() + "/", documents);
+            } else if (file.getName().endsWith(".json")) {
+                URI uri;
+                try {
+                    uri = base.resolve(new URI(null, null, path + file.getName(), null));
+                } catch (URISyntaxException e) {
+                    throw new IOException("file name cannot be part of a URI: " + file, e);
+                }
+                documents.put(uri, mapper.readValue(file, JsonSchema.class));
+            }
+        }
+    }
+
+    private static void writeUtf(DataOutputStream out, String string) throws IOException {
+        byte[] bytes = string.getBytes(UTF8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Encodes schemas, collecting their strings in a table
+     */
+    private static final class Writer {
+        final ArrayList<String> strings = new ArrayList<String>();
+        final HashMap<String, Integer> indices = new HashMap<String, Integer>();
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream body = new DataOutputStream(bytes);
+
+        int index(String string) {
+            if (string == null) {
+                return -1;
+            }
+            Integer index = indices.get(string);
+            if (index == null) {
+                index = strings.size();
+                strings.add(string);
+                indices.put(string, index);
+            }
+            return index;
+        }
+
+        void string(String string) throws IOException {
+            body.writeInt(index(string));
+        }
+
+        void strings(List<String> list) throws IOException {
+            body.writeInt(list.size());
+            for (String string : list) {
+                string(string);
+            }
+        }
+
+        void values(List<JsonNode> list) throws IOException {
+            body.writeInt(list.size());
+            for (JsonNode value : list) {
+                value(value);
+            }
+        }
+
+        void value(JsonNode value) throws IOException {
+            if (value.isNull()) {
+                body.writeByte(NULL_VALUE);
+            } else if (value.isBoolean()) {
+                body.writeByte(value.getBooleanValue() ? TRUE_VALUE : FALSE_VALUE);
+            } else if (value.isInt()) {
+                body.writeByte(INT_VALUE);
+                body.writeInt(value.getIntValue());
+            } else if (value.isLong()) {
+                body.writeByte(LONG_VALUE);
+                body.writeLong(value.getLongValue());
+            } else if (value.isBigInteger()) {
+                body.writeByte(BIG_INTEGER_VALUE);
+                string(value.getBigIntegerValue().toString());
+            } else if (value.isDouble()) {
+                body.writeByte(DOUBLE_VALUE);
+                body.writeDouble(value.getDoubleValue());
+            } else if (value.isBigDecimal()) {
+                body.writeByte(DECIMAL_VALUE);
+                string(value.getDecimalValue().toString());
+            } else if (value.isTextual()) {
+                body.writeByte(STRING_VALUE);
+                string(value.getTextValue());
+            } else if (value.isArray()) {
+                body.writeByte(ARRAY_VALUE);
+                body.writeInt(value.size());
+                for (JsonNode element : value) {
+                    value(element);
+                }
+            } else if (value.isObject()) {
+                body.writeByte(OBJECT_VALUE);
+                body.writeInt(value.size());
+                Iterator<Map.Entry<String, JsonNode>> fields = value.getFields();
+                while (fields.hasNext()) {
+                    Map.Entry<String, JsonNode> field = fields.next();
+                    string(field.getKey());
+                    value(field.getValue());
+                }
+            } else {
+                throw new IllegalArgumentException("a snapshot cannot hold the value " + value);
+            }
+        }
+
+        void schema(SchemaDraft3<?> schema) throws IOException {
+            List<HyperLink> links = schema instanceof HyperSchemaDraft3<?> ? ((HyperSchemaDraft3<?>) schema).getLinks() : null;
+            int present = 0;
+            present |= schema.getType() != null ? TYPE : 0;
+            present |= schema.getProperties() != null && !schema.getProperties().isEmpty() ? PROPERTIES : 0;
+            present |= schema.getProperties() == null ? NULL_PROPERTIES : 0;
+            present |= schema.getPatternProperties() != null ? PATTERN_PROPERTIES : 0;
+            present |= !schema.isAdditionalProperties() ? NO_ADDITIONAL_PROPERTIES : 0;
+            present |= schema.getItems() != null && !schema.getItems().isEmpty() ? ITEMS : 0;
+            present |= schema.getItems() == null ? NULL_ITEMS : 0;
+            present |= schema.getAdditionalItems() != null ? ADDITIONAL_ITEMS : 0;
+            present |= schema.isRequired() ? REQUIRED : 0;
+            present |= schema.getDependencies() != null ? DEPENDENCIES : 0;
+            present |= schema.getMinimum() != Long.MIN_VALUE ? MINIMUM : 0;
+            present |= schema.getMaximum() != Long.MAX_VALUE ? MAXIMUM : 0;
+            present |= schema.isExclusiveMinimum() ? EXCLUSIVE_MINIMUM : 0;
+            present |= schema.isExclusiveMaximum() ? EXCLUSIVE_MAXIMUM : 0;
+            present |= schema.getMinItems() != 0 ? MIN_ITEMS : 0;
+            present |= schema.getMaxItems() != Integer.MAX_VALUE ? MAX_ITEMS : 0;
+            present |= schema.isUniqueItems() ? UNIQUE_ITEMS : 0;
+            present |= schema.getPattern() != null ? PATTERN : 0;
+            present |= schema.getMinLength() != 0 ? MIN_LENGTH : 0;
+            present |= schema.getMaxlength() != Integer.MAX_VALUE ? MAX_LENGTH : 0;
+            present |= schema.getEnumerated() != null ? ENUM : 0;
+            present |= schema.getDefaultValue() != null ? DEFAULT : 0;
+            present |= schema.getTitle() != null ? TITLE : 0;
+            present |= schema.getDescription() != null ? DESCRIPTION : 0;
+            present |= schema.getFormat() != null ? FORMAT : 0;
+            present |= schema.getDivisibleBy() != 1 ? DIVISIBLE_BY : 0;
+            present |= schema.getDisallow() != null ? DISALLOW : 0;
+            present |= schema.getExtendsSchemas() != null ? EXTENDS : 0;
+            present |= schema.getId() != null ? ID : 0;
+            present |= schema.getReference() != null ? REFERENCE : 0;
+            present |= schema.getSchemaReference() != null ? SCHEMA_REFERENCE : 0;
+            present |= links != null && !links.isEmpty() ? LINKS : 0;
+            body.writeInt(present);
+
+            if ((present & TYPE) != 0) {
+                variant(schema.getType());
+            }
+            if ((present & PROPERTIES) != 0) {
+                body.writeInt(schema.getProperties().size());
+                for (Map.Entry<String, ? extends SchemaDraft3<?>> entry : schema.getProperties().entrySet()) {
+                    string(entry.getKey());
+                    schema(entry.getValue());
+                }
+            }
+            if ((present & PATTERN_PROPERTIES) != 0) {
+                strings(new ArrayList<String>(schema.getPatternProperties()));
+            }
+            if ((present & ITEMS) != 0) {
+                body.writeInt(schema.getItems().size());
+                for (SchemaDraft3<?> item : schema.getItems()) {
+                    schema(item);
+                }
+            }
+            if ((present & ADDITIONAL_ITEMS) != 0) {
+                variant((TypeVariant) schema.getAdditionalItems());
+            }
+            if ((present & DEPENDENCIES) != 0) {
+                body.writeInt(schema.getDependencies().size());
+                for (Map.Entry<String, TypeVariant> entry : schema.getDependencies().entrySet()) {
+                    string(entry.getKey());
+                    variant(entry.getValue());
+                }
+            }
+            if ((present & MINIMUM) != 0) {
+                body.writeLong(schema.getMinimum());
+            }
+            if ((present & MAXIMUM) != 0) {
+                body.writeLong(schema.getMaximum());
+            }
+            if ((present & MIN_ITEMS) != 0) {
+                body.writeInt(schema.getMinItems());
+            }
+            if ((present & MAX_ITEMS) != 0) {
+                body.writeInt(schema.getMaxItems());
+            }
+            if ((present & PATTERN) != 0) {
+                string(schema.getPattern());
+            }
+            if ((present & MIN_LENGTH) != 0) {
+                body.writeInt(schema.getMinLength());
+            }
+            if ((present & MAX_LENGTH) != 0) {
+                body.writeInt(schema.getMaxlength());
+            }
+            if ((present & ENUM) != 0) {
+                values(schema.getEnumerated());
+            }
+            if ((present & DEFAULT) != 0) {
+                string(schema.getDefaultValue());
+            }
+            if ((present & TITLE) != 0) {
+                string(schema.getTitle());
+            }
+            if ((present & DESCRIPTION) != 0) {
+                string(schema.getDescription());
+            }
+            if ((present & FORMAT) != 0) {
+                string(schema.getFormat());
+            }
+            if ((present & DIVISIBLE_BY) != 0) {
+                body.writeInt(schema.getDivisibleBy());
+            }
+            if ((present & DISALLOW) != 0) {
+                variant(schema.getDisallow());
+            }
+            if ((present & EXTENDS) != 0) {
+                strings(schema.getExtendsSchemas());
+            }
+            if ((present & ID) != 0) {
+                string(schema.getId().toString());
+            }
+            if ((present & REFERENCE) != 0) {
+                string(schema.getReference().toString());
+            }
+            if ((present & SCHEMA_REFERENCE) != 0) {
+                string(schema.getSchemaReference().toString());
+            }
+            if ((present & LINKS) != 0) {
+                body.writeInt(links.size());
+                for (HyperLink link : links) {
+                    string(link.getHref());
+                    body.writeInt(link.getRel() == null ? -1 : link.getRel().ordinal());
+                }
+            }
+        }
+
+        void variant(TypeVariant variant) throws IOException {
+            if (variant instanceof TypeDeserializer.SimpleType) {
+                body.writeByte(SIMPLE);
+                string(((TypeDeserializer.SimpleType) variant).getName());
+            } else if (variant instanceof TypeDeserializer.FalseType) {
+                body.writeByte(FALSE);
+            } else if (variant instanceof TypeDeserializer.SchemaType<?>) {
+                body.writeByte(SCHEMA);
+                schema((SchemaDraft3<?>) ((TypeDeserializer.SchemaType<?>) variant).getSchema());
+            } else if (variant instanceof TypeDeserializer.UnionType<?>) {
+                List<TypeVariant> types = ((TypeDeserializer.UnionType<?>) variant).getTypes();
+                body.writeByte(UNION);
+                body.writeInt(types.size());
+                for (TypeVariant type : types) {
+                    variant(type);
+                }
+            } else {
+                throw new IllegalArgumentException("unknown form of type: " + variant);
+            }
+        }
+    }
+}
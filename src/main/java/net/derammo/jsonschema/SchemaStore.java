@@ -0,0 +1,290 @@
+/*
+ * Copyright 2011 Ammo Goettsch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package net.derammo.jsonschema;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Validators for the schemas in a local directory, which are kept up to date while the documents
+ * change.  The directory and its subdirectories are watched, and when a document changes only that
+ * document and the validators that use it, through '$ref', 'extends' or an 'id', are read and
+ * compiled again.  Other validators are kept, together with the code the JIT compiled for them.
+ *
+ * The validators affected by a change are compiled before any of them is replaced, and are then
+ * replaced all at once, so validations never see a mix of old and new schemas.  Validations that
+ * are running at the time finish with the validators they started with.  A document that cannot be
+ * read or compiled, which happens while it is being saved, leaves the validators as they were.
+ *
+ * <pre>
+ * SchemaStore&lt;JsonSchema&gt; store = new SchemaStore&lt;JsonSchema&gt;(JsonSchema.class, URI.create("http://example.com/schemas/"), directory);
+ * store.start();
+ * SchemaValidator validator = store.getValidator(URI.create("http://example.com/schemas/order.json"));
+ * </pre>
+ *
+ * @param <ApplicationSchema> class the documents are bound to, such as JsonSchema
+ */
+public class SchemaStore<ApplicationSchema extends SchemaDraft3<ApplicationSchema>> implements Closeable {
+    /**
+     * Receives the outcome of updates, on the thread watching the directory
+     */
+    public interface Listener {
+        /**
+         * @param schemas URIs of the validators that have been replaced
+         */
+        void updated(Set<URI> schemas);
+
+        /**
+         * @param schema URI of a validator that was not replaced, and is therefore out of date
+         * @param cause reason why the new validator could not be compiled
+         */
+        void failed(URI schema, IOException cause);
+    }
+
+    private static final long SETTLE_MILLIS = 100;
+
+    private final URI base;
+    private final Path directory;
+    private final SchemaRegistry<ApplicationSchema> registry;
+    private final WatchService watcher;
+    private final Map<WatchKey, Path> directories = new HashMap<WatchKey, Path>();
+    private volatile Listener listener;
+    private Thread thread;
+
+    // validators handed out so far, replaced as a whole on every update
+    private volatile Map<URI, SchemaValidator> validators = Collections.emptyMap();
+    // validators that could not be compiled again, which are retried on every update
+    private final Set<URI> stale = new HashSet<URI>();
+
+    /**
+     * @param schemaClass class the documents are bound to, such as JsonSchema
+     * @param base URI prefix under which the documents are published, such as http://example.com/schemas/
+     * @param directory directory holding the documents, at the same relative paths as under the base URI
+     * @throws IOException if the directory cannot be watched
+     */
+    public SchemaStore(Class<ApplicationSchema> schemaClass, URI base, File directory) throws IOException {
+        this.base = base.normalize();
+        this.directory = directory.toPath().toAbsolutePath();
+        this.registry = new SchemaRegistry<ApplicationSchema>(schemaClass, new FileSchemaLoader(base, directory));
+        this.watcher = FileSystems.getDefault().newWatchService();
+        watch(this.directory);
+    }
+
+    /**
+     * @return the URI prefix under which the documents are published
+     */
+    URI getBase() {
+        return base;
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Start the daemon thread that applies changes to the directory
+     */
+    public synchronized void start() {
+        if (thread != null) {
+            throw new IllegalStateException("store has already been started");
+        }
+        thread = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    while (true) {
+                        WatchKey key = watcher.take();
+                        // documents are often written in several steps, let them settle first
+                        Thread.sleep(SETTLE_MILLIS);
+                        update(key);
+                    }
+                } catch (InterruptedException e) {
+                    // closed
+                } catch (ClosedWatchServiceException e) {
+                    // closed
+                }
+            }
+        }, "SchemaStore " + directory);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stop watching the directory.  The validators remain usable.
+     */
+    public void close() throws IOException {
+        watcher.close();
+    }
+
+    /**
+     * @param uri URI of a document below the base URI, optionally with a JSON pointer fragment, or the id of a schema
+     * @return the current validator for the schema
+     * @throws SchemaException if there is no such schema, a reference cannot be resolved, or references form a cycle
+     * @throws IOException if a document cannot be read
+     */
+    public SchemaValidator getValidator(URI uri) throws IOException {
+        URI key = uri.normalize();
+        SchemaValidator validator = validators.get(key);
+        if (validator == null) {
+            synchronized (this) {
+                validator = validators.get(key);
+                if (validator == null) {
+                    validator = registry.getValidator(key);
+                    HashMap<URI, SchemaValidator> updated = new HashMap<URI, SchemaValidator>(validators);
+                    updated.put(key, validator);
+                    validators = Collections.unmodifiableMap(updated);
+                }
+            }
+        }
+        return validator;
+    }
+
+    /**
+     * Watch a directory and those below it
+     * @return URIs of the files found in them
+     */
+    private Set<URI> watch(Path root) throws IOException {
+        final HashSet<URI> files = new HashSet<URI>();
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path path, BasicFileAttributes attributes) throws IOException {
+                WatchKey key = path.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY,
+                        StandardWatchEventKinds.ENTRY_DELETE);
+                directories.put(key, path);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                files.add(toUri(file));
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return files;
+    }
+
+    /**
+     * Apply the events of one watched directory, and of any others that are already pending
+     */
+    private void update(WatchKey key) {
+        HashSet<URI> changed = new HashSet<URI>();
+        boolean overflow = false;
+        while (key != null) {
+            Path path = directories.get(key);
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                    overflow = true;
+                } else if (path != null) {
+                    Path file = path.resolve((Path) event.context());
+                    if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(file)) {
+                        try {
+                            // files may have been added before the directory was watched, as when it is moved in
+                            changed.addAll(watch(file));
+                        } catch (IOException e) {
+                            failed(toUri(file), e);
+                        }
+                    } else {
+                        changed.add(toUri(file));
+                    }
+                }
+            }
+            if (!key.reset()) {
+                directories.remove(key);
+            }
+            key = watcher.poll();
+        }
+        if (overflow) {
+            // events were lost, so any document may have changed
+            synchronized (this) {
+                registry.clear();
+                recompile(validators.keySet());
+            }
+        } else if (!changed.isEmpty()) {
+            synchronized (this) {
+                HashSet<URI> affected = new HashSet<URI>();
+                for (URI document : changed) {
+                    affected.addAll(registry.invalidate(document));
+                }
+                affected.retainAll(validators.keySet());
+                affected.addAll(stale);
+                recompile(affected);
+            }
+        }
+    }
+
+    /**
+     * Compile the validators again, and replace them in one step.  Called while synchronized.
+     */
+    private void recompile(Set<URI> uris) {
+        HashMap<URI, SchemaValidator> updated = new HashMap<URI, SchemaValidator>(validators);
+        HashSet<URI> replaced = new HashSet<URI>();
+        for (URI uri : uris) {
+            try {
+                updated.put(uri, registry.getValidator(uri));
+                replaced.add(uri);
+                stale.remove(uri);
+            } catch (IOException e) {
+                stale.add(uri);
+                failed(uri, e);
+            }
+        }
+        validators = Collections.unmodifiableMap(updated);
+        Listener current = listener;
+        if (current != null && !replaced.isEmpty()) {
+            current.updated(Collections.unmodifiableSet(replaced));
+        }
+    }
+
+    private void failed(URI uri, IOException cause) {
+        Listener current = listener;
+        if (current != null) {
+            current.failed(uri, cause);
+        }
+    }
+
+    private URI toUri(Path file) {
+        StringBuilder relative = new StringBuilder();
+        for (Path name : directory.relativize(file)) {
+            if (relative.length() > 0) {
+                relative.append('/');
+            }
+            relative.append(name.toString());
+        }
+        try {
+            return base.resolve(new URI(null, null, relative.toString(), null)).normalize();
+        } catch (URISyntaxException e) {
+            throw new IllegalArgumentException("file name cannot be part of a URI: " + file, e);
+        }
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2011 Ammo Goettsch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package net.derammo.jsonschema;
+
+import java.io.IOException;
+
+import org.codehaus.jackson.JsonGenerator;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+
+/**
+ * Copies JSON values from a parser to a generator, changing them as the schema directs:
+ * <ul>
+ * <li>the 'default' of each of the 'properties' that is absent is added at the end of the object</li>
+ * <li>properties that are not declared are dropped from objects whose 'additionalProperties' is false</li>
+ * <li>values of a 'format' with a canonical form, such as date-time, are written in that form, if the
+ * 'type' of the schema allows it</li>
+ * </ul>
+ * Tokens are copied as they are read, so nothing is buffered but which properties of each open object
+ * have been seen.  Values are not validated, and values that cannot be converted are copied unchanged.
+ *
+ * Defaults are read as text by {@link SchemaDraft3#getDefaultValue()}, so a default is written as a number,
+ * boolean or null only if the schema of the property does not allow strings.  Only 'properties' and 'items'
+ * are followed into objects and arrays; values matched by 'patternProperties', unions and 'extends' are copied.
+ *
+ * Instances are immutable and may be shared between threads.
+ *
+ * <pre>
+ * SchemaTransformer transformer = SchemaTransformer.create(schema);
+ * transformer.transform(parser, generator);
+ * </pre>
+ */
+public final class SchemaTransformer {
+    private final CompiledSchema root;
+
+    SchemaTransformer(CompiledSchema root) {
+        this.root = root;
+    }
+
+    /**
+     * Compile a schema and create a transformer for it.  Compiling takes time, so transformers should be kept.
+     * @param schema schema of the values, with any references already linked
+     */
+    public static SchemaTransformer create(ReadOnlySchema schema) {
+        return new SchemaCompiler().compile(schema).transformer();
+    }
+
+    /**
+     * Transform the next value of a token stream.  Afterwards the parser is positioned on the last token of
+     * the value, so a stream of several values can be transformed one at a time.
+     *
+     * @param parser source of the value, either before or on its first token
+     * @param generator positioned where a value may be written
+     * @throws IOException if the source cannot be read or is not well-formed JSON, or the output cannot be written
+     */
+    public void transform(JsonParser parser, JsonGenerator generator) throws IOException {
+        if (parser.getCurrentToken() == null && parser.nextToken() == null) {
+            return;
+        }
+        value(parser, generator, root);
+    }
+
+    /**
+     * @param schema schema of the value at the current token, or null if it is not constrained
+     */
+    private static void value(JsonParser parser, JsonGenerator generator, CompiledSchema schema) throws IOException {
+        if (schema == null) {
+            generator.copyCurrentStructure(parser);
+            return;
+        }
+        switch (parser.getCurrentToken()) {
+        case START_OBJECT:
+            object(parser, generator, schema);
+            break;
+        case START_ARRAY:
+            generator.writeStartArray();
+            for (int index = 0; parser.nextToken() != JsonToken.END_ARRAY; index++) {
+                value(parser, generator, schema.itemSchema(index));
+            }
+            generator.writeEndArray();
+            break;
+        default:
+            if (schema.format == null || !schema.format.fits(schema) || !schema.format.write(parser, generator)) {
+                generator.copyCurrentEvent(parser);
+            }
+        }
+    }
+
+    private static void object(JsonParser parser, JsonGenerator generator, CompiledSchema schema) throws IOException {
+        String[] names = schema.propertyNames;
+        long[] seen = schema.propertyIndex.newSet();
+        // property expected next if the fields follow the order of the schema
+        int expected = 0;
+        generator.writeStartObject();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            int index = schema.propertyIndex.indexOf(name, expected);
+            parser.nextToken();
+            if (index >= 0) {
+                PropertyIndex.add(seen, index);
+                expected = index + 1;
+                generator.writeFieldName(name);
+                value(parser, generator, schema.propertySchemas[index]);
+            } else if (schema.additionalProperties || schema.isDeclaredProperty(name)) {
+                generator.writeFieldName(name);
+                generator.copyCurrentStructure(parser);
+            } else {
+                parser.skipChildren();
+            }
+        }
+        for (int i = 0; i < names.length; i++) {
+            if (!PropertyIndex.contains(seen, i) && schema.propertySchemas[i].defaultValue != null) {
+                generator.writeFieldName(names[i]);
+                schema.propertySchemas[i].defaultValue.serialize(generator, null);
+            }
+        }
+        generator.writeEndObject();
+    }
+}
@@ -0,0 +1,519 @@
+/*
+ * Copyright 2011 Ammo Goettsch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package net.derammo.jsonschema;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.JsonParseException;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.type.JavaType;
+
+/**
+ * Validates JSON instances against a schema compiled by {@link SchemaCompiler}.
+ *
+ * Instances of this class are immutable and may be shared between threads.
+ *
+ * Errors can be collected in three ways.  The isValid methods stop at the first violation without building
+ * any errors, paths or messages.  Validating with a maximum number of errors stops once that many have been
+ * found, and validating without one reports every error.  In every case the path of an error is only
+ * rendered as a string when it is asked for.
+ *
+ * A validator compiled with a {@link PatternCache#linear(int, int)} cache that has a step budget throws
+ * {@link PatternBudgetException} from any of these methods when a pattern takes too long to match.
+ */
+public final class SchemaValidator {
+    private final CompiledSchema root;
+    // generated class that replaces the compiled tree when validating trees, if any
+    private final GeneratedValidator generated;
+    // receives the outcome of each validation, or null if this validator is not instrumented
+    private final ValidationListener listener;
+    private final String name;
+    // length of the longest chain of '$ref' that was followed to compile the schema, 0 if none
+    private final int referenceDepth;
+
+    SchemaValidator(CompiledSchema root, int referenceDepth) {
+        this(root, referenceDepth, null, null, null);
+    }
+
+    private SchemaValidator(CompiledSchema root, int referenceDepth, GeneratedValidator generated,
+            ValidationListener listener, String name) {
+        this.root = root;
+        this.referenceDepth = referenceDepth;
+        this.generated = generated;
+        this.listener = listener;
+        this.name = name;
+    }
+
+    /**
+     * Report the time and outcome of each validation, and each error, to a listener.  Validators that
+     * are not instrumented only pay for a null check.
+     *
+     * @param schema name reported to the listener, such as the URI of the schema
+     * @param listener receives the outcome of each validation done by the returned validator
+     * @return a validator that validates as this one does, and reports to the listener
+     */
+    public SchemaValidator instrument(String schema, ValidationListener listener) {
+        listener.instrumented(schema, referenceDepth);
+        return new SchemaValidator(root, referenceDepth, generated, listener, schema);
+    }
+
+    /**
+     * Generate and compile a Java class with the checks of this schema written out as code, which
+     * validates trees faster than the compiled schema once the class has been compiled.  Classes are
+     * cached, so equal schemas share a class.  This needs the system Java compiler, and takes some
+     * time, so it is best done once for schemas that are used often.  Token streams are still
+     * validated by the compiled schema.  Errors are the same, and are reported in the same order.
+     *
+     * @return a validator using the generated class, or this validator if no Java compiler is available
+     */
+    public SchemaValidator generate() {
+        if (generated != null || !ValidatorGenerator.isAvailable()) {
+            return this;
+        }
+        return new SchemaValidator(root, referenceDepth, ValidatorGenerator.generate(root), listener, name);
+    }
+
+    /**
+     * @param instance JSON value to check
+     * @return all violations found, or an empty list if the instance is valid
+     */
+    public List<ValidationError> validate(JsonNode instance) {
+        return validate(instance, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Validate an instance, stopping once some errors have been found.  Messages are not built for
+     * violations past the limit.
+     *
+     * @param instance JSON value to check
+     * @param maxErrors number of errors after which validation stops, at least 1
+     * @return the first violations found, or an empty list if the instance is valid
+     */
+    public List<ValidationError> validate(JsonNode instance, int maxErrors) {
+        if (listener == null) {
+            return errors(instance, maxErrors);
+        }
+        long start = System.nanoTime();
+        List<ValidationError> errors = errors(instance, maxErrors);
+        report(start, errors);
+        return errors;
+    }
+
+    /**
+     * Check an instance without building any error reports, stopping at the first violation.
+     * @param instance JSON value to check
+     * @return true if the instance is valid
+     */
+    public boolean isValid(JsonNode instance) {
+        if (listener == null) {
+            return probe(instance);
+        }
+        long start = System.nanoTime();
+        ValidationContext context = ValidationContext.acquire();
+        boolean valid;
+        List<ValidationError> first;
+        try {
+            context.beginFirstProbe();
+            valid = check(instance, context);
+        } finally {
+            first = context.release();
+        }
+        reportFirst(start, valid, first);
+        return valid;
+    }
+
+    /**
+     * Validate the next value of a token stream as it is read, without building the document in memory.
+     * Afterwards the last token of the value is cleared from the parser, and can be read with
+     * getLastClearedToken(), so that the next call starts with the next value.  A stream of several values
+     * is validated with one call per value.
+     *
+     * Memory does not grow with the size of the value, except below schemas with union or disallowed
+     * schemas, 'extends', 'dependencies', 'uniqueItems' or enumerated objects and arrays.  Each value
+     * matched by such a schema is buffered and validated as a tree, so such a schema at the root holds
+     * the whole document.
+     *
+     * @param parser source of the instance, either before or on the first token of the value
+     * @return all violations found, with their locations in the source, or an empty list if the value is valid
+     * @throws IOException if the source cannot be read, is not well-formed JSON or has no value left
+     */
+    public List<ValidationError> validate(JsonParser parser) throws IOException {
+        return validate(parser, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Validate the next value of a token stream, stopping once some errors have been found.  In that case
+     * the parser is left inside the value.
+     *
+     * @param parser source of the instance, either before or on the first token of the value
+     * @param maxErrors number of errors after which reading stops, at least 1
+     * @return the first violations found, with their locations in the source, or an empty list if the value is valid
+     * @throws IOException if the source cannot be read, is not well-formed JSON or has no value left
+     * @see #validate(JsonParser)
+     */
+    public List<ValidationError> validate(JsonParser parser, int maxErrors) throws IOException {
+        if (listener == null) {
+            return errors(parser, maxErrors);
+        }
+        long start = System.nanoTime();
+        List<ValidationError> errors = errors(parser, maxErrors);
+        report(start, errors);
+        return errors;
+    }
+
+    /**
+     * Check the next value of a token stream without building error reports.  Reading stops at the first
+     * violation, in which case the parser is left inside the value.
+     *
+     * @param parser source of the instance, either before or on the first token of the value
+     * @return true if the value is valid
+     * @throws IOException if the source cannot be read, is not well-formed JSON or has no value left
+     * @see #validate(JsonParser)
+     */
+    public boolean isValid(JsonParser parser) throws IOException {
+        if (listener == null) {
+            return probe(parser);
+        }
+        long start = System.nanoTime();
+        ValidationContext context = ValidationContext.acquire();
+        boolean valid;
+        List<ValidationError> first;
+        try {
+            context.beginFirstProbe();
+            context.setParser(parser);
+            StreamingValidator streaming = new StreamingValidator(root, context);
+            stream(parser, streaming, context);
+            valid = streaming.isValid();
+        } finally {
+            first = context.release();
+        }
+        reportFirst(start, valid, first);
+        return valid;
+    }
+
+    /**
+     * Check an instance whose errors are found with {@link #explain(JsonNode)} if it is rejected.  The
+     * validation is counted, but the violations are left for explain to report.
+     * @return true if the instance is valid
+     */
+    boolean screen(JsonNode instance) {
+        if (listener == null) {
+            return probe(instance);
+        }
+        long start = System.nanoTime();
+        boolean valid = probe(instance);
+        listener.validated(name, valid, System.nanoTime() - start);
+        return valid;
+    }
+
+    /**
+     * @see #screen(JsonNode)
+     */
+    boolean screen(JsonParser parser) throws IOException {
+        if (listener == null) {
+            return probe(parser);
+        }
+        long start = System.nanoTime();
+        boolean valid = probe(parser);
+        listener.validated(name, valid, System.nanoTime() - start);
+        return valid;
+    }
+
+    /**
+     * Validate an instance that {@link #screen(JsonNode)} has already rejected, to find its errors.  The
+     * errors are reported to the listener, but the validation is not counted again.
+     */
+    List<ValidationError> explain(JsonNode instance) {
+        List<ValidationError> errors = errors(instance, Integer.MAX_VALUE);
+        reportErrors(errors);
+        return errors;
+    }
+
+    /**
+     * @see #explain(JsonNode)
+     */
+    List<ValidationError> explain(JsonParser parser) throws IOException {
+        List<ValidationError> errors = errors(parser, Integer.MAX_VALUE);
+        reportErrors(errors);
+        return errors;
+    }
+
+    /**
+     * @param mapper binds the values, with its configuration and modules
+     * @param type class of the bound values
+     * @return a reader that binds values with the mapper while validating them against this schema, in one pass
+     */
+    public <T> SchemaBinder<T> binder(ObjectMapper mapper, Class<T> type) {
+        return new SchemaBinder<T>(this, mapper, mapper.constructType(type), false);
+    }
+
+    /**
+     * @return a transformer that fills in defaults, drops undeclared properties and normalizes formats as this
+     *         schema directs
+     */
+    public SchemaTransformer transformer() {
+        return new SchemaTransformer(root);
+    }
+
+    /**
+     * Bind the next value of a token stream while validating it.
+     * @see SchemaBinder#read(JsonParser)
+     */
+    Object bind(JsonParser parser, ObjectMapper mapper, JavaType type, boolean failFast) throws IOException {
+        long start = listener == null ? 0 : System.nanoTime();
+        ValidationContext context = ValidationContext.acquire();
+        List<ValidationError> errors;
+        Object value = null;
+        IOException failure = null;
+        try {
+            context.setParser(parser);
+            value = new ValidatingParser(parser, new StreamingValidator(root, context), failFast).read(mapper, type);
+        } catch (IOException e) {
+            // a violation is reported in preference to the mapping error it may have caused
+            failure = e;
+        } finally {
+            errors = context.release();
+        }
+        if (!errors.isEmpty()) {
+            if (listener != null) {
+                report(start, errors);
+            }
+            throw new ValidationException(errors);
+        }
+        if (failure != null) {
+            // a pattern that gave up inside a deserializer has been wrapped as a mapping error
+            if (failure.getCause() instanceof PatternBudgetException) {
+                throw (PatternBudgetException) failure.getCause();
+            }
+            throw failure;
+        }
+        if (listener != null) {
+            report(start, errors);
+        }
+        return value;
+    }
+
+    /**
+     * Validate a batch of instances on the common fork-join pool.
+     * @see #validateAll(Collection, ForkJoinPool)
+     */
+    public BulkValidationResult validateAll(Collection<? extends JsonNode> instances) {
+        return validateAll(instances, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Validate a batch of instances in parallel.
+     * @param instances instances in the order they are numbered in the result
+     * @param pool pool that runs the validation, in chunks of consecutive instances
+     * @return which instances are valid, and the errors of those that are not
+     */
+    @SuppressWarnings("unchecked")
+    public BulkValidationResult validateAll(Collection<? extends JsonNode> instances, ForkJoinPool pool) {
+        List<? extends JsonNode> list;
+        if (instances instanceof List<?> && instances instanceof RandomAccess) {
+            list = (List<? extends JsonNode>) instances;
+        } else {
+            list = new ArrayList<JsonNode>(instances);
+        }
+        return new BulkValidator(this, pool).validate(list);
+    }
+
+    /**
+     * Validate a stream of instances on the common fork-join pool.
+     * @see #validateAll(Stream, ForkJoinPool)
+     */
+    public BulkValidationResult validateAll(Stream<? extends JsonNode> instances) {
+        return validateAll(instances, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Validate a stream of instances in parallel.  The stream is read by the calling thread, and only a
+     * few chunks per worker are held in memory at a time.
+     * @param instances instances in the order they are numbered in the result
+     * @param pool pool that runs the validation, in chunks of consecutive instances
+     * @return which instances are valid, and the errors of those that are not
+     */
+    public BulkValidationResult validateAll(Stream<? extends JsonNode> instances, ForkJoinPool pool) {
+        return new BulkValidator(this, pool).validate(instances.iterator());
+    }
+
+    /**
+     * Validate newline delimited JSON on the common fork-join pool.
+     * @see #validateAll(InputStream, ForkJoinPool)
+     */
+    public BulkValidationResult validateAll(InputStream ndjson) throws IOException {
+        return validateAll(ndjson, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Validate newline delimited JSON in parallel, with one instance per line.  The stream is read by the
+     * calling thread, and its lines are parsed and validated by the pool.  Lines that are blank are not
+     * instances and do not count.  A line that is not well-formed JSON is reported as a failure with the
+     * keyword "syntax".
+     * @param ndjson UTF-8 encoded lines, which is not closed
+     * @param pool pool that runs the validation, in chunks of consecutive lines
+     * @return which instances are valid, and the errors of those that are not, with their locations in the stream
+     * @throws IOException if the stream cannot be read
+     */
+    public BulkValidationResult validateAll(InputStream ndjson, ForkJoinPool pool) throws IOException {
+        return new BulkValidator(this, pool).validate(ndjson);
+    }
+
+    /**
+     * Validate a file of newline delimited JSON on the common fork-join pool.
+     * @see #validateAll(File, ForkJoinPool)
+     */
+    public BulkValidationResult validateAll(File ndjson) throws IOException {
+        return validateAll(ndjson, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Validate a file of newline delimited JSON in parallel, with one instance per line, as
+     * {@link #validateAll(InputStream, ForkJoinPool)} does.  The file is memory mapped instead of read,
+     * and the calling thread only looks for line feeds near the ends of chunks, so reading is spread over
+     * the workers as well.
+     * @param ndjson UTF-8 encoded lines, which must not be changed during validation
+     * @param pool pool that runs the validation, in chunks of consecutive lines
+     * @return which instances are valid, and the errors of those that are not, with their locations in the file
+     * @throws IOException if the file cannot be read
+     */
+    public BulkValidationResult validateAll(File ndjson, ForkJoinPool pool) throws IOException {
+        return new BulkValidator(this, pool).validate(ndjson);
+    }
+
+    private List<ValidationError> errors(JsonNode instance, int maxErrors) {
+        ValidationContext context = ValidationContext.acquire();
+        List<ValidationError> errors;
+        try {
+            context.setLimit(maxErrors);
+            check(instance, context);
+        } finally {
+            errors = context.release();
+        }
+        return errors;
+    }
+
+    private boolean probe(JsonNode instance) {
+        ValidationContext context = ValidationContext.acquire();
+        try {
+            context.beginProbe();
+            return check(instance, context);
+        } finally {
+            context.release();
+        }
+    }
+
+    private List<ValidationError> errors(JsonParser parser, int maxErrors) throws IOException {
+        ValidationContext context = ValidationContext.acquire();
+        List<ValidationError> errors;
+        try {
+            context.setLimit(maxErrors);
+            context.setParser(parser);
+            stream(parser, new StreamingValidator(root, context), context);
+        } finally {
+            errors = context.release();
+        }
+        return errors;
+    }
+
+    private boolean probe(JsonParser parser) throws IOException {
+        ValidationContext context = ValidationContext.acquire();
+        try {
+            context.beginProbe();
+            StreamingValidator streaming = new StreamingValidator(root, context);
+            stream(parser, streaming, context);
+            return streaming.isValid();
+        } finally {
+            context.release();
+        }
+    }
+
+    /**
+     * Report a validation that stopped at the first violation, which was kept without its message
+     */
+    private void reportFirst(long start, boolean valid, List<ValidationError> first) {
+        listener.validated(name, valid, System.nanoTime() - start);
+        if (!valid) {
+            reportErrors(first);
+        }
+    }
+
+    private void report(long start, List<ValidationError> errors) {
+        listener.validated(name, errors.isEmpty(), System.nanoTime() - start);
+        reportErrors(errors);
+    }
+
+    private void reportErrors(List<ValidationError> errors) {
+        if (listener != null) {
+            for (ValidationError error : errors) {
+                listener.failed(name, error);
+            }
+        }
+    }
+
+    private boolean check(JsonNode instance, ValidationContext context) {
+        if (generated != null) {
+            return generated.validate(instance, context);
+        }
+        return root.validate(instance, context);
+    }
+
+    /**
+     * Feed the tokens of the next value to a validator, until the value is complete or the context has
+     * stopped collecting errors after a violation.
+     */
+    private static void stream(JsonParser parser, StreamingValidator streaming, ValidationContext context) throws IOException {
+        JsonToken token = parser.getCurrentToken();
+        // the end of a value that has been read already, such as by a binder
+        if (token == JsonToken.END_OBJECT || token == JsonToken.END_ARRAY) {
+            token = null;
+        }
+        if (token == null) {
+            token = parser.nextToken();
+            if (token == null) {
+                // an absent document is not a valid one
+                throw new JsonParseException("No value to validate: end of input", parser.getCurrentLocation());
+            }
+        }
+        while (token != null) {
+            streaming.next(parser);
+            if (streaming.isComplete()) {
+                // a scalar would otherwise be taken for the first token of the next value
+                parser.clearCurrentToken();
+                return;
+            }
+            if (!streaming.isValid() && !context.isCollecting()) {
+                return;
+            }
+            token = parser.nextToken();
+        }
+    }
+
+    CompiledSchema getRoot() {
+        return root;
+    }
+}
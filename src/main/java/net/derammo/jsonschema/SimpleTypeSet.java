@@ -0,0 +1,248 @@
+/*
+ * Copyright 2011 Ammo Goettsch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package net.derammo.jsonschema;
+
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.JsonToken;
+
+/**
+ * Immutable set of the draft 3 simple type names ("string", "number", "integer", "boolean", "object",
+ * "array", "null" and "any"), held as a bit mask.  There is one shared instance for each of the 256
+ * combinations, so sets can be compared by identity, and checking whether a value has one of the
+ * types is a single AND.
+ */
+public final class SimpleTypeSet extends AbstractSet<String> {
+    // bits for the type names; the first seven are also the kinds of values, where an integral
+    // value is both INTEGER and NUMBER
+    static final int STRING = 1;
+    static final int NUMBER = 1 << 1;
+    static final int INTEGER = 1 << 2;
+    static final int BOOLEAN = 1 << 3;
+    static final int OBJECT = 1 << 4;
+    static final int ARRAY = 1 << 5;
+    static final int NULL = 1 << 6;
+    static final int ANY = 1 << 7;
+
+    // the kinds of values matched by "any"
+    private static final int ALL_KINDS = ANY - 1;
+
+    // names in the order of their bits
+    private static final String[] NAMES = { "string", "number", "integer", "boolean", "object", "array", "null", "any" };
+
+    private static final SimpleTypeSet[] CANONICAL = new SimpleTypeSet[1 << NAMES.length];
+    static {
+        for (int i = 0; i < CANONICAL.length; i++) {
+            CANONICAL[i] = new SimpleTypeSet(i);
+        }
+    }
+
+    public static final SimpleTypeSet EMPTY = CANONICAL[0];
+    public static final SimpleTypeSet ALL = CANONICAL[ANY];
+
+    private final int names;
+    // kinds of values matched
+    private final int kinds;
+
+    private SimpleTypeSet(int names) {
+        this.names = names;
+        this.kinds = (names & ANY) != 0 ? ALL_KINDS : names;
+    }
+
+    /**
+     * @throws IllegalArgumentException if one of the names is not a draft 3 type name
+     */
+    public static SimpleTypeSet of(String... names) {
+        int mask = 0;
+        for (String name : names) {
+            int bit = bit(name);
+            if (bit == 0) {
+                throw new IllegalArgumentException("not a draft 3 type name: " + name);
+            }
+            mask |= bit;
+        }
+        return CANONICAL[mask];
+    }
+
+    /**
+     * @param unknownMatchesAny whether names that are not draft 3 types add "any", which section 5.1 allows
+     * for 'type', or are left out, as for 'disallow'
+     */
+    static SimpleTypeSet of(Collection<String> names, boolean unknownMatchesAny) {
+        int mask = 0;
+        for (String name : names) {
+            int bit = bit(name);
+            if (bit == 0 && unknownMatchesAny) {
+                bit = ANY;
+            }
+            mask |= bit;
+        }
+        return CANONICAL[mask];
+    }
+
+    static SimpleTypeSet valueOf(int mask) {
+        return CANONICAL[mask];
+    }
+
+    /**
+     * @return the bit of a draft 3 type name, or 0 for any other name
+     */
+    static int bit(String name) {
+        for (int i = 0; i < NAMES.length; i++) {
+            if (NAMES[i].equals(name)) {
+                return 1 << i;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @return the kind of the value starting with the given token, or 0 if the token does not start a value
+     */
+    static int kindOf(JsonToken token) {
+        switch (token) {
+        case VALUE_STRING:
+            return STRING;
+        case VALUE_NUMBER_INT:
+            return INTEGER | NUMBER;
+        case VALUE_NUMBER_FLOAT:
+            return NUMBER;
+        case VALUE_TRUE:
+        case VALUE_FALSE:
+            return BOOLEAN;
+        case START_OBJECT:
+            return OBJECT;
+        case START_ARRAY:
+            return ARRAY;
+        case VALUE_NULL:
+            return NULL;
+        default:
+            return 0;
+        }
+    }
+
+    static int kindOf(JsonNode value) {
+        return kindOf(value.asToken());
+    }
+
+    /**
+     * @return the most specific type name of a kind of value
+     */
+    static String kindName(int kind) {
+        switch (kind) {
+        case STRING:
+            return "string";
+        case INTEGER | NUMBER:
+            return "integer";
+        case NUMBER:
+            return "number";
+        case BOOLEAN:
+            return "boolean";
+        case OBJECT:
+            return "object";
+        case ARRAY:
+            return "array";
+        case NULL:
+            return "null";
+        default:
+            return "unknown";
+        }
+    }
+
+    /**
+     * @return true if the value starting with the token has one of the types of this set
+     */
+    public boolean matches(JsonToken token) {
+        return (kinds & kindOf(token)) != 0;
+    }
+
+    /**
+     * @return true if the value has one of the types of this set
+     */
+    public boolean matches(JsonNode value) {
+        return (kinds & kindOf(value)) != 0;
+    }
+
+    boolean matchesKind(int kind) {
+        return (kinds & kind) != 0;
+    }
+
+    /**
+     * @return true if every value matches, because the set contains "any"
+     */
+    public boolean isAny() {
+        return kinds == ALL_KINDS;
+    }
+
+    public SimpleTypeSet union(SimpleTypeSet other) {
+        return CANONICAL[names | other.names];
+    }
+
+    int getMask() {
+        return names;
+    }
+
+    @Override
+    public boolean contains(Object name) {
+        return name instanceof String && (names & bit((String) name)) != 0;
+    }
+
+    @Override
+    public int size() {
+        return Integer.bitCount(names);
+    }
+
+    @Override
+    public Iterator<String> iterator() {
+        return new Iterator<String>() {
+            private int remaining = names;
+
+            public boolean hasNext() {
+                return remaining != 0;
+            }
+
+            public String next() {
+                if (remaining == 0) {
+                    throw new NoSuchElementException();
+                }
+                int index = Integer.numberOfTrailingZeros(remaining);
+                remaining &= remaining - 1;
+                return NAMES[index];
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (other instanceof SimpleTypeSet) {
+            return other == this;
+        }
+        return super.equals(other);
+    }
+
+    @Override
+    public int hashCode() {
+        return super.hashCode();
+    }
+}
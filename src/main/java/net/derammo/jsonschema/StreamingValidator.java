@@ -0,0 +1,349 @@
+/*
+ * Copyright 2011 Ammo Goettsch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package net.derammo.jsonschema;
+
+import java.io.IOException;
+
+import org.codehaus.jackson.JsonLocation;
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.util.TokenBuffer;
+
+/**
+ * Validates one JSON value as its tokens are read, without building the document.  The only state
+ * is a stack of frames, one per open object or array, which is reused from value to value.
+ *
+ * Tokens are pushed to {@link #next(JsonParser)} one at a time, so the same validator can be driven
+ * by a loop over a parser or by code that reads the parser for another purpose.
+ *
+ * Checks that need to see the whole value at once (unions containing schemas, disallowed schemas,
+ * dependencies and extends) buffer only that value, and validate it with the tree validator.
+ */
+final class StreamingValidator {
+    // only used to build trees of buffered values, which needs no configuration
+    private static final ObjectMapper TREE_READER = new ObjectMapper();
+
+    /**
+     * State of one open object or array
+     */
+    private static final class Frame {
+        CompiledSchema schema;
+        boolean object;
+        // number of items read so far, for arrays
+        int count;
+        // properties of the schema seen so far, for objects, as a set of a PropertyIndex
+        long[] seen = new long[1];
+        // schema of the value following the last field name, or null if it is not constrained
+        CompiledSchema valueSchema;
+        // property expected next if the fields follow the order of the schema, for objects
+        int expected;
+
+        void reset(CompiledSchema schema, boolean object) {
+            this.schema = schema;
+            this.object = object;
+            this.count = 0;
+            this.valueSchema = null;
+            this.expected = 0;
+            if (object && schema != null) {
+                if (schema.propertyIndex.fits(seen)) {
+                    schema.propertyIndex.clear(seen);
+                } else {
+                    seen = schema.propertyIndex.newSet();
+                }
+            }
+        }
+    }
+
+    private final CompiledSchema root;
+    private final ValidationContext context;
+
+    private Frame[] frames = new Frame[8];
+    private int depth;
+
+    // nesting depth inside a value that is not constrained and is therefore only counted
+    private int skipping;
+
+    // a value being buffered for tree validation
+    private TokenBuffer buffer;
+    private int buffering;
+    private CompiledSchema bufferSchema;
+    private JsonLocation bufferLocation;
+
+    private boolean started;
+    private boolean complete;
+    private boolean valid = true;
+
+    StreamingValidator(CompiledSchema root, ValidationContext context) {
+        this.root = root;
+        this.context = context;
+    }
+
+    /**
+     * @return true once the tokens of a whole value have been passed to {@link #next(JsonParser)}
+     */
+    boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * @return false once a violation has been found
+     */
+    boolean isValid() {
+        return valid;
+    }
+
+    /**
+     * Prepare to validate another value, such as the next document of a stream.
+     */
+    void reset() {
+        depth = 0;
+        skipping = 0;
+        buffer = null;
+        buffering = 0;
+        started = false;
+        complete = false;
+        valid = true;
+    }
+
+    /**
+     * Consume the current token of the parser.
+     */
+    void next(JsonParser parser) throws IOException {
+        JsonToken token = parser.getCurrentToken();
+        if (buffer != null) {
+            buffer.copyCurrentEvent(parser);
+            if (token == JsonToken.START_OBJECT || token == JsonToken.START_ARRAY) {
+                buffering++;
+            } else if (token == JsonToken.END_OBJECT || token == JsonToken.END_ARRAY) {
+                buffering--;
+            }
+            if (buffering == 0) {
+                validateBuffer();
+            }
+            return;
+        }
+        if (skipping > 0) {
+            if (token == JsonToken.START_OBJECT || token == JsonToken.START_ARRAY) {
+                skipping++;
+            } else if (token == JsonToken.END_OBJECT || token == JsonToken.END_ARRAY) {
+                skipping--;
+                if (skipping == 0) {
+                    endValue();
+                }
+            }
+            return;
+        }
+        switch (token) {
+        case FIELD_NAME:
+            fieldName(parser.getCurrentName());
+            break;
+        case END_OBJECT:
+            endObject();
+            break;
+        case END_ARRAY:
+            endArray();
+            break;
+        default:
+            beginValue(token, parser);
+        }
+    }
+
+    private void fieldName(String name) {
+        Frame frame = frames[depth - 1];
+        context.pushName(name);
+        CompiledSchema schema = frame.schema;
+        frame.valueSchema = null;
+        if (schema == null) {
+            return;
+        }
+        int index = schema.propertyIndex.indexOf(name, frame.expected);
+        if (index >= 0) {
+            PropertyIndex.add(frame.seen, index);
+            frame.valueSchema = schema.propertySchemas[index];
+            frame.expected = index + 1;
+        } else if (!schema.additionalProperties && !schema.isDeclaredProperty(name)) {
+            error("additionalProperties", "property is not declared");
+        }
+    }
+
+    private void beginValue(JsonToken token, JsonParser parser) throws IOException {
+        CompiledSchema schema;
+        if (depth == 0) {
+            if (started) {
+                throw new IllegalStateException("value has already been validated");
+            }
+            started = true;
+            schema = root;
+        } else {
+            Frame frame = frames[depth - 1];
+            if (frame.object) {
+                schema = frame.valueSchema;
+            } else {
+                context.pushIndex(frame.count);
+                schema = frame.schema == null ? null : frame.schema.itemSchema(frame.count);
+            }
+        }
+        boolean container = token == JsonToken.START_OBJECT || token == JsonToken.START_ARRAY;
+        if (schema == null) {
+            if (container) {
+                skipping = 1;
+            } else {
+                endValue();
+            }
+            return;
+        }
+        if (schema.needsTree) {
+            bufferSchema = schema;
+            bufferLocation = parser.getTokenLocation();
+            buffer = new TokenBuffer(null);
+            buffer.copyCurrentEvent(parser);
+            if (container) {
+                buffering = 1;
+            } else {
+                validateBuffer();
+            }
+            return;
+        }
+
+        int kind = SimpleTypeSet.kindOf(token);
+        if (!schema.types.matchesKind(kind)) {
+            error("type", kind, " value is not allowed");
+        }
+        if (schema.disallowedTypes.matchesKind(kind)) {
+            error("disallow", kind, " value is disallowed");
+        }
+        if (schema.enumeration != null) {
+            fail(schema.checkEnumeration(container ? null : CanonicalJson.scalar(parser), context));
+        }
+        switch (kind) {
+        case SimpleTypeSet.INTEGER | SimpleTypeSet.NUMBER:
+            if (schema.checksNumbers) {
+                if (parser.getNumberType() == JsonParser.NumberType.BIG_INTEGER) {
+                    fail(schema.checkDouble(parser.getDoubleValue(), context));
+                } else {
+                    fail(schema.checkLong(parser.getLongValue(), context));
+                }
+            }
+            break;
+        case SimpleTypeSet.NUMBER:
+            if (schema.checksNumbers) {
+                fail(schema.checkDouble(parser.getDoubleValue(), context));
+            }
+            break;
+        case SimpleTypeSet.STRING:
+            if (schema.checksStrings) {
+                fail(schema.checkString(parser.getText(), context));
+            }
+            break;
+        case SimpleTypeSet.OBJECT:
+        case SimpleTypeSet.ARRAY:
+            push(schema, token == JsonToken.START_OBJECT);
+            return;
+        default:
+        }
+        endValue();
+    }
+
+    private void endObject() {
+        Frame frame = frames[depth - 1];
+        CompiledSchema schema = frame.schema;
+        if (schema != null) {
+            PropertyIndex index = schema.propertyIndex;
+            for (int i = index.nextMissing(frame.seen, 0); i >= 0; i = index.nextMissing(frame.seen, i + 1)) {
+                context.pushName(schema.propertyNames[i]);
+                error("required", "property is required");
+                context.pop();
+            }
+        }
+        depth--;
+        endValue();
+    }
+
+    private void endArray() {
+        Frame frame = frames[depth - 1];
+        if (frame.schema != null) {
+            fail(frame.schema.checkItemCount(frame.count, context));
+        }
+        depth--;
+        endValue();
+    }
+
+    /**
+     * Called after the last token of a value, to advance the enclosing object or array
+     */
+    private void endValue() {
+        if (depth == 0) {
+            complete = true;
+            return;
+        }
+        Frame frame = frames[depth - 1];
+        if (!frame.object) {
+            frame.count++;
+        }
+        context.pop();
+    }
+
+    private void push(CompiledSchema schema, boolean object) {
+        if (depth == frames.length) {
+            Frame[] newFrames = new Frame[depth * 2];
+            System.arraycopy(frames, 0, newFrames, 0, depth);
+            frames = newFrames;
+        }
+        Frame frame = frames[depth];
+        if (frame == null) {
+            frame = new Frame();
+            frames[depth] = frame;
+        }
+        frame.reset(schema, object);
+        depth++;
+    }
+
+    private void validateBuffer() throws IOException {
+        JsonParser bufferParser = buffer.asParser();
+        bufferParser.nextToken();
+        JsonNode value = TREE_READER.readTree(bufferParser);
+        buffer = null;
+        context.setLocation(bufferLocation);
+        fail(bufferSchema.validate(value, context));
+        context.setLocation(null);
+        bufferSchema = null;
+        bufferLocation = null;
+        endValue();
+    }
+
+    private void error(String keyword, String message) {
+        valid = false;
+        context.collect(keyword, message);
+    }
+
+    /**
+     * @param message follows the name of the kind of value, which is only added if errors are collected
+     */
+    private void error(String keyword, int kind, String message) {
+        valid = false;
+        if (context.isCollecting(keyword)) {
+            context.collect(keyword, SimpleTypeSet.kindName(kind) + message);
+        }
+    }
+
+    private void fail(boolean checked) {
+        if (!checked) {
+            valid = false;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2011 Ammo Goettsch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package net.derammo.jsonschema;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Enumerates the schemas nested directly inside a schema, with their JSON pointers relative to it
+ */
+final class Subschemas {
+    /**
+     * Receives the nested schemas found by {@link Subschemas#visit(ReadOnlySchema, Visitor)}
+     */
+    interface Visitor {
+        /**
+         * @param subschema a schema nested in the visited schema
+         * @param pointer JSON pointer of the subschema, relative to the visited schema
+         * @param sameInstance true if the subschema applies to the same instance as the visited schema
+         *        (members of 'type' and 'disallow' unions, schema dependencies), false if it applies to a
+         *        property or item of that instance
+         */
+        void visit(ReadOnlySchema subschema, String pointer, boolean sameInstance) throws IOException;
+    }
+
+    private Subschemas() {
+    }
+
+    static void visit(ReadOnlySchema schema, Visitor visitor) throws IOException {
+        Map<String, ? extends ReadOnlySchema> properties = schema.getProperties();
+        if (properties != null) {
+            for (Map.Entry<String, ? extends ReadOnlySchema> entry : properties.entrySet()) {
+                visitor.visit(entry.getValue(), "/properties/" + escape(entry.getKey()), false);
+            }
+        }
+        List<? extends ReadOnlySchema> items = schema.getItems();
+        if (items != null) {
+            for (int i = 0; i < items.size(); i++) {
+                visitor.visit(items.get(i), "/items/" + i, false);
+            }
+        }
+        visit(schema.getType(), "/type", true, visitor);
+        visit(schema.getDisallow(), "/disallow", true, visitor);
+        visit((TypeDeserializer.TypeVariant) schema.getAdditionalItems(), "/additionalItems", false, visitor);
+        if (schema.getDependencies() != null) {
+            for (Map.Entry<String, TypeDeserializer.TypeVariant> entry : schema.getDependencies().entrySet()) {
+                visit(entry.getValue(), "/dependencies/" + escape(entry.getKey()), true, visitor);
+            }
+        }
+    }
+
+    private static void visit(TypeDeserializer.TypeVariant variant, String pointer, boolean sameInstance, Visitor visitor) throws IOException {
+        if (variant instanceof TypeDeserializer.SchemaType<?>) {
+            visitor.visit((ReadOnlySchema) ((TypeDeserializer.SchemaType<?>) variant).getSchema(), pointer, sameInstance);
+        } else if (variant instanceof TypeDeserializer.UnionType<?>) {
+            List<TypeDeserializer.TypeVariant> members = ((TypeDeserializer.UnionType<?>) variant).getTypes();
+            for (int i = 0; i < members.size(); i++) {
+                if (members.get(i) instanceof TypeDeserializer.SchemaType<?>) {
+                    visit(members.get(i), pointer + "/" + i, sameInstance, visitor);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return a property name escaped for use as a JSON pointer segment
+     */
+    static String escape(String name) {
+        if (name.indexOf('~') < 0 && name.indexOf('/') < 0) {
+            return name;
+        }
+        StringBuilder builder = new StringBuilder(name.length() + 2);
+        ValidationError.appendEscaped(builder, name);
+        return builder.toString();
+    }
+}
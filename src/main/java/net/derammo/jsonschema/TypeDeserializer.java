@@ -18,27 +18,39 @@ package net.derammo.jsonschema;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.LinkedList;
+import java.util.Collections;
+import java.util.List;
 
 
 import org.codehaus.jackson.JsonParseException;
 import org.codehaus.jackson.JsonParser;
 import org.codehaus.jackson.JsonToken;
 import org.codehaus.jackson.map.BeanProperty;
+import org.codehaus.jackson.map.ContextualDeserializer;
 import org.codehaus.jackson.map.DeserializationConfig;
 import org.codehaus.jackson.map.DeserializationContext;
+import org.codehaus.jackson.map.DeserializerProvider;
 import org.codehaus.jackson.map.JsonDeserializer;
+import org.codehaus.jackson.map.JsonMappingException;
+import org.codehaus.jackson.map.annotate.JsonDeserialize;
+import org.codehaus.jackson.map.annotate.JsonSerialize;
 import org.codehaus.jackson.type.JavaType;
 
 /**
  * Custom deserializer that determines what to build based on structure of "type" value
  * @author ammo
  */
-class TypeDeserializer extends JsonDeserializer<TypeDeserializer.TypeVariant> {
+class TypeDeserializer extends JsonDeserializer<TypeDeserializer.TypeVariant> implements ContextualDeserializer<TypeDeserializer.TypeVariant> {
     /**
      * Base for helper classes representing the various forms of 'type'
+     * 
+     * The annotation applies this deserializer wherever a TypeVariant is read, including the values of 
+     * 'dependencies', and lets a {@link SchemaModule} substitute its own instance.  They are written
+     * back in the same form by {@link TypeSerializer}.
      * @author ammo
      */
+    @JsonDeserialize(using = TypeDeserializer.class)
+    @JsonSerialize(using = TypeSerializer.class)
     static class TypeVariant {
     }   
 
@@ -83,44 +95,165 @@ class TypeDeserializer extends JsonDeserializer<TypeDeserializer.TypeVariant> {
     
     /**
      * A union of types, as represented by an array of simple and schema types
+     * 
+     * The simple and schema members are sorted out once, when the union is constructed.
      * @author ammo
      */
     static class UnionType<ApplicationSchema> extends TypeDeserializer.TypeVariant {
         private ArrayList<TypeDeserializer.TypeVariant> union;
+        private List<String> simpleTypes;
+        private List<ApplicationSchema> schemaTypes;
 
+        @SuppressWarnings("unchecked")
         public UnionType(ArrayList<TypeDeserializer.TypeVariant> types) {
             this.union = types;
-        }
-
-        @SuppressWarnings("unchecked")
-        public Collection<ApplicationSchema> getSchemaTypes() {
-            LinkedList<ApplicationSchema> schemas = new LinkedList<ApplicationSchema>();
-            for (TypeDeserializer.TypeVariant type : union) {
-                if (type instanceof SchemaType<?>) {
+            ArrayList<String> names = new ArrayList<String>(types.size());
+            ArrayList<ApplicationSchema> schemas = new ArrayList<ApplicationSchema>(0);
+            for (TypeDeserializer.TypeVariant type : types) {
+                if (type instanceof SimpleType) {
+                    names.add(((SimpleType) type).getName());
+                } else if (type instanceof SchemaType<?>) {
                     schemas.add(((SchemaType<ApplicationSchema>) type).getSchema());
                 }
             }
-            return schemas;
+            this.simpleTypes = Collections.unmodifiableList(names);
+            this.schemaTypes = Collections.unmodifiableList(schemas);
+        }
+
+        /**
+         * @return the members of the union, in the order they were written
+         */
+        public List<TypeDeserializer.TypeVariant> getTypes() {
+            return union;
+        }
+
+        public Collection<ApplicationSchema> getSchemaTypes() {
+            return schemaTypes;
         }
 
         public Collection<String> getSimpleTypes() {
-            LinkedList<String> names = new LinkedList<String>();
-            for (TypeDeserializer.TypeVariant type : union) {
-                if (type instanceof SimpleType) {
-                    names.add(((SimpleType) type).getName());
-                }
-            }
-            return names;
+            return simpleTypes;
         }
     }  
     
+    // the names defined by draft 3, which are shared instead of created for each value
+    private static final SimpleType[] SIMPLE_TYPES = {
+        new SimpleType("string"), new SimpleType("number"), new SimpleType("integer"), new SimpleType("boolean"),
+        new SimpleType("object"), new SimpleType("array"), new SimpleType("null"), new SimpleType("any")
+    };
+    static final FalseType FALSE = new FalseType();
+
+    /**
+     * Deserializer for the application schema, together with the class and provider it was found for
+     */
+    private static class SchemaDeserializer {
+        final Class<?> schemaClass;
+        final DeserializerProvider provider;
+        final JsonDeserializer<Object> deserializer;
+
+        SchemaDeserializer(Class<?> schemaClass, DeserializerProvider provider, JsonDeserializer<Object> deserializer) {
+            this.schemaClass = schemaClass;
+            this.provider = provider;
+            this.deserializer = deserializer;
+        }
+    }
+
+    // class of the schemas in unions, or null to use SchemaDraft3.getApplicationSchemaClass()
+    private final Class<?> applicationSchemaClass;
+    // property being read, once this instance has been contextualized
+    private final BeanProperty property;
+    private volatile SchemaDeserializer schemaDeserializer;
+
+    /**
+     * Constructor used when this class is named by an annotation, which reads schemas as the class
+     * set by {@link SchemaDraft3#setApplicationSchemaClass(Class)}
+     */
+    public TypeDeserializer() {
+        this(null, null);
+    }
+
+    /**
+     * @param applicationSchemaClass class of the schemas found in unions, see {@link SchemaModule}
+     */
+    TypeDeserializer(Class<?> applicationSchemaClass) {
+        this(applicationSchemaClass, null);
+    }
+
+    private TypeDeserializer(Class<?> applicationSchemaClass, BeanProperty property) {
+        this.applicationSchemaClass = applicationSchemaClass;
+        this.property = property;
+    }
+
+    /**
+     * Jackson calls this once for each property that is read by this class, and then keeps the result, so
+     * each property gets its own cache of the schema deserializer.
+     */
+    @Override
+    public JsonDeserializer<TypeVariant> createContextual(DeserializationConfig config, BeanProperty property) {
+        return new TypeDeserializer(applicationSchemaClass, property);
+    }
+
+    /**
+     * @return deserializer for the application schema class, which is only looked up again if the provider or
+     * the class has changed since the last call
+     */
+    private JsonDeserializer<Object> findSchemaDeserializer(DeserializationContext ctxt) throws JsonMappingException {
+        Class<?> schemaClass = applicationSchemaClass;
+        if (schemaClass == null) {
+            schemaClass = SchemaDraft3.getApplicationSchemaClass();
+        }
+        DeserializerProvider provider = ctxt.getDeserializerProvider();
+        SchemaDeserializer cached = schemaDeserializer;
+        if (cached == null || cached.provider != provider || cached.schemaClass != schemaClass) {
+            JavaType type = ctxt.getTypeFactory().constructType(schemaClass);
+            cached = new SchemaDeserializer(schemaClass, provider, provider.findValueDeserializer(ctxt.getConfig(), type, property));
+            schemaDeserializer = cached;
+        }
+        return cached.deserializer;
+    }
+
+    /**
+     * @return the shared instance for one of the draft 3 type names, compared without creating a string, or
+     * a new instance for any other name
+     */
+    static SimpleType simpleType(JsonParser parser) throws IOException {
+        char[] text = parser.getTextCharacters();
+        int offset = parser.getTextOffset();
+        int length = parser.getTextLength();
+        for (SimpleType type : SIMPLE_TYPES) {
+            String name = type.getName();
+            if (name.length() == length && matches(name, text, offset)) {
+                return type;
+            }
+        }
+        return new SimpleType(parser.getText());
+    }
+
+    /**
+     * @return the shared instance for one of the draft 3 type names, or a new instance for any other name
+     */
+    static SimpleType simpleType(String name) {
+        for (SimpleType type : SIMPLE_TYPES) {
+            if (type.getName().equals(name)) {
+                return type;
+            }
+        }
+        return new SimpleType(name);
+    }
+
+    private static boolean matches(String name, char[] text, int offset) {
+        for (int i = 0; i < name.length(); i++) {
+            if (name.charAt(i) != text[offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     @SuppressWarnings({ "unchecked", "rawtypes" })
     @Override
     public TypeVariant deserialize(JsonParser parser, DeserializationContext ctxt) throws IOException {
         JsonToken token = parser.getCurrentToken();
-        DeserializationConfig config = ctxt.getConfig();
-        JavaType type = null;
-        BeanProperty property = null;
         switch (token) {
         case START_ARRAY: {
             // read each item of the array according to its type
@@ -152,28 +285,25 @@ class TypeDeserializer extends JsonDeserializer<TypeDeserializer.TypeVariant> {
                             "union types can only directly contain simple types and schemas, not other unions",
                             parser.getCurrentLocation());
                 case VALUE_STRING:
-                    type = ctxt.getTypeFactory().constructType(SimpleType.class);
-                    typeList.add((TypeVariant) ctxt.getDeserializerProvider()
-                            .findValueDeserializer(config, type, property).deserialize(parser, ctxt));
+                    typeList.add(simpleType(parser));
                     break;
                 case START_OBJECT:
                     // we always create the specified application schema for all items, which allows the caller
                     // to register an extended schema, which will then be used everywhere
-                    type = ctxt.getTypeFactory().constructType(SchemaDraft3.getApplicationSchemaClass());
-                    typeList.add(new SchemaType(ctxt.getDeserializerProvider().findValueDeserializer(config, type, property).deserialize(parser, ctxt)));
+                    typeList.add(new SchemaType(findSchemaDeserializer(ctxt).deserialize(parser, ctxt)));
                     break;
                 }
             }
             return new UnionType(typeList);
         }
+        case START_OBJECT:
+            // a single schema, as used by additionalItems, disallow and dependencies
+            return new SchemaType(findSchemaDeserializer(ctxt).deserialize(parser, ctxt));
         case VALUE_STRING:
-            type = ctxt.getTypeFactory().constructType(SimpleType.class);
-            return (TypeVariant) ctxt.getDeserializerProvider().findValueDeserializer(config, type, property)
-                    .deserialize(parser, ctxt);
+            // constructed directly, because the subclasses inherit the annotation that selects this deserializer
+            return simpleType(parser);
         case VALUE_FALSE:
-            type = ctxt.getTypeFactory().constructType(FalseType.class);
-            return (TypeVariant) ctxt.getDeserializerProvider().findValueDeserializer(config, type, property)
-                    .deserialize(parser, ctxt);
+            return FALSE;
         default:
         }
         throw new JsonParseException("type must be a simple type or a union (array) of types",
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2011 Ammo Goettsch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package net.derammo.jsonschema;
+
+import java.io.IOException;
+
+import org.codehaus.jackson.JsonGenerator;
+import org.codehaus.jackson.map.JsonSerializer;
+import org.codehaus.jackson.map.SerializerProvider;
+
+/**
+ * Writes the forms of 'type' in the same shapes {@link TypeDeserializer} reads them, so a schema survives
+ * a round trip
+ */
+class TypeSerializer extends JsonSerializer<TypeDeserializer.TypeVariant> {
+    @Override
+    public void serialize(TypeDeserializer.TypeVariant value, JsonGenerator generator, SerializerProvider provider)
+            throws IOException {
+        if (value instanceof TypeDeserializer.SimpleType) {
+            generator.writeString(((TypeDeserializer.SimpleType) value).getName());
+        } else if (value instanceof TypeDeserializer.FalseType) {
+            generator.writeBoolean(false);
+        } else if (value instanceof TypeDeserializer.SchemaType<?>) {
+            provider.defaultSerializeValue(((TypeDeserializer.SchemaType<?>) value).getSchema(), generator);
+        } else if (value instanceof TypeDeserializer.UnionType<?>) {
+            generator.writeStartArray();
+            for (TypeDeserializer.TypeVariant member : ((TypeDeserializer.UnionType<?>) value).getTypes()) {
+                serialize(member, generator, provider);
+            }
+            generator.writeEndArray();
+        } else {
+            throw new IllegalArgumentException("unknown form of type: " + value.getClass().getName());
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2011 Ammo Goettsch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package net.derammo.jsonschema;
+
+import java.io.IOException;
+
+import org.codehaus.jackson.JsonParseException;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.type.JavaType;
+import org.codehaus.jackson.util.JsonParserDelegate;
+
+/**
+ * Passes each token to a streaming validator as a mapper reads it, so that a value is validated and bound
+ * in the same pass over the source.  The validator sees each token before the mapper does.
+ */
+final class ValidatingParser extends JsonParserDelegate {
+    /**
+     * Thrown through the mapper to stop binding at the first violation; not a JsonMappingException, so
+     * that the mapper does not wrap it
+     */
+    static final class Stop extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        Stop() {
+            super("instance is not valid");
+        }
+    }
+
+    private final StreamingValidator streaming;
+    private final boolean failFast;
+
+    ValidatingParser(JsonParser parser, StreamingValidator streaming, boolean failFast) {
+        super(parser);
+        this.streaming = streaming;
+        this.failFast = failFast;
+    }
+
+    /**
+     * Bind the next value of the source, validating its tokens on the way
+     */
+    Object read(ObjectMapper mapper, JavaType type) throws IOException {
+        if (delegate.getCurrentToken() != null) {
+            check();
+        }
+        Object value = mapper.readValue(this, type);
+        // deserializers may leave the end of a value unread; the validator still needs it
+        while (!streaming.isComplete() && nextToken() != null) {
+        }
+        return value;
+    }
+
+    @Override
+    public JsonToken nextToken() throws IOException, JsonParseException {
+        JsonToken token = delegate.nextToken();
+        if (token != null && !streaming.isComplete()) {
+            check();
+        }
+        return token;
+    }
+
+    @Override
+    public JsonParser skipChildren() throws IOException, JsonParseException {
+        // skipped values are still validated, so their tokens have to pass through nextToken
+        JsonToken token = delegate.getCurrentToken();
+        if (token != JsonToken.START_OBJECT && token != JsonToken.START_ARRAY) {
+            return this;
+        }
+        int open = 1;
+        while (open > 0) {
+            token = nextToken();
+            if (token == null) {
+                break;
+            }
+            if (token == JsonToken.START_OBJECT || token == JsonToken.START_ARRAY) {
+                open++;
+            } else if (token == JsonToken.END_OBJECT || token == JsonToken.END_ARRAY) {
+                open--;
+            }
+        }
+        return this;
+    }
+
+    private void check() throws IOException {
+        streaming.next(delegate);
+        if (failFast && !streaming.isValid()) {
+            throw new Stop();
+        }
+    }
+}
@@ -0,0 +1,280 @@
+/*
+ * Copyright 2011 Ammo Goettsch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package net.derammo.jsonschema;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.ws.rs.Consumes;
+import javax.ws.rs.Produces;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.ext.Provider;
+
+import org.codehaus.jackson.JsonParseException;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.jaxrs.JacksonJsonProvider;
+import org.codehaus.jackson.map.ObjectMapper;
+
+/**
+ * Reads JSON request bodies like JacksonJsonProvider, but first validates them against the schema of the
+ * resource method.  The schema is named by a {@link ValidatedBy} annotation on the entity parameter or,
+ * failing that, by a "describedby" link in the Link header of the request.  Bodies without a schema are
+ * read without validation.
+ *
+ * Validation happens while the body is bound, each token being checked before the mapper reads it, and
+ * stops at the first violation, which is answered with 400 Bad Request.  The body is only parsed once,
+ * and is not kept in memory.
+ *
+ * Validators are looked up on every request, so schemas that a {@link SchemaStore} reloads apply to the
+ * next request.  A describedby link comes from the client, so it is only followed to a document below one
+ * of the link bases given to the constructor, or to a schema named by a {@link ValidatedBy} annotation.
+ * Its query and fragment are dropped, so that clients cannot make the registry load the same document
+ * under many URIs, and links with dot segments are refused.  Links that cannot be loaded are answered
+ * with 400 Bad Request, and are not tried again for a few seconds.
+ */
+@Provider
+@Consumes({"application/json", "text/json"})
+@Produces({"application/json", "text/json"})
+public class ValidatingProvider extends JacksonJsonProvider {
+    /**
+     * Source of the current validators, which caches them
+     */
+    private interface Validators {
+        SchemaValidator getValidator(URI uri) throws IOException;
+    }
+
+    private static final int FAILED_LINKS = 1024;
+    private static final long FAILED_LINK_NANOS = 5000000000L;
+
+    private final Validators validators;
+    private final URI[] linkBases;
+    // links that could not be loaded, with the time of the failure
+    private final LruCache<URI, Long> failedLinks = new LruCache<URI, Long>(FAILED_LINKS);
+
+    // one entry per distinct annotation, and therefore per resource method
+    private final ConcurrentHashMap<ValidatedBy, URI> annotated = new ConcurrentHashMap<ValidatedBy, URI>();
+    // the URIs of the annotations, which describedby links may name as well
+    private final Set<URI> annotatedUris = Collections.newSetFromMap(new ConcurrentHashMap<URI, Boolean>());
+
+    /**
+     * @param registry source of schemas, which are compiled on first use
+     * @param linkBases URI prefixes of the documents that describedby links may name, such as
+     *        http://example.com/schemas/; without any, links may only name the schemas of annotations
+     */
+    public ValidatingProvider(final SchemaRegistry<?> registry, URI... linkBases) {
+        this(new Validators() {
+            public SchemaValidator getValidator(URI uri) throws IOException {
+                return registry.getValidator(uri);
+            }
+        }, linkBases);
+    }
+
+    /**
+     * Validate with the current validators of a store, and follow describedby links to the documents of the store
+     * @param store source of schemas, which are compiled on first use and replaced when their documents change
+     */
+    public ValidatingProvider(final SchemaStore<?> store) {
+        this(new Validators() {
+            public SchemaValidator getValidator(URI uri) throws IOException {
+                return store.getValidator(uri);
+            }
+        }, store.getBase());
+    }
+
+    private ValidatingProvider(Validators validators, URI... linkBases) {
+        this.validators = validators;
+        this.linkBases = new URI[linkBases.length];
+        for (int i = 0; i < linkBases.length; i++) {
+            this.linkBases[i] = linkBases[i].normalize();
+        }
+    }
+
+    @Override
+    public Object readFrom(Class<Object> type, Type genericType, Annotation[] annotations, MediaType mediaType,
+            MultivaluedMap<String, String> httpHeaders, InputStream entityStream) throws IOException {
+        SchemaValidator validator = findValidator(annotations, httpHeaders);
+        if (validator == null) {
+            return super.readFrom(type, genericType, annotations, mediaType, httpHeaders, entityStream);
+        }
+        ObjectMapper mapper = locateMapper(type, mediaType);
+        JsonParser parser = mapper.getJsonFactory().createJsonParser(entityStream);
+        parser.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+        try {
+            return new SchemaBinder<Object>(validator, mapper, mapper.constructType(genericType), true).read(parser);
+        } catch (ValidationException e) {
+            throw badRequest(e.getErrors().get(0).toString());
+        } catch (JsonParseException e) {
+            throw badRequest(e.getMessage());
+        } catch (PatternBudgetException e) {
+            throw badRequest(e.getMessage());
+        }
+    }
+
+    /**
+     * @return validator for the entity, or null if no schema is named for it
+     */
+    private SchemaValidator findValidator(Annotation[] annotations, MultivaluedMap<String, String> httpHeaders) throws IOException {
+        if (annotations != null) {
+            for (Annotation annotation : annotations) {
+                if (annotation instanceof ValidatedBy) {
+                    ValidatedBy validatedBy = (ValidatedBy) annotation;
+                    URI uri = annotated.get(validatedBy);
+                    if (uri == null) {
+                        uri = URI.create(validatedBy.value()).normalize();
+                        annotated.put(validatedBy, uri);
+                        annotatedUris.add(uri);
+                    }
+                    // the source caches validators by URI, and replaces those that are out of date
+                    return validators.getValidator(uri);
+                }
+            }
+        }
+        if (httpHeaders == null) {
+            return null;
+        }
+        String link = findDescribedBy(httpHeaders.get("Link"));
+        if (link == null) {
+            return null;
+        }
+        try {
+            return getLinkedValidator(link);
+        } catch (SchemaException e) {
+            throw badRequest(e.getMessage());
+        }
+    }
+
+    /**
+     * @param link target of a describedby link sent by the client
+     * @return validator for the schema the link names
+     * @throws SchemaException if the link may not be followed or its schema cannot be loaded, for
+     *         whatever reason, since the client is to blame for naming it
+     */
+    SchemaValidator getLinkedValidator(String link) throws SchemaException {
+        URI uri;
+        try {
+            uri = new URI(link);
+            if (uri.isAbsolute() && !uri.isOpaque()) {
+                // this decodes the path, so that encoded dot segments become plain ones
+                uri = new URI(uri.getScheme(), uri.getAuthority(), uri.getPath(), null, null).normalize();
+            }
+        } catch (URISyntaxException e) {
+            throw new SchemaException("describedby link is not a valid URI: " + link);
+        }
+        if (!isLinkable(uri)) {
+            throw new SchemaException("describedby link does not name a known schema: " + link);
+        }
+        Long failed = failedLinks.get(uri);
+        if (failed != null) {
+            if (System.nanoTime() - failed.longValue() < FAILED_LINK_NANOS) {
+                throw new SchemaException("describedby link does not name a known schema: " + link);
+            }
+            failedLinks.remove(uri);
+        }
+        try {
+            return validators.getValidator(uri);
+        } catch (IOException e) {
+            failedLinks.put(uri, System.nanoTime());
+            throw new SchemaException("describedby link does not name a known schema: " + link, e);
+        }
+    }
+
+    /**
+     * @param uri normalized URI without query and fragment
+     * @return true if a describedby link may name the URI
+     */
+    private boolean isLinkable(URI uri) {
+        if (!uri.isAbsolute() || uri.isOpaque() || hasDotSegment(uri.getPath())) {
+            return false;
+        }
+        if (annotatedUris.contains(uri)) {
+            return true;
+        }
+        for (URI base : linkBases) {
+            if (base.relativize(uri) != uri) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param path decoded path, which normalization leaves with dot segments only at its start
+     */
+    private static boolean hasDotSegment(String path) {
+        for (String segment : path.split("/", -1)) {
+            if (segment.equals(".") || segment.equals("..")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param headers values of the Link header, each of which may hold several links
+     * @return target of the first link with relation "describedby", or null if there is none
+     */
+    static String findDescribedBy(List<String> headers) {
+        if (headers == null) {
+            return null;
+        }
+        for (String header : headers) {
+            int start = header.indexOf('<');
+            while (start >= 0) {
+                int end = header.indexOf('>', start);
+                if (end < 0) {
+                    break;
+                }
+                int next = header.indexOf('<', end);
+                String parameters = next < 0 ? header.substring(end + 1) : header.substring(end + 1, next);
+                for (String parameter : parameters.split(";")) {
+                    int equals = parameter.indexOf('=');
+                    if (equals < 0 || !parameter.substring(0, equals).trim().equalsIgnoreCase("rel")) {
+                        continue;
+                    }
+                    String value = parameter.substring(equals + 1).trim();
+                    if (value.endsWith(",")) {
+                        value = value.substring(0, value.length() - 1).trim();
+                    }
+                    if (value.length() > 1 && value.startsWith("\"") && value.endsWith("\"")) {
+                        value = value.substring(1, value.length() - 1);
+                    }
+                    for (String rel : value.split(" ")) {
+                        if (rel.equalsIgnoreCase("describedby")) {
+                            return header.substring(start + 1, end).trim();
+                        }
+                    }
+                }
+                start = next;
+            }
+        }
+        return null;
+    }
+
+    private static WebApplicationException badRequest(String message) {
+        return new WebApplicationException(Response.status(Response.Status.BAD_REQUEST).entity(message).type("text/plain").build());
+    }
+}
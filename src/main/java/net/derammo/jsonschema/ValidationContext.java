@@ -0,0 +1,244 @@
+/*
+ * Copyright 2011 Ammo Goettsch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package net.derammo.jsonschema;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.codehaus.jackson.JsonLocation;
+import org.codehaus.jackson.JsonParser;
+
+/**
+ * Per-thread state of a validation run: the path to the value being checked, the properties seen in
+ * the objects along it, and the errors found so far.  Instances are reused, so a successful validation
+ * does not allocate.
+ */
+final class ValidationContext {
+    private static final ThreadLocal<ValidationContext> CURRENT = new ThreadLocal<ValidationContext>() {
+        @Override
+        protected ValidationContext initialValue() {
+            return new ValidationContext();
+        }
+    };
+
+    // path into the instance; a null name means the segment is the array index at the same depth
+    private String[] names = new String[16];
+    private int[] indices = new int[16];
+    private int depth;
+    // properties seen in the object at each depth, as a set of the PropertyIndex of its schema
+    private long[][] seen = new long[16][];
+    // hashes and table of the items of an array being checked for duplicates
+    private int[] items = new int[64];
+
+    // greater than zero while trying alternatives of a union, where errors are not reported
+    private int probing;
+    private boolean inUse;
+    private ArrayList<ValidationError> errors;
+    // number of errors after which validation stops
+    private int limit = Integer.MAX_VALUE;
+    private boolean full;
+    // set while probing for a listener, which is told the keyword and path of the first violation
+    private boolean keepingFirst;
+
+    // source of the instance when validating a token stream; the location is only read when an error is found
+    private JsonParser parser;
+    private JsonLocation location;
+
+    /**
+     * @return the context of the current thread, or a new one if that is already in use by an enclosing validation
+     */
+    static ValidationContext acquire() {
+        ValidationContext context = CURRENT.get();
+        if (context.inUse) {
+            context = new ValidationContext();
+        }
+        context.inUse = true;
+        return context;
+    }
+
+    /**
+     * @return the errors collected since {@link #acquire()}, after which this context may be reused
+     */
+    List<ValidationError> release() {
+        List<ValidationError> result;
+        if (errors == null) {
+            result = Collections.emptyList();
+        } else {
+            result = errors;
+            errors = null;
+        }
+        depth = 0;
+        probing = 0;
+        limit = Integer.MAX_VALUE;
+        full = false;
+        keepingFirst = false;
+        parser = null;
+        location = null;
+        inUse = false;
+        return result;
+    }
+
+    void pushName(String name) {
+        ensureCapacity();
+        names[depth] = name;
+        depth++;
+    }
+
+    void pushIndex(int index) {
+        ensureCapacity();
+        names[depth] = null;
+        indices[depth] = index;
+        depth++;
+    }
+
+    void pop() {
+        depth--;
+    }
+
+    /**
+     * @return an empty set for the properties of the object at the current path, which is reused for the next
+     *         object at the same depth
+     */
+    long[] propertySet(PropertyIndex index) {
+        if (depth >= seen.length) {
+            seen = Arrays.copyOf(seen, depth * 2);
+        }
+        long[] set = seen[depth];
+        if (set != null && index.fits(set)) {
+            index.clear(set);
+        } else {
+            set = index.newSet();
+            seen[depth] = set;
+        }
+        return set;
+    }
+
+    /**
+     * @return an array of at least the given length, shared by all checks of this context that do not nest
+     */
+    int[] itemScratch(int length) {
+        if (items.length < length) {
+            items = new int[Math.max(length, items.length * 2)];
+        }
+        return items;
+    }
+
+    private void ensureCapacity() {
+        if (depth == names.length) {
+            String[] newNames = new String[depth * 2];
+            System.arraycopy(names, 0, newNames, 0, depth);
+            names = newNames;
+            int[] newIndices = new int[depth * 2];
+            System.arraycopy(indices, 0, newIndices, 0, depth);
+            indices = newIndices;
+        }
+    }
+
+    void setParser(JsonParser parser) {
+        this.parser = parser;
+    }
+
+    /**
+     * Report errors at a fixed location instead of the current token, while validating a buffered value
+     * @param location start of the buffered value, or null to use the parser again
+     */
+    void setLocation(JsonLocation location) {
+        this.location = location;
+    }
+
+    /**
+     * Stop collecting once this many errors have been found, after which the validation ends as if probing
+     */
+    void setLimit(int limit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("at least one error must be collected");
+        }
+        this.limit = limit;
+    }
+
+    void beginProbe() {
+        probing++;
+    }
+
+    void endProbe() {
+        probing--;
+    }
+
+    /**
+     * Probe the whole instance, keeping the first violation without its message, so that a listener can
+     * count it.  The violation is returned by {@link #release()}.
+     */
+    void beginFirstProbe() {
+        probing++;
+        keepingFirst = true;
+    }
+
+    /**
+     * @return true if errors are being reported, false if the caller only needs to know whether the instance is
+     *         valid, or enough errors have been found
+     */
+    boolean isCollecting() {
+        return probing == 0 && !full;
+    }
+
+    /**
+     * Called on a violation of a keyword, before its message is built
+     * @return true if the message should be built and passed to {@link #collect(String, String)}, false if
+     *         validation may stop
+     */
+    boolean isCollecting(String keyword) {
+        if (isCollecting()) {
+            return true;
+        }
+        // violations of the alternatives of a union are not violations of the instance
+        if (keepingFirst && probing == 1 && errors == null) {
+            add(keyword, null);
+        }
+        return false;
+    }
+
+    /**
+     * Record a violation at the current path.  Callers that build the message check {@link #isCollecting(String)}
+     * first, so that rejecting an instance allocates nothing when errors are not wanted.
+     * @return true if validation should continue to look for further errors
+     */
+    boolean collect(String keyword, String message) {
+        if (!isCollecting(keyword)) {
+            return false;
+        }
+        add(keyword, message);
+        if (errors.size() >= limit) {
+            full = true;
+            return false;
+        }
+        return true;
+    }
+
+    private void add(String keyword, String message) {
+        if (errors == null) {
+            errors = new ArrayList<ValidationError>();
+        }
+        JsonLocation errorLocation = location;
+        if (errorLocation == null && parser != null) {
+            errorLocation = parser.getTokenLocation();
+        }
+        // the path is kept as segments, and only rendered if it is asked for
+        errors.add(new ValidationError(Arrays.copyOf(names, depth), Arrays.copyOf(indices, depth), keyword, message,
+                errorLocation));
+    }
+}
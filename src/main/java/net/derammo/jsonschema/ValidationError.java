@@ -0,0 +1,134 @@
+/*
+ * Copyright 2011 Ammo Goettsch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package net.derammo.jsonschema;
+
+import org.codehaus.jackson.JsonLocation;
+
+/**
+ * A single violation found while validating an instance against a compiled schema.  The location of the
+ * value in the instance is kept as the property names and array indices leading to it, and is only
+ * rendered as a JSON pointer when it is asked for.
+ */
+public final class ValidationError {
+    private static final String[] NO_NAMES = new String[0];
+    private static final int[] NO_INDICES = new int[0];
+
+    // one segment per level; a null name means the segment is the index at the same level
+    private final String[] names;
+    private final int[] indices;
+    // rendered on first use; a race only renders it twice
+    private String path;
+    private final String keyword;
+    private final String message;
+    private final JsonLocation location;
+
+    ValidationError(String[] names, int[] indices, String keyword, String message, JsonLocation location) {
+        this.names = names;
+        this.indices = indices;
+        this.keyword = keyword;
+        this.message = message;
+        this.location = location;
+    }
+
+    /**
+     * @param path JSON pointer of the value, which is kept as it is
+     */
+    ValidationError(String path, String keyword, String message, JsonLocation location) {
+        this(NO_NAMES, NO_INDICES, keyword, message, location);
+        this.path = path;
+    }
+
+    /**
+     * @return a copy of this error at another location in the source
+     */
+    ValidationError withLocation(JsonLocation location) {
+        ValidationError copy = new ValidationError(names, indices, keyword, message, location);
+        copy.path = path;
+        return copy;
+    }
+
+    /**
+     * @return location of the offending value in the instance, as a JSON pointer ("" is the instance itself)
+     */
+    public String getPath() {
+        String result = path;
+        if (result == null) {
+            result = render();
+            path = result;
+        }
+        return result;
+    }
+
+
+    /**
+     * @return name of the schema attribute that failed, such as "maximum" or "required"
+     */
+    public String getKeyword() {
+        return keyword;
+    }
+
+    /**
+     * @return description of the violation, or null for the first violation of an instance checked with
+     *         one of the isValid methods, which is only reported to a {@link ValidationListener}
+     */
+    public String getMessage() {
+        return message;
+    }
+
+    /**
+     * @return position of the offending value in the source document, or null if the instance was not read from a parser
+     */
+    public JsonLocation getLocation() {
+        return location;
+    }
+
+    private String render() {
+        if (names.length == 0) {
+            return "";
+        }
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < names.length; i++) {
+            builder.append('/');
+            if (names[i] == null) {
+                builder.append(indices[i]);
+            } else {
+                appendEscaped(builder, names[i]);
+            }
+        }
+        return builder.toString();
+    }
+
+    static void appendEscaped(StringBuilder builder, String name) {
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c == '~') {
+                builder.append("~0");
+            } else if (c == '/') {
+                builder.append("~1");
+            } else {
+                builder.append(c);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        if (location != null) {
+            return "\"" + getPath() + "\" (line " + location.getLineNr() + ", column " + location.getColumnNr() + "): " + keyword + ": " + message;
+        }
+        return "\"" + getPath() + "\": " + keyword + ": " + message;
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright 2011 Ammo Goettsch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package net.derammo.jsonschema;
+
+import java.util.List;
+
+import org.codehaus.jackson.map.JsonMappingException;
+
+/**
+ * Thrown by {@link SchemaBinder} when the value it reads is not valid against its schema
+ */
+public class ValidationException extends JsonMappingException {
+    private static final long serialVersionUID = 1L;
+
+    private final List<ValidationError> errors;
+
+    ValidationException(List<ValidationError> errors) {
+        super(describe(errors), errors.get(0).getLocation());
+        this.errors = errors;
+    }
+
+    /**
+     * @return the violations found, in the order they were read; never empty
+     */
+    public List<ValidationError> getErrors() {
+        return errors;
+    }
+
+    private static String describe(List<ValidationError> errors) {
+        ValidationError first = errors.get(0);
+        String description = "\"" + first.getPath() + "\": " + first.getKeyword() + ": " + first.getMessage();
+        if (errors.size() > 1) {
+            description += " (and " + (errors.size() - 1) + " more)";
+        }
+        return description;
+    }
+}
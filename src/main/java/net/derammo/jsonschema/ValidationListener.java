@@ -0,0 +1,48 @@
+/*
+ * Copyright 2011 Ammo Goettsch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package net.derammo.jsonschema;
+
+/**
+ * Receives the outcome of each validation done by a validator instrumented with
+ * {@link SchemaValidator#instrument(String, ValidationListener)}.  Methods are called on the validating
+ * thread, so implementations must be thread safe and should return quickly.
+ *
+ * @see ValidationMetrics
+ */
+public interface ValidationListener {
+    /**
+     * Called once for each validator instrumented to report to this listener
+     * @param schema name of the schema the validator was compiled from, such as its URI
+     * @param referenceDepth length of the longest chain of '$ref' that was followed while compiling it
+     */
+    void instrumented(String schema, int referenceDepth);
+
+    /**
+     * Called after each instance has been validated.  For token streams, the time includes reading the tokens.
+     * @param schema name of the schema
+     * @param valid true if the instance is valid
+     * @param nanos time taken to validate the instance
+     */
+    void validated(String schema, boolean valid, long nanos);
+
+    /**
+     * Called for each error reported to the caller.  Instances checked with one of the isValid methods
+     * stop at the first violation, which is reported without a message.
+     * @param schema name of the schema
+     * @param error the violation
+     */
+    void failed(String schema, ValidationError error);
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright 2011 Ammo Goettsch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package net.derammo.jsonschema;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * A {@link ValidationListener} that keeps counts and latency histograms per schema, and counts of
+ * failures per keyword.  Counters are striped and histograms are lock-free, so many threads may
+ * validate at once.  The numbers can be read directly, or through JMX after {@link #register(String)}.
+ *
+ * <pre>
+ * ValidationMetrics metrics = new ValidationMetrics();
+ * metrics.register("orders");
+ * registry.setListener(metrics);
+ * </pre>
+ */
+public final class ValidationMetrics implements ValidationListener, ValidationMetricsMXBean {
+    public static final String DOMAIN = "net.derammo.jsonschema";
+
+    private static final class Counters {
+        final LongAdder calls = new LongAdder();
+        final LongAdder rejections = new LongAdder();
+        final LatencyHistogram latency = new LatencyHistogram();
+    }
+
+    private final ConcurrentHashMap<String, Counters> schemas = new ConcurrentHashMap<String, Counters>();
+    private final ConcurrentHashMap<String, LongAdder> keywords = new ConcurrentHashMap<String, LongAdder>();
+    private final AtomicInteger deepestReferenceChain = new AtomicInteger();
+
+    /**
+     * Register this object with the platform MBean server, as
+     * net.derammo.jsonschema:type=ValidationMetrics,name=<i>name</i>
+     * @param name distinguishes this object from others registered by the application
+     * @return the name it was registered with
+     * @throws JMException if the name is already registered
+     */
+    public ObjectName register(String name) throws JMException {
+        return register(ManagementFactory.getPlatformMBeanServer(), name);
+    }
+
+    /**
+     * @see #register(String)
+     */
+    public ObjectName register(MBeanServer server, String name) throws JMException {
+        ObjectName objectName = new ObjectName(DOMAIN + ":type=ValidationMetrics,name=" + ObjectName.quote(name));
+        server.registerMBean(this, objectName);
+        return objectName;
+    }
+
+    public void instrumented(String schema, int referenceDepth) {
+        int deepest = deepestReferenceChain.get();
+        while (referenceDepth > deepest && !deepestReferenceChain.compareAndSet(deepest, referenceDepth)) {
+            deepest = deepestReferenceChain.get();
+        }
+    }
+
+    public void validated(String schema, boolean valid, long nanos) {
+        Counters counters = counters(schema);
+        counters.calls.increment();
+        if (!valid) {
+            counters.rejections.increment();
+        }
+        counters.latency.record(nanos);
+    }
+
+    public void failed(String schema, ValidationError error) {
+        LongAdder count = keywords.get(error.getKeyword());
+        if (count == null) {
+            LongAdder created = new LongAdder();
+            count = keywords.putIfAbsent(error.getKeyword(), created);
+            if (count == null) {
+                count = created;
+            }
+        }
+        count.increment();
+    }
+
+    /**
+     * @param schema name of a schema
+     * @return the histogram of validation times of the schema, or null if no instance was validated against it
+     */
+    public LatencyHistogram getLatency(String schema) {
+        Counters counters = schemas.get(schema);
+        return counters == null ? null : counters.latency;
+    }
+
+    public Map<String, Long> getCalls() {
+        TreeMap<String, Long> result = new TreeMap<String, Long>();
+        for (Map.Entry<String, Counters> entry : schemas.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().calls.sum());
+        }
+        return result;
+    }
+
+    public Map<String, Long> getRejections() {
+        TreeMap<String, Long> result = new TreeMap<String, Long>();
+        for (Map.Entry<String, Counters> entry : schemas.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().rejections.sum());
+        }
+        return result;
+    }
+
+    public Map<String, Long> getKeywordFailures() {
+        TreeMap<String, Long> result = new TreeMap<String, Long>();
+        for (Map.Entry<String, LongAdder> entry : keywords.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().sum());
+        }
+        return result;
+    }
+
+    public Map<String, Long> getMedianNanos() {
+        return percentiles(50);
+    }
+
+    public Map<String, Long> getPercentile99Nanos() {
+        return percentiles(99);
+    }
+
+    public Map<String, Long> getMaximumNanos() {
+        TreeMap<String, Long> result = new TreeMap<String, Long>();
+        for (Map.Entry<String, Counters> entry : schemas.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().latency.getMaximum());
+        }
+        return result;
+    }
+
+    public int getDeepestReferenceChain() {
+        return deepestReferenceChain.get();
+    }
+
+    public void reset() {
+        for (Counters counters : schemas.values()) {
+            counters.calls.reset();
+            counters.rejections.reset();
+            counters.latency.reset();
+        }
+        for (LongAdder count : keywords.values()) {
+            count.reset();
+        }
+        deepestReferenceChain.set(0);
+    }
+
+    private Map<String, Long> percentiles(double percentile) {
+        TreeMap<String, Long> result = new TreeMap<String, Long>();
+        for (Map.Entry<String, Counters> entry : schemas.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().latency.getPercentile(percentile));
+        }
+        return result;
+    }
+
+    private Counters counters(String schema) {
+        Counters counters = schemas.get(schema);
+        if (counters == null) {
+            Counters created = new Counters();
+            counters = schemas.putIfAbsent(schema, created);
+            if (counters == null) {
+                counters = created;
+            }
+        }
+        return counters;
+    }
+}
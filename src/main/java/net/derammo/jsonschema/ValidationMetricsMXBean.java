@@ -0,0 +1,64 @@
+/*
+ * Copyright 2011 Ammo Goettsch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package net.derammo.jsonschema;
+
+import java.util.Map;
+
+/**
+ * Management interface of {@link ValidationMetrics}.  Maps are keyed by schema name, or by keyword.
+ */
+public interface ValidationMetricsMXBean {
+    /**
+     * @return number of instances validated against each schema
+     */
+    Map<String, Long> getCalls();
+
+    /**
+     * @return number of instances found invalid by each schema
+     */
+    Map<String, Long> getRejections();
+
+    /**
+     * @return number of errors reported for each keyword, such as "pattern" or "required", over all schemas
+     */
+    Map<String, Long> getKeywordFailures();
+
+    /**
+     * @return median time to validate an instance against each schema, in nanoseconds
+     */
+    Map<String, Long> getMedianNanos();
+
+    /**
+     * @return time within which 99 percent of instances were validated against each schema, in nanoseconds
+     */
+    Map<String, Long> getPercentile99Nanos();
+
+    /**
+     * @return longest time to validate an instance against each schema, in nanoseconds
+     */
+    Map<String, Long> getMaximumNanos();
+
+    /**
+     * @return length of the longest chain of '$ref' followed to compile any of the schemas
+     */
+    int getDeepestReferenceChain();
+
+    /**
+     * Forget all counts and times, and the longest reference chain, which is only reported again by
+     * validators instrumented afterwards.
+     */
+    void reset();
+}
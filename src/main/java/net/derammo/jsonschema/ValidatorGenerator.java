@@ -0,0 +1,596 @@
+/*
+ * Copyright 2011 Ammo Goettsch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package net.derammo.jsonschema;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+import javax.tools.DiagnosticCollector;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import org.codehaus.jackson.JsonNode;
+
+/**
+ * Generates the Java source of a {@link GeneratedValidator} for a compiled schema, and compiles it
+ * with the system Java compiler.  Every node of the schema becomes a method whose checks are written
+ * out with the bounds of the node as constants, and the properties of an object are found by a
+ * switch on the field name.  Only 'enum', 'uniqueItems', 'pattern' and 'patternProperties' are still
+ * checked by the compiled node.
+ *
+ * The source only depends on the checks of the schema, so classes are cached by a hash of the source
+ * and shared by equal schemas.
+ */
+final class ValidatorGenerator {
+    private static final String PACKAGE = ValidatorGenerator.class.getPackage().getName();
+    private static final String CLASS_NAME = "%CLASS%";
+    private static final String FAIL = "{ valid = false; if (!collecting(c)) return false; }";
+    private static final int[] KINDS = { SimpleTypeSet.STRING, SimpleTypeSet.NUMBER, SimpleTypeSet.INTEGER,
+            SimpleTypeSet.BOOLEAN, SimpleTypeSet.OBJECT, SimpleTypeSet.ARRAY, SimpleTypeSet.NULL };
+
+    private static final LruCache<String, Class<? extends GeneratedValidator>> CLASSES = new LruCache<String, Class<? extends GeneratedValidator>>(256);
+
+    private final List<CompiledSchema> nodes = new ArrayList<CompiledSchema>();
+    private final IdentityHashMap<CompiledSchema, Integer> numbers = new IdentityHashMap<CompiledSchema, Integer>();
+    private final StringBuilder out = new StringBuilder();
+
+    private ValidatorGenerator() {
+    }
+
+    /**
+     * @return true if a Java compiler is available, which is not the case when running on a JRE
+     */
+    static boolean isAvailable() {
+        return ToolProvider.getSystemJavaCompiler() != null;
+    }
+
+    /**
+     * @return a new instance of the class generated for the schema
+     * @throws IllegalStateException if no Java compiler is available or the class cannot be compiled
+     */
+    static GeneratedValidator generate(CompiledSchema root) {
+        ValidatorGenerator generator = new ValidatorGenerator();
+        String source = generator.write(root);
+        String hash = hash(source);
+        Class<? extends GeneratedValidator> type = CLASSES.get(hash);
+        if (type == null) {
+            String simpleName = "GeneratedValidator_" + hash.substring(0, 16);
+            type = compile(PACKAGE + "." + simpleName, source.replace(CLASS_NAME, simpleName));
+            CLASSES.put(hash, type);
+        }
+        GeneratedValidator validator;
+        try {
+            validator = type.newInstance();
+        } catch (InstantiationException e) {
+            throw new IllegalStateException(e);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+        validator.setNodes(generator.nodes.toArray(new CompiledSchema[generator.nodes.size()]));
+        return validator;
+    }
+
+    private String write(CompiledSchema root) {
+        out.append("package ").append(PACKAGE).append(";\n\n");
+        out.append("import java.util.Iterator;\n");
+        out.append("import java.util.Map;\n\n");
+        out.append("import org.codehaus.jackson.JsonNode;\n");
+        out.append("import org.codehaus.jackson.JsonParser;\n\n");
+        out.append("public final class ").append(CLASS_NAME).append(" extends GeneratedValidator {\n");
+        out.append("    protected boolean validate(JsonNode n, Object c) {\n");
+        out.append("        return v").append(number(root)).append("(n, c);\n");
+        out.append("    }\n");
+        // nodes are numbered as they are first referenced, so the list grows while it is written
+        for (int i = 0; i < nodes.size(); i++) {
+            writeNode(i, nodes.get(i));
+        }
+        out.append("}\n");
+        return out.toString();
+    }
+
+    private int number(CompiledSchema node) {
+        Integer number = numbers.get(node);
+        if (number == null) {
+            number = nodes.size();
+            numbers.put(node, number);
+            nodes.add(node);
+        }
+        return number;
+    }
+
+    private void writeNode(int i, CompiledSchema node) {
+        out.append("\n    private boolean v").append(i).append("(JsonNode n, Object c) {\n");
+        out.append("        int k = kind(n);\n");
+        out.append("        boolean valid = true;\n");
+        if (!node.types.isAny()) {
+            out.append("        if ((k & ").append(kinds(node.types)).append(") == 0");
+            if (node.typeSchemas.length > 0) {
+                out.append(" && !t").append(i).append("(n, c)");
+            }
+            out.append(") { valid = false; if (!collecting(c, \"type\") || !collect(c, \"type\", kindName(k) + \" value is not allowed\")) return false; }\n");
+        }
+        if (!node.disallowedTypes.isEmpty() || node.disallowedSchemas.length > 0) {
+            out.append("        if (");
+            if (!node.disallowedTypes.isEmpty()) {
+                out.append("(k & ").append(kinds(node.disallowedTypes)).append(") != 0");
+                if (node.disallowedSchemas.length > 0) {
+                    out.append(" || ");
+                }
+            }
+            if (node.disallowedSchemas.length > 0) {
+                out.append("d").append(i).append("(n, c)");
+            }
+            out.append(") { valid = false; if (!collecting(c, \"disallow\") || !collect(c, \"disallow\", kindName(k) + \" value is disallowed\")) return false; }\n");
+        }
+        if (node.enumeration != null) {
+            out.append("        if (!enumerated(").append(i).append(", n, c)) ").append(FAIL).append('\n');
+        }
+        if (node.checksNumbers || node.checksStrings || node.checksArrays || node.checksObjects) {
+            out.append("        switch (k) {\n");
+            if (node.checksNumbers) {
+                out.append("        case ").append(SimpleTypeSet.INTEGER | SimpleTypeSet.NUMBER).append(":\n");
+                out.append("            if (n.getNumberType() == JsonParser.NumberType.BIG_INTEGER) {\n");
+                out.append("                if (!r").append(i).append("(n.getDoubleValue(), c)) ").append(FAIL).append('\n');
+                out.append("            } else if (!l").append(i).append("(n.getLongValue(), c)) ").append(FAIL).append('\n');
+                out.append("            break;\n");
+                out.append("        case ").append(SimpleTypeSet.NUMBER).append(":\n");
+                out.append("            if (!r").append(i).append("(n.getDoubleValue(), c)) ").append(FAIL).append('\n');
+                out.append("            break;\n");
+            }
+            if (node.checksStrings) {
+                writeCase(i, SimpleTypeSet.STRING, "s", "n.getTextValue()");
+            }
+            if (node.checksArrays) {
+                writeCase(i, SimpleTypeSet.ARRAY, "a", "n");
+            }
+            if (node.checksObjects) {
+                writeCase(i, SimpleTypeSet.OBJECT, "o", "n");
+            }
+            out.append("        default:\n");
+            out.append("        }\n");
+        }
+        for (CompiledSchema schema : node.extendsSchemas) {
+            out.append("        if (!v").append(number(schema)).append("(n, c)) ").append(FAIL).append('\n');
+        }
+        out.append("        return valid;\n");
+        out.append("    }\n");
+
+        if (node.typeSchemas.length > 0) {
+            writeAlternatives("t", i, node.typeSchemas);
+        }
+        if (node.disallowedSchemas.length > 0) {
+            writeAlternatives("d", i, node.disallowedSchemas);
+        }
+        if (node.checksNumbers) {
+            writeLong(i, node);
+            writeDouble(i, node);
+        }
+        if (node.checksStrings) {
+            writeString(i, node);
+        }
+        if (node.checksArrays) {
+            writeArray(i, node);
+        }
+        if (node.checksObjects) {
+            writeObject(i, node);
+        }
+    }
+
+    private void writeCase(int i, int kind, String method, String argument) {
+        out.append("        case ").append(kind).append(":\n");
+        out.append("            if (!").append(method).append(i).append('(').append(argument).append(", c)) ").append(FAIL).append('\n');
+        out.append("            break;\n");
+    }
+
+    /**
+     * Write a method that tells whether any of the schemas matches, without reporting errors
+     */
+    private void writeAlternatives(String prefix, int i, CompiledSchema[] schemas) {
+        out.append("\n    private boolean ").append(prefix).append(i).append("(JsonNode n, Object c) {\n");
+        out.append("        boolean match;\n");
+        for (CompiledSchema schema : schemas) {
+            out.append("        beginProbe(c);\n");
+            out.append("        match = v").append(number(schema)).append("(n, c);\n");
+            out.append("        endProbe(c);\n");
+            out.append("        if (match) return true;\n");
+        }
+        out.append("        return false;\n");
+        out.append("    }\n");
+    }
+
+    /**
+     * @see CompiledSchema#checkLong(long, ValidationContext)
+     */
+    private void writeLong(int i, CompiledSchema node) {
+        out.append("\n    private boolean l").append(i).append("(long x, Object c) {\n");
+        out.append("        boolean valid = true;\n");
+        if (node.hasMinimum) {
+            out.append("        if (x < ").append(node.lowest).append("L) ");
+            report("minimum", "x + " + literal(" is less than " + (node.exclusiveMinimum ? "or equal to " : "") + "the minimum of " + node.minimum));
+        }
+        if (node.hasMaximum) {
+            out.append("        if (x > ").append(node.highest).append("L) ");
+            report("maximum", "x + " + literal(" is greater than " + (node.exclusiveMaximum ? "or equal to " : "") + "the maximum of " + node.maximum));
+        }
+        if (node.divisibleBy != 0) {
+            out.append("        if (x % ").append(node.divisibleBy).append("L != 0) ");
+            report("divisibleBy", "x + " + literal(" is not divisible by " + node.divisibleBy));
+        }
+        out.append("        return valid;\n");
+        out.append("    }\n");
+    }
+
+    /**
+     * @see CompiledSchema#checkDouble(double, ValidationContext)
+     */
+    private void writeDouble(int i, CompiledSchema node) {
+        out.append("\n    private boolean r").append(i).append("(double x, Object c) {\n");
+        out.append("        boolean valid = true;\n");
+        if (node.hasMinimum) {
+            out.append("        if (x < ").append(node.minimum).append('L');
+            if (node.exclusiveMinimum) {
+                out.append(" || x == ").append(node.minimum).append('L');
+            }
+            out.append(") ");
+            report("minimum", "x + " + literal(" is less than " + (node.exclusiveMinimum ? "or equal to " : "") + "the minimum of " + node.minimum));
+        }
+        if (node.hasMaximum) {
+            out.append("        if (x > ").append(node.maximum).append('L');
+            if (node.exclusiveMaximum) {
+                out.append(" || x == ").append(node.maximum).append('L');
+            }
+            out.append(") ");
+            report("maximum", "x + " + literal(" is greater than " + (node.exclusiveMaximum ? "or equal to " : "") + "the maximum of " + node.maximum));
+        }
+        if (node.divisibleBy != 0) {
+            out.append("        if (x % ").append(node.divisibleBy).append("L != 0) ");
+            report("divisibleBy", "x + " + literal(" is not divisible by " + node.divisibleBy));
+        }
+        out.append("        return valid;\n");
+        out.append("    }\n");
+    }
+
+    /**
+     * @see CompiledSchema#checkString(String, ValidationContext)
+     */
+    private void writeString(int i, CompiledSchema node) {
+        out.append("\n    private boolean s").append(i).append("(String x, Object c) {\n");
+        out.append("        boolean valid = true;\n");
+        if (node.minLength > 0 || node.maxLength != Integer.MAX_VALUE) {
+            out.append("        int length = x.codePointCount(0, x.length());\n");
+            if (node.minLength > 0) {
+                out.append("        if (length < ").append(node.minLength).append(") ");
+                report("minLength", "\"length \" + length + " + literal(" is less than the minimum of " + node.minLength));
+            }
+            if (node.maxLength != Integer.MAX_VALUE) {
+                out.append("        if (length > ").append(node.maxLength).append(") ");
+                report("maxlength", "\"length \" + length + " + literal(" is greater than the maximum of " + node.maxLength));
+            }
+        }
+        if (node.pattern != null) {
+            out.append("        if (!matches(").append(i).append(", x)) ");
+            report("pattern", literal("value does not match the pattern " + node.pattern.pattern()));
+        }
+        out.append("        return valid;\n");
+        out.append("    }\n");
+    }
+
+    /**
+     * @see CompiledSchema#checkItemCount(int, ValidationContext)
+     */
+    private void writeArray(int i, CompiledSchema node) {
+        out.append("\n    private boolean a").append(i).append("(JsonNode n, Object c) {\n");
+        out.append("        int size = n.size();\n");
+        out.append("        boolean valid = true;\n");
+        if (node.minItems > 0) {
+            out.append("        if (size < ").append(node.minItems).append(") ");
+            report("minItems", "size + " + literal(" items is less than the minimum of " + node.minItems));
+        }
+        if (node.maxItems != Integer.MAX_VALUE) {
+            out.append("        if (size > ").append(node.maxItems).append(") ");
+            report("maxItems", "size + " + literal(" items is greater than the maximum of " + node.maxItems));
+        }
+        if (node.additionalItemsForbidden && node.items == null) {
+            out.append("        if (size > ").append(node.tupleItems.length).append(") ");
+            report("additionalItems", literal("no more than " + node.tupleItems.length + " items are allowed"));
+        }
+        if (node.uniqueItems) {
+            out.append("        if (!unique(").append(i).append(", n, c)) ").append(FAIL).append('\n');
+        }
+        if (node.items != null) {
+            writeItems("0", node.items);
+        } else {
+            for (int t = 0; t < node.tupleItems.length; t++) {
+                out.append("        if (size > ").append(t).append(") {\n");
+                out.append("            pushIndex(c, ").append(t).append(");\n");
+                out.append("            boolean item = v").append(number(node.tupleItems[t])).append("(n.get(").append(t).append("), c);\n");
+                out.append("            pop(c);\n");
+                out.append("            if (!item) ").append(FAIL).append('\n');
+                out.append("        }\n");
+            }
+            if (node.additionalItems != null) {
+                writeItems(Integer.toString(node.tupleItems.length), node.additionalItems);
+            }
+        }
+        out.append("        return valid;\n");
+        out.append("    }\n");
+    }
+
+    private void writeItems(String from, CompiledSchema schema) {
+        out.append("        for (int i = ").append(from).append("; i < size; i++) {\n");
+        out.append("            pushIndex(c, i);\n");
+        out.append("            boolean item = v").append(number(schema)).append("(n.get(i), c);\n");
+        out.append("            pop(c);\n");
+        out.append("            if (!item) ").append(FAIL).append('\n');
+        out.append("        }\n");
+    }
+
+    /**
+     * Like the compiled node, this reports violations of declared properties in the order of the
+     * instance, followed by missing required properties.
+     */
+    private void writeObject(int i, CompiledSchema node) {
+        out.append("\n    private boolean o").append(i).append("(JsonNode n, Object c) {\n");
+        out.append("        boolean valid = true;\n");
+        for (int p = 0; p < node.propertyNames.length; p++) {
+            if (node.propertyIndex.isRequired(p)) {
+                out.append("        boolean seen").append(p).append(" = false;\n");
+            }
+        }
+        if (node.propertyNames.length > 0 || !node.additionalProperties) {
+            out.append("        Iterator<Map.Entry<String, JsonNode>> fields = n.getFields();\n");
+            out.append("        while (fields.hasNext()) {\n");
+            out.append("            Map.Entry<String, JsonNode> field = fields.next();\n");
+            out.append("            String name = field.getKey();\n");
+            out.append("            switch (name) {\n");
+            for (int p = 0; p < node.propertyNames.length; p++) {
+                out.append("            case ").append(literal(node.propertyNames[p])).append(": {\n");
+                if (node.propertyIndex.isRequired(p)) {
+                    out.append("                seen").append(p).append(" = true;\n");
+                }
+                out.append("                pushName(c, name);\n");
+                out.append("                boolean property = v").append(number(node.propertySchemas[p])).append("(field.getValue(), c);\n");
+                out.append("                pop(c);\n");
+                out.append("                if (!property) ").append(FAIL).append('\n');
+                out.append("                break;\n");
+                out.append("            }\n");
+            }
+            out.append("            default:\n");
+            if (!node.additionalProperties) {
+                String indent = "                ";
+                if (node.propertyPatterns != null) {
+                    out.append(indent).append("if (!matchesPropertyPattern(").append(i).append(", name)) {\n");
+                    indent += "    ";
+                }
+                out.append(indent).append("valid = false;\n");
+                out.append(indent).append("pushName(c, name);\n");
+                out.append(indent).append("boolean reported = collect(c, \"additionalProperties\", \"property is not declared\");\n");
+                out.append(indent).append("pop(c);\n");
+                out.append(indent).append("if (!reported) return false;\n");
+                if (node.propertyPatterns != null) {
+                    out.append("                }\n");
+                }
+            }
+            out.append("            }\n");
+            out.append("        }\n");
+        }
+        for (int p = 0; p < node.propertyNames.length; p++) {
+            if (node.propertyIndex.isRequired(p)) {
+                out.append("        if (!seen").append(p).append(") {\n");
+                writeNamedError("            ", literal(node.propertyNames[p]), "required", literal("property is required"));
+                out.append("        }\n");
+            }
+        }
+        // see CompiledSchema.checkDependency
+        for (int d = 0; d < node.dependencyNames.length; d++) {
+            out.append("        if (n.get(").append(literal(node.dependencyNames[d])).append(") != null) {\n");
+            out.append("            boolean dependency = true;\n");
+            for (String name : node.dependencyProperties[d]) {
+                out.append("            if (n.get(").append(literal(name)).append(") == null) { dependency = false; if (!collect(c, \"dependencies\", ");
+                out.append(literal("property " + node.dependencyNames[d] + " requires property " + name)).append(")) return false; }\n");
+            }
+            if (node.dependencySchemas[d] != null) {
+                out.append("            if (!v").append(number(node.dependencySchemas[d])).append("(n, c)) dependency = false;\n");
+            }
+            out.append("            if (!dependency) ").append(FAIL).append('\n');
+            out.append("        }\n");
+        }
+        out.append("        return valid;\n");
+        out.append("    }\n");
+    }
+
+    private void writeNamedError(String indent, String name, String keyword, String message) {
+        out.append(indent).append("valid = false;\n");
+        out.append(indent).append("pushName(c, ").append(name).append(");\n");
+        out.append(indent).append("boolean reported = collect(c, \"").append(keyword).append("\", ").append(message).append(");\n");
+        out.append(indent).append("pop(c);\n");
+        out.append(indent).append("if (!reported) return false;\n");
+    }
+
+    /**
+     * Finish an if statement that reports a violation at the current path.  The message is only built if
+     * the context is collecting errors.
+     */
+    private void report(String keyword, String message) {
+        out.append("{ valid = false; if (!collecting(c, \"").append(keyword).append("\") || !collect(c, \"").append(keyword).append("\", ").append(message).append(")) return false; }\n");
+    }
+
+    /**
+     * @return mask of the kinds of values matched by the set, as in {@link SimpleTypeSet#kindOf(JsonNode)}
+     */
+    private static int kinds(SimpleTypeSet types) {
+        int mask = 0;
+        for (int kind : KINDS) {
+            if (types.matchesKind(kind)) {
+                mask |= kind;
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * @return the text as a Java string literal, with all characters that are not printable ASCII escaped
+     */
+    static String literal(String text) {
+        StringBuilder builder = new StringBuilder(text.length() + 2);
+        builder.append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"' || c == '\\') {
+                builder.append('\\').append(c);
+            } else if (c < 0x20) {
+                // not a unicode escape, which would be replaced by a line break before the literal is read
+                builder.append(String.format("\\%03o", (int) c));
+            } else if (c > 0x7e) {
+                builder.append(String.format("\\u%04x", (int) c));
+            } else {
+                builder.append(c);
+            }
+        }
+        return builder.append('"').toString();
+    }
+
+    private static String hash(String source) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(source.getBytes("UTF-8"));
+            StringBuilder builder = new StringBuilder();
+            for (byte b : digest) {
+                builder.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return builder.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Class<? extends GeneratedValidator> compile(String className, final String source) {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null) {
+            throw new IllegalStateException("no Java compiler is available");
+        }
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<JavaFileObject>();
+        final Map<String, ByteArrayOutputStream> output = new HashMap<String, ByteArrayOutputStream>();
+        JavaFileManager manager = new ForwardingJavaFileManager<StandardJavaFileManager>(compiler.getStandardFileManager(diagnostics, null, null)) {
+            @Override
+            public JavaFileObject getJavaFileForOutput(Location location, final String name, JavaFileObject.Kind kind, FileObject sibling) {
+                return new SimpleJavaFileObject(URI.create("memory:///" + name.replace('.', '/') + kind.extension), kind) {
+                    @Override
+                    public OutputStream openOutputStream() {
+                        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+                        output.put(name, stream);
+                        return stream;
+                    }
+                };
+            }
+        };
+        JavaFileObject file = new SimpleJavaFileObject(URI.create("memory:///" + className.replace('.', '/') + JavaFileObject.Kind.SOURCE.extension),
+                JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return source;
+            }
+        };
+        List<String> options = Arrays.asList("-classpath", classPath(), "-proc:none", "-nowarn");
+        Boolean compiled = compiler.getTask(null, manager, diagnostics, options, null, Collections.singletonList(file)).call();
+        if (!Boolean.TRUE.equals(compiled)) {
+            throw new IllegalStateException("generated validator does not compile: " + diagnostics.getDiagnostics());
+        }
+        Map<String, byte[]> classes = new HashMap<String, byte[]>();
+        for (Map.Entry<String, ByteArrayOutputStream> entry : output.entrySet()) {
+            classes.put(entry.getKey(), entry.getValue().toByteArray());
+        }
+        try {
+            return new Loader(classes).loadClass(className).asSubclass(GeneratedValidator.class);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return class path that lets the compiler find this library and Jackson, even when they are not on the system class path
+     */
+    private static String classPath() {
+        LinkedHashSet<String> entries = new LinkedHashSet<String>();
+        for (Class<?> type : new Class<?>[] { GeneratedValidator.class, JsonNode.class }) {
+            CodeSource source = type.getProtectionDomain().getCodeSource();
+            URL location = source == null ? null : source.getLocation();
+            if (location != null && "file".equals(location.getProtocol())) {
+                try {
+                    entries.add(new File(location.toURI()).getPath());
+                } catch (URISyntaxException e) {
+                    // not a usable file name, rely on the system class path
+                }
+            }
+        }
+        String system = System.getProperty("java.class.path");
+        if (system != null && system.length() > 0) {
+            entries.addAll(Arrays.asList(system.split(File.pathSeparator)));
+        }
+        StringBuilder builder = new StringBuilder();
+        for (String entry : entries) {
+            if (builder.length() > 0) {
+                builder.append(File.pathSeparatorChar);
+            }
+            builder.append(entry);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Defines the classes of one generated validator, so that they can be unloaded once unused
+     */
+    private static final class Loader extends ClassLoader {
+        private final Map<String, byte[]> classes;
+
+        Loader(Map<String, byte[]> classes) {
+            super(GeneratedValidator.class.getClassLoader());
+            this.classes = classes;
+        }
+
+        @Override
+        protected Class<?> findClass(String name) throws ClassNotFoundException {
+            byte[] bytes = classes.get(name);
+            if (bytes == null) {
+                throw new ClassNotFoundException(name);
+            }
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+}
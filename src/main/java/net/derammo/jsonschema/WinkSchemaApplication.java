@@ -15,6 +15,7 @@
 */
 package net.derammo.jsonschema;
 
+import java.net.URI;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
@@ -35,8 +36,21 @@ public class WinkSchemaApplication extends Application {
     private Set<Object> singletons = Collections.emptySet();
 
     public WinkSchemaApplication() {
+        this(new JacksonJsonProvider());
+    }
+
+    /**
+     * Validate application/json request bodies against the schemas named by their resource methods
+     * @param registry source of the schemas
+     * @param linkBases URI prefixes of the documents that describedby links of requests may name
+     * @see ValidatingProvider
+     */
+    public WinkSchemaApplication(SchemaRegistry<?> registry, URI... linkBases) {
+        this(new ValidatingProvider(registry, linkBases));
+    }
+
+    private WinkSchemaApplication(JacksonJsonProvider json) {
         Set<Object> s = new HashSet<Object>();
-        JacksonJsonProvider json = new JacksonJsonProvider();
         JacksonJsonProvider jsonSchema = new SchemaProvider();
         jsonSchema.enable(Feature.ACCEPT_SINGLE_VALUE_AS_ARRAY, true); // this is required for schema.items, which can be an array or atom
         s.add(json);
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2011 Ammo Goettsch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package net.derammo.jsonschema;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Schema documents shared by the benchmarks
+ */
+final class BenchmarkDocuments {
+    private BenchmarkDocuments() {
+    }
+
+    /**
+     * @param name "small" or "medium" for the documents in the resources, or "deep" for a generated one
+     * @return the document as UTF-8
+     */
+    static byte[] load(String name) throws IOException {
+        if ("deep".equals(name)) {
+            return createDeep(64);
+        }
+        return read(name + ".json");
+    }
+
+    /**
+     * @param name name of a schema, as passed to {@link #load(String)}
+     * @return an instance that is valid against the schema, as UTF-8
+     */
+    static byte[] loadInstance(String name) throws IOException {
+        if ("deep".equals(name)) {
+            return createDeepInstance(64);
+        }
+        return read(name + "-instance.json");
+    }
+
+    private static byte[] read(String resource) throws IOException {
+        InputStream in = BenchmarkDocuments.class.getResourceAsStream(resource);
+        if (in == null) {
+            throw new IOException("no benchmark document named " + resource);
+        }
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int count;
+            while ((count = in.read(buffer)) > 0) {
+                out.write(buffer, 0, count);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * @return a schema of objects nested to the given depth, alternating between properties and array items
+     */
+    static byte[] createDeep(int depth) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < depth; i++) {
+            if (i % 2 == 0) {
+                builder.append("{\"type\":\"object\",\"properties\":{\"name\":{\"type\":\"string\"},\"child\":");
+            } else {
+                builder.append("{\"type\":\"array\",\"maxItems\":10,\"items\":");
+            }
+        }
+        builder.append("{\"type\":\"integer\"}");
+        for (int i = depth - 1; i >= 0; i--) {
+            builder.append(i % 2 == 0 ? "}}" : "}");
+        }
+        return utf8(builder.toString());
+    }
+
+    /**
+     * @return an instance of the schema created by {@link #createDeep(int)} with the same depth
+     */
+    static byte[] createDeepInstance(int depth) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < depth; i++) {
+            if (i % 2 == 0) {
+                builder.append("{\"name\":\"level ").append(i).append("\",\"child\":");
+            } else {
+                builder.append('[');
+            }
+        }
+        builder.append(depth);
+        for (int i = depth - 1; i >= 0; i--) {
+            builder.append(i % 2 == 0 ? '}' : ']');
+        }
+        return utf8(builder.toString());
+    }
+
+    static byte[] utf8(String text) {
+        try {
+            return text.getBytes("UTF-8");
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -33,14 +33,14 @@ public class ExtendedSchemaProgram {
     }
 
     public static void main(String[] args) {
-        // cause the deserializer for MySchema.class to be used for all schema
+        // a mapper that uses the deserializer for MySchema.class for all schema
         // instances, so that "foo" is parsed as a schema property even in 
         // schemas referenced by the main schema
-        SchemaDraft3.setApplicationSchemaClass(MySchema.class);
+        ObjectMapper mapper = SchemaModule.createObjectMapper(MySchema.class);
         
         try {
             // read and parse
-            MySchema schema = new ObjectMapper().readValue(System.in, MySchema.class);
+            MySchema schema = mapper.readValue(System.in, MySchema.class);
             
             // result is an object of class MySchema
             System.out.println(schema.toString());
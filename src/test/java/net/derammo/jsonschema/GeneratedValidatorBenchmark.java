@@ -0,0 +1,88 @@
+/*
+ * Copyright 2011 Ammo Goettsch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package net.derammo.jsonschema;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Validation throughput of the compiled schema tree against the class generated for the same schema,
+ * on a valid instance of each of the benchmark schemas.  Every node of a generated class is a method of
+ * its own, so deep schemas need a longer warmup before all of them are compiled by the JIT.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 10, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GeneratedValidatorBenchmark {
+    @Param({ "small", "medium", "deep" })
+    public String schema;
+
+    private SchemaValidator interpreted;
+    private SchemaValidator generated;
+    private JsonNode instance;
+
+    @Setup
+    public void setup() throws IOException {
+        JsonSchema parsed = SchemaModule.createObjectMapper(JsonSchema.class).readValue(BenchmarkDocuments.load(schema), JsonSchema.class);
+        interpreted = new SchemaCompiler().compile(parsed);
+        generated = interpreted.generate();
+        if (generated == interpreted) {
+            throw new IllegalStateException("no Java compiler is available, run the benchmark on a JDK");
+        }
+        instance = new ObjectMapper().readTree(BenchmarkDocuments.loadInstance(schema));
+        if (!interpreted.isValid(instance) || !generated.isValid(instance)) {
+            throw new IllegalStateException("benchmark instance is not valid against " + schema);
+        }
+    }
+
+    @Benchmark
+    public List<ValidationError> interpretedValidate() {
+        return interpreted.validate(instance);
+    }
+
+    @Benchmark
+    public List<ValidationError> generatedValidate() {
+        return generated.validate(instance);
+    }
+
+    @Benchmark
+    public boolean interpretedIsValid() {
+        return interpreted.isValid(instance);
+    }
+
+    @Benchmark
+    public boolean generatedIsValid() {
+        return generated.isValid(instance);
+    }
+}
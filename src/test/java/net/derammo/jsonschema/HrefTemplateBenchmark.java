@@ -0,0 +1,101 @@
+/*
+ * Copyright 2011 Ammo Goettsch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package net.derammo.jsonschema;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.net.URLEncoder;
+import java.util.concurrent.TimeUnit;
+
+import org.codehaus.jackson.JsonGenerator;
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Expanding the link of every item of a collection, by replacing each {name} in the raw href against
+ * expanding a compiled template into a reused builder or straight into a generator
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HrefTemplateBenchmark {
+    private static final String HREF = "/customers/{customer}/orders/{id}";
+    private static final int ITEMS = 100;
+
+    private JsonNode[] items;
+    private HrefTemplate template;
+    private StringBuilder builder;
+    private StringWriter writer;
+    private JsonGenerator generator;
+
+    @Setup
+    public void setup() throws IOException {
+        ObjectMapper mapper = new ObjectMapper();
+        items = new JsonNode[ITEMS];
+        for (int i = 0; i < ITEMS; i++) {
+            items[i] = mapper.readTree("{\"customer\":\"ACME Corp\",\"id\":" + (100000 + i) + "}");
+        }
+        template = HrefTemplate.compile(HREF);
+        builder = new StringBuilder(64);
+        writer = new StringWriter(64 * ITEMS);
+        generator = mapper.getJsonFactory().createJsonGenerator(writer);
+    }
+
+    @Benchmark
+    public int replace() throws IOException {
+        int length = 0;
+        for (JsonNode item : items) {
+            length += HREF.replace("{customer}", URLEncoder.encode(item.get("customer").getTextValue(), "UTF-8"))
+                    .replace("{id}", item.get("id").asText()).length();
+        }
+        return length;
+    }
+
+    @Benchmark
+    public int builder() {
+        int length = 0;
+        for (JsonNode item : items) {
+            builder.setLength(0);
+            length += template.expand(item, builder).length();
+        }
+        return length;
+    }
+
+    @Benchmark
+    public int generator() throws IOException {
+        writer.getBuffer().setLength(0);
+        generator.writeStartArray();
+        for (JsonNode item : items) {
+            template.write(item, generator);
+        }
+        generator.writeEndArray();
+        generator.flush();
+        return writer.getBuffer().length();
+    }
+}
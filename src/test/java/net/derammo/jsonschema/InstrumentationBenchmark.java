@@ -0,0 +1,81 @@
+/*
+ * Copyright 2011 Ammo Goettsch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package net.derammo.jsonschema;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of instrumenting a validator with {@link ValidationMetrics}, against the same validator without
+ * a listener, on a valid instance of each of the benchmark schemas
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InstrumentationBenchmark {
+    @Param({ "small", "medium", "deep" })
+    public String schema;
+
+    private SchemaValidator plain;
+    private SchemaValidator instrumented;
+    private JsonNode instance;
+
+    @Setup
+    public void setup() throws IOException {
+        JsonSchema parsed = SchemaModule.createObjectMapper(JsonSchema.class).readValue(BenchmarkDocuments.load(schema), JsonSchema.class);
+        plain = new SchemaCompiler().compile(parsed);
+        instrumented = plain.instrument(schema, new ValidationMetrics());
+        instance = new ObjectMapper().readTree(BenchmarkDocuments.loadInstance(schema));
+    }
+
+    @Benchmark
+    public List<ValidationError> plainValidate() {
+        return plain.validate(instance);
+    }
+
+    @Benchmark
+    public List<ValidationError> instrumentedValidate() {
+        return instrumented.validate(instance);
+    }
+
+    @Benchmark
+    public boolean plainIsValid() {
+        return plain.isValid(instance);
+    }
+
+    @Benchmark
+    public boolean instrumentedIsValid() {
+        return instrumented.isValid(instance);
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2011 Ammo Goettsch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package net.derammo.jsonschema;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Matching throughput of java.util.regex against the linear engine, for a typical 'pattern', for a set of
+ * 'patternProperties' matched against property names, and for a nested quantifier on text that
+ * fails to match only at its end
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PatternBenchmark {
+    private static final List<String> PROPERTY_PATTERNS = Arrays.asList("^x-", "_id$", "^[0-9]+$", "^(en|de|fr)(-[A-Z]{2})?$");
+    private static final String[] PROPERTY_NAMES = { "x-trace", "order_id", "123", "de-CH", "description", "customerName" };
+
+    @Param({ "backtracking", "linear" })
+    public String engine;
+
+    private PatternCache.Matcher email;
+    private PatternCache.Matcher properties;
+    private PatternCache.Matcher nested;
+
+    @Setup
+    public void setup() {
+        PatternCache patterns = engine.equals("linear") ? PatternCache.linear(16, 0) : PatternCache.backtracking(16);
+        email = patterns.get("^[A-Za-z0-9._%+-]+@[A-Za-z0-9.-]+\\.[A-Za-z]{2,}$");
+        properties = patterns.getAny(PROPERTY_PATTERNS);
+        nested = patterns.get("^(a+)+$");
+    }
+
+    @Benchmark
+    public boolean email() {
+        return email.find("first.last+tag@mail.example.com");
+    }
+
+    @Benchmark
+    public int patternProperties() {
+        int matched = 0;
+        for (String name : PROPERTY_NAMES) {
+            if (properties.find(name)) {
+                matched++;
+            }
+        }
+        return matched;
+    }
+
+    @Benchmark
+    public boolean nestedQuantifier() {
+        return nested.find("aaaaaaaaaaaaaaaaaaaaaaa!");
+    }
+}
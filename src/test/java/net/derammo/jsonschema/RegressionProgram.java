@@ -0,0 +1,186 @@
+/*
+ * Copyright 2011 Ammo Goettsch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package net.derammo.jsonschema;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.codehaus.jackson.JsonGenerator;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.map.ObjectMapper;
+
+/**
+ * Checks behaviour that has broken before; prints each failure and exits with status 1 if there was any.
+ */
+public class RegressionProgram {
+    private static final ObjectMapper MAPPER = SchemaModule.createObjectMapper(JsonSchema.class);
+
+    private static int failures;
+
+    public static void main(String[] args) throws Exception {
+        multiValueStream();
+        encodedDotSegments();
+        describedByLinks();
+        formatConversions();
+
+        if (failures > 0) {
+            System.out.println(failures + " failed");
+            System.exit(1);
+        }
+        System.out.println("ok");
+    }
+
+    private static void check(String what, boolean passed) {
+        if (!passed) {
+            System.out.println("FAILED: " + what);
+            failures++;
+        }
+    }
+
+    private static SchemaValidator compile(String schema) throws Exception {
+        return new SchemaCompiler().compile(MAPPER.readValue(schema, JsonSchema.class));
+    }
+
+    // each value of a stream of several is validated by its own call
+    private static void multiValueStream() throws Exception {
+        SchemaValidator validator = compile("{\"maximum\":5,\"properties\":{\"a\":{\"type\":\"integer\"}}}");
+        String[][] streams = {
+            { "{\"a\":1} {\"b\":2} {\"a\":\"x\"}", "ok ok fail" },
+            { "1 7 3", "ok fail ok" },
+            { "[1] 9 {}", "ok fail ok" },
+        };
+        for (String[] stream : streams) {
+            JsonParser parser = MAPPER.getJsonFactory().createJsonParser(stream[0]);
+            StringBuilder results = new StringBuilder();
+            for (int i = 0; i < 3; i++) {
+                List<ValidationError> errors = validator.validate(parser);
+                results.append(i == 0 ? "" : " ").append(errors.isEmpty() ? "ok" : "fail");
+            }
+            check("stream " + stream[0] + ": " + results, results.toString().equals(stream[1])
+                    && parser.nextToken() == null);
+        }
+    }
+
+    // a loader serves nothing outside its directory, however the dot segments are spelled
+    private static void encodedDotSegments() throws Exception {
+        File root = Files.createTempDirectory("regression").toFile();
+        root.deleteOnExit();
+        File directory = new File(root, "schemas");
+        directory.mkdir();
+        directory.deleteOnExit();
+        File subdirectory = new File(directory, "sub");
+        subdirectory.mkdir();
+        subdirectory.deleteOnExit();
+        write(new File(directory, "inside.json"));
+        write(new File(root, "outside.json"));
+
+        URI base = URI.create("http://example.com/schemas/");
+        SchemaLoader files = new FileSchemaLoader(base, directory);
+        URLClassLoader resources = new URLClassLoader(new URL[] { root.toURI().toURL() }, null);
+        SchemaLoader classpath = new ClasspathSchemaLoader(base, resources, "schemas");
+        for (SchemaLoader loader : new SchemaLoader[] { files, classpath }) {
+            String name = loader.getClass().getSimpleName();
+            check(name + " inside", opens(loader, base.resolve("inside.json")));
+            check(name + " ../", !opens(loader, URI.create("http://example.com/schemas/../outside.json")));
+            check(name + " %2e%2e/", !opens(loader, URI.create("http://example.com/schemas/%2e%2e/outside.json")));
+            check(name + " %2E./", !opens(loader, URI.create("http://example.com/schemas/%2E./outside.json")));
+            check(name + " sub/%2e%2e/%2e%2e/",
+                    !opens(loader, URI.create("http://example.com/schemas/sub/%2e%2e/%2e%2e/outside.json")));
+            check(name + " %2e%2e%2f", !opens(loader, URI.create("http://example.com/schemas/%2e%2e%2foutside.json")));
+        }
+        resources.close();
+    }
+
+    // a link a client sends is refused whenever it cannot be followed, and failures are remembered
+    private static void describedByLinks() throws Exception {
+        final int[] opened = new int[1];
+        SchemaLoader loader = new SchemaLoader() {
+            public InputStream open(URI uri) throws IOException {
+                opened[0]++;
+                if (uri.getPath().endsWith("/broken.json")) {
+                    throw new IOException("cannot read " + uri);
+                }
+                return uri.getPath().equals("/s/a.json") || uri.getPath().equals("/a.json")
+                        ? new ByteArrayInputStream("{\"type\":\"object\"}".getBytes("UTF-8")) : null;
+            }
+        };
+        ValidatingProvider provider = new ValidatingProvider(new SchemaRegistry<JsonSchema>(JsonSchema.class, loader),
+                URI.create("http://example.com/s/"));
+
+        check("link to a schema", follows(provider, "http://example.com/s/a.json"));
+        check("link with .. outside the bases", !follows(provider, "http://example.com/s/../a.json"));
+        check("link with %2e%2e outside the bases", !follows(provider, "http://example.com/s/%2e%2e/a.json"));
+        check("link with %2e%2e%2f", !follows(provider, "http://example.com/s/x%2f%2e%2e%2f%2e%2e%2fa.json"));
+        check("link to a missing schema", !follows(provider, "http://example.com/s/missing.json"));
+        check("link to an unreadable schema", !follows(provider, "http://example.com/s/broken.json"));
+        int before = opened[0];
+        check("link to an unreadable schema again", !follows(provider, "http://example.com/s/broken.json"));
+        check("failed link is remembered", opened[0] == before);
+    }
+
+    private static boolean follows(ValidatingProvider provider, String link) {
+        try {
+            return provider.getLinkedValidator(link) != null;
+        } catch (SchemaException e) {
+            return false;
+        }
+    }
+
+    // a format converts a value only to a type the schema allows, and only if the value fits the target
+    private static void formatConversions() throws Exception {
+        SchemaTransformer transformer = SchemaTransformer.create(MAPPER.readValue("{\"properties\":{"
+                + "\"a\":{\"type\":\"integer\",\"format\":\"date-time\"},"
+                + "\"b\":{\"type\":\"string\",\"format\":\"utc-millisec\"},"
+                + "\"c\":{\"format\":\"date-time\"},"
+                + "\"d\":{\"type\":[\"integer\",\"string\"],\"format\":\"date-time\"},"
+                + "\"e\":{\"format\":\"date-time\"},"
+                + "\"f\":{\"format\":\"utc-millisec\"}}}", JsonSchema.class));
+        String input = "{\"a\":0,\"b\":\"1970-01-01T00:00:01Z\",\"c\":0,\"d\":0,"
+                + "\"e\":99999999999999999999,\"f\":\"+999999999-12-31T23:59:59Z\"}";
+        String expected = "{\"a\":0,\"b\":\"1970-01-01T00:00:01Z\",\"c\":\"1970-01-01T00:00:00Z\","
+                + "\"d\":\"1970-01-01T00:00:00Z\",\"e\":99999999999999999999,\"f\":\"+999999999-12-31T23:59:59Z\"}";
+        StringWriter output = new StringWriter();
+        JsonGenerator generator = MAPPER.getJsonFactory().createJsonGenerator(output);
+        transformer.transform(MAPPER.getJsonFactory().createJsonParser(input), generator);
+        generator.close();
+        check("format conversions: " + output, output.toString().equals(expected));
+    }
+
+    private static void write(File file) throws Exception {
+        file.deleteOnExit();
+        FileOutputStream out = new FileOutputStream(file);
+        out.write("{}".getBytes("UTF-8"));
+        out.close();
+    }
+
+    private static boolean opens(SchemaLoader loader, URI uri) throws Exception {
+        InputStream in = loader.open(uri);
+        if (in == null) {
+            return false;
+        }
+        in.close();
+        return true;
+    }
+}
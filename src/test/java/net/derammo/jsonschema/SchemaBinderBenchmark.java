@@ -0,0 +1,91 @@
+/*
+ * Copyright 2011 Ammo Goettsch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package net.derammo.jsonschema;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Reading a valid object into a bean by parsing it to a tree, validating the tree and binding it, against
+ * binding it with a SchemaBinder in one pass
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SchemaBinderBenchmark {
+    private static final String SCHEMA = "{\"type\":\"object\",\"properties\":{"
+            + "\"id\":{\"type\":\"string\",\"maxlength\":16,\"required\":true},"
+            + "\"customer\":{\"type\":\"string\",\"required\":true},"
+            + "\"quantity\":{\"type\":\"integer\",\"minimum\":1,\"maximum\":1000},"
+            + "\"price\":{\"type\":\"number\",\"minimum\":0},"
+            + "\"express\":{\"type\":\"boolean\"},"
+            + "\"tags\":{\"type\":\"array\",\"items\":{\"type\":\"string\"},\"maxItems\":8}},"
+            + "\"additionalProperties\":false}";
+    private static final String INSTANCE = "{\"id\":\"A-10042\",\"customer\":\"ACME Corp\",\"quantity\":12,"
+            + "\"price\":19.95,\"express\":true,\"tags\":[\"wholesale\",\"priority\"]}";
+
+    public static class Order {
+        public String id;
+        public String customer;
+        public int quantity;
+        public double price;
+        public boolean express;
+        public List<String> tags;
+    }
+
+    private ObjectMapper mapper;
+    private SchemaValidator validator;
+    private SchemaBinder<Order> binder;
+
+    @Setup
+    public void setup() throws IOException {
+        JsonSchema schema = SchemaModule.createObjectMapper(JsonSchema.class).readValue(SCHEMA, JsonSchema.class);
+        mapper = new ObjectMapper();
+        validator = new SchemaCompiler().compile(schema);
+        binder = validator.binder(mapper, Order.class);
+    }
+
+    @Benchmark
+    public Order threePasses() throws IOException {
+        JsonNode tree = mapper.readTree(INSTANCE);
+        if (!validator.isValid(tree)) {
+            throw new IllegalStateException();
+        }
+        return mapper.readValue(tree, Order.class);
+    }
+
+    @Benchmark
+    public Order onePass() throws IOException {
+        return binder.read(INSTANCE);
+    }
+}
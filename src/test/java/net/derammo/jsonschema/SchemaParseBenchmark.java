@@ -0,0 +1,115 @@
+/*
+ * Copyright 2011 Ammo Goettsch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package net.derammo.jsonschema;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.codehaus.jackson.map.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parse throughput of schema documents of different shapes, as the stock schema class and as an extension,
+ * and of rebuilding them from a {@link SchemaSnapshot} or reading them with a {@link LazySchemaReader} instead
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SchemaParseBenchmark {
+    /**
+     * Extension with one additional attribute, read for every schema in the document
+     */
+    public static class ExtendedSchema extends HyperSchemaDraft3<ExtendedSchema> {
+        private String owner;
+
+        public String getOwner() {
+            return owner;
+        }
+
+        public void setOwner(String owner) {
+            this.owner = owner;
+        }
+    }
+
+    private static final URI DOCUMENT = URI.create("http://example.com/benchmark.json");
+
+    @Param({ "small", "medium", "deep" })
+    public String document;
+
+    private ObjectMapper jsonSchemaMapper;
+    private ObjectMapper extendedSchemaMapper;
+    private byte[] content;
+    private SchemaSnapshot snapshot;
+    private LazySchemaReader<JsonSchema> lazyReader;
+
+    @Setup
+    public void setup() throws IOException {
+        jsonSchemaMapper = SchemaModule.createObjectMapper(JsonSchema.class);
+        extendedSchemaMapper = SchemaModule.createObjectMapper(ExtendedSchema.class);
+        content = BenchmarkDocuments.load(document);
+        File file = File.createTempFile("benchmark", ".snapshot");
+        file.deleteOnExit();
+        SchemaSnapshot.write(file, "benchmark", Collections.singletonMap(DOCUMENT, jsonSchemaMapper.readValue(content, JsonSchema.class)));
+        snapshot = SchemaSnapshot.open(file, "benchmark");
+        lazyReader = new LazySchemaReader<JsonSchema>(JsonSchema.class, jsonSchemaMapper);
+    }
+
+    @Benchmark
+    public JsonSchema jsonSchema() throws IOException {
+        return jsonSchemaMapper.readValue(content, JsonSchema.class);
+    }
+
+    @Benchmark
+    public ExtendedSchema extendedSchema() throws IOException {
+        return extendedSchemaMapper.readValue(content, ExtendedSchema.class);
+    }
+
+    @Benchmark
+    public JsonSchema snapshot() throws IOException {
+        return snapshot.getDocument(DOCUMENT, JsonSchema.class);
+    }
+
+    @Benchmark
+    public JsonSchema lazy() throws IOException {
+        return lazyReader.read(content);
+    }
+
+    @Benchmark
+    public Object lazyFirstProperty() throws IOException {
+        // the usual pattern of validating one property: only the root and one level of properties are read
+        JsonSchema schema = lazyReader.read(content);
+        if (schema.getProperties() == null || schema.getProperties().isEmpty()) {
+            return schema;
+        }
+        return schema.getProperties().values().iterator().next().getType();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2011 Ammo Goettsch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package net.derammo.jsonschema;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of writing a schema through {@link SchemaProvider} and reading it back, as a JAX-RS
+ * resource returning and accepting application/schema+json would
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SchemaProviderBenchmark {
+    private static final Annotation[] NO_ANNOTATIONS = new Annotation[0];
+
+    @Param({ "small", "medium" })
+    public String document;
+
+    private SchemaProvider provider;
+    private JsonSchema schema;
+    private ByteArrayOutputStream out;
+
+    @Setup
+    public void setup() throws IOException {
+        provider = new SchemaProvider();
+        provider.setMapper(SchemaModule.createObjectMapper(JsonSchema.class));
+        schema = SchemaModule.createObjectMapper(JsonSchema.class).readValue(BenchmarkDocuments.load(document), JsonSchema.class);
+        out = new ByteArrayOutputStream(16384);
+    }
+
+    @Benchmark
+    public Object roundTrip() throws IOException {
+        // the media type and headers are not needed by the Jackson provider outside a JAX-RS runtime
+        out.reset();
+        provider.writeTo(schema, JsonSchema.class, JsonSchema.class, NO_ANNOTATIONS, null, null, out);
+        return provider.readFrom(objectClass(), JsonSchema.class, NO_ANNOTATIONS, null, null,
+                new ByteArrayInputStream(out.toByteArray()));
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static Class<Object> objectClass() {
+        return (Class) JsonSchema.class;
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2011 Ammo Goettsch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package net.derammo.jsonschema;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.codehaus.jackson.map.DeserializationConfig;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parse throughput of schemas made mostly of 'type' unions, 'disallow' and 'additionalItems', which
+ * are all read by {@link TypeDeserializer}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TypeDeserializerBenchmark {
+    private static final String[] TYPE_NAMES = { "string", "number", "integer", "boolean", "object", "array", "null", "any" };
+
+    private ObjectMapper plainMapper;
+    private ObjectMapper moduleMapper;
+    private byte[] document;
+
+    @Setup
+    public void setup() {
+        plainMapper = new ObjectMapper();
+        plainMapper.configure(DeserializationConfig.Feature.ACCEPT_SINGLE_VALUE_AS_ARRAY, true);
+        moduleMapper = SchemaModule.createObjectMapper(JsonSchema.class);
+        document = createDocument(200);
+    }
+
+    /**
+     * @return a schema with the given number of properties, each with a union type and a disallowed type
+     */
+    static byte[] createDocument(int properties) {
+        StringBuilder builder = new StringBuilder();
+        builder.append("{\"type\":\"object\",\"properties\":{");
+        for (int i = 0; i < properties; i++) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            String first = TYPE_NAMES[i % TYPE_NAMES.length];
+            String second = TYPE_NAMES[(i + 3) % TYPE_NAMES.length];
+            builder.append("\"p").append(i).append("\":{");
+            builder.append("\"type\":[\"").append(first).append("\",\"").append(second).append("\",{\"type\":\"array\",\"items\":{\"type\":\"string\"},\"additionalItems\":false}],");
+            builder.append("\"disallow\":\"").append(TYPE_NAMES[(i + 5) % TYPE_NAMES.length]).append("\"}");
+        }
+        builder.append("}}");
+        try {
+            return builder.toString().getBytes("UTF-8");
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Benchmark
+    public JsonSchema plainMapper() throws IOException {
+        return plainMapper.readValue(document, JsonSchema.class);
+    }
+
+    @Benchmark
+    public JsonSchema moduleMapper() throws IOException {
+        return moduleMapper.readValue(document, JsonSchema.class);
+    }
+}
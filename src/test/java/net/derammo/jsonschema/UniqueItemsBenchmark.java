@@ -0,0 +1,68 @@
+/*
+ * Copyright 2011 Ammo Goettsch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package net.derammo.jsonschema;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.node.ArrayNode;
+import org.codehaus.jackson.node.ObjectNode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Checking 'uniqueItems' on arrays of distinct small objects, whose cost should grow linearly with their size
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UniqueItemsBenchmark {
+    @Param({ "1000", "100000" })
+    public int size;
+
+    private SchemaValidator validator;
+    private ArrayNode items;
+
+    @Setup
+    public void setup() throws IOException {
+        validator = new SchemaCompiler().compile(SchemaModule.createObjectMapper(JsonSchema.class).readValue(
+                "{\"type\":\"array\",\"uniqueItems\":true}", JsonSchema.class));
+        items = new ObjectMapper().createArrayNode();
+        for (int i = 0; i < size; i++) {
+            ObjectNode item = items.addObject();
+            item.put("id", i);
+            item.put("name", "item" + i);
+        }
+    }
+
+    @Benchmark
+    public boolean unique() {
+        return validator.isValid(items);
+    }
+}
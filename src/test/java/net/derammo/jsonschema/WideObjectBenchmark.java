@@ -0,0 +1,97 @@
+/*
+ * Copyright 2011 Ammo Goettsch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+package net.derammo.jsonschema;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Validating a record with many properties, a third of them required, whose fields are either in the
+ * order of the schema or shuffled, as a tree and as a token stream
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WideObjectBenchmark {
+    @Param({ "300" })
+    public int properties;
+
+    @Param({ "true", "false" })
+    public boolean ordered;
+
+    private ObjectMapper mapper;
+    private SchemaValidator validator;
+    private JsonNode tree;
+    private byte[] text;
+
+    @Setup
+    public void setup() throws IOException {
+        StringBuilder schema = new StringBuilder("{\"type\":\"object\",\"additionalProperties\":false,\"properties\":{");
+        for (int i = 0; i < properties; i++) {
+            schema.append(i == 0 ? "" : ",").append("\"field").append(i).append("\":{\"type\":\"integer\"");
+            schema.append(i % 3 == 0 ? ",\"required\":true}" : "}");
+        }
+        schema.append("}}");
+        StringBuilder instance = new StringBuilder("{");
+        for (int i = 0; i < properties; i++) {
+            // a fixed permutation when shuffled
+            int field = ordered ? i : (int) ((i * 7919L) % properties);
+            instance.append(i == 0 ? "" : ",").append("\"field").append(field).append("\":").append(i);
+        }
+        instance.append("}");
+        mapper = new ObjectMapper();
+        validator = new SchemaCompiler().compile(
+                SchemaModule.createObjectMapper(JsonSchema.class).readValue(schema.toString(), JsonSchema.class));
+        tree = mapper.readTree(instance.toString());
+        text = instance.toString().getBytes("UTF-8");
+        if (!validator.isValid(tree)) {
+            throw new IllegalStateException("instance is not valid");
+        }
+    }
+
+    @Benchmark
+    public boolean tree() {
+        return validator.isValid(tree);
+    }
+
+    @Benchmark
+    public boolean stream() throws IOException {
+        JsonParser parser = mapper.getJsonFactory().createJsonParser(text);
+        try {
+            return validator.isValid(parser);
+        } finally {
+            parser.close();
+        }
+    }
+}